@@ -1,7 +1,9 @@
 package at.technikum.documentmanager.config;
 
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.*;
 import org.springframework.web.bind.MethodArgumentNotValidException;
+import org.springframework.web.bind.MissingRequestHeaderException;
 import org.springframework.web.bind.annotation.*;
 import java.util.*;
 
@@ -11,6 +13,21 @@ public class ApiExceptionHandler {
     public ResponseEntity<Map<String,String>> notFound(NoSuchElementException ex){
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", ex.getMessage()));
     }
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String,String>> illegalArgument(IllegalArgumentException ex){
+        return ResponseEntity.badRequest().body(Map.of("error", ex.getMessage()));
+    }
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<Map<String,String>> preconditionFailed(OptimisticLockingFailureException ex){
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(Map.of("error", "Document was modified, reload and retry"));
+    }
+    @ExceptionHandler(MissingRequestHeaderException.class)
+    public ResponseEntity<Map<String,String>> missingHeader(MissingRequestHeaderException ex){
+        // writes are conditional: without If-Match a client could overwrite changes it never saw
+        HttpStatus status = HttpHeaders.IF_MATCH.equalsIgnoreCase(ex.getHeaderName())
+                ? HttpStatus.PRECONDITION_REQUIRED : HttpStatus.BAD_REQUEST;
+        return ResponseEntity.status(status).body(Map.of("error", ex.getMessage()));
+    }
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<Map<String,String>> badReq(MethodArgumentNotValidException ex){
         var msg = ex.getBindingResult().getAllErrors().getFirst().getDefaultMessage();
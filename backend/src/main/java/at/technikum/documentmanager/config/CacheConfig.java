@@ -0,0 +1,30 @@
+package at.technikum.documentmanager.config;
+
+import org.springframework.boot.autoconfigure.cache.CacheProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+
+// Caches are defined in application.yml (spring.cache.*), statistics are exposed as cache.* metrics
+@Configuration
+@EnableCaching
+@EnableConfigurationProperties(CacheProperties.class)
+public class CacheConfig {
+
+    // Puts and evictions inside a transaction only take effect after commit; evicting before would
+    // let a concurrent read cache the pre-commit row again for the whole TTL
+    @Bean
+    public CacheManager cacheManager(CacheProperties properties) {
+        CaffeineCacheManager caffeine = new CaffeineCacheManager();
+        caffeine.setCacheNames(properties.getCacheNames());
+        if (StringUtils.hasText(properties.getCaffeine().getSpec())) {
+            caffeine.setCacheSpecification(properties.getCaffeine().getSpec());
+        }
+        return new TransactionAwareCacheManagerProxy(caffeine);
+    }
+}
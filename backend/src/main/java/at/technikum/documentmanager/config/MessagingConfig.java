@@ -4,15 +4,21 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.amqp.core.*;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.annotation.EnableRabbit;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.config.RetryInterceptorBuilder;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.retry.MessageBatchRecoverer;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.retry.interceptor.RetryOperationsInterceptor;
 
 @Slf4j
 @Configuration
@@ -34,6 +40,8 @@ public class MessagingConfig {
     @Value("${app.mq.exchange:docs.exchange}")
     private String exchangeName;
 
+    static final String DEAD_LETTER_SUFFIX = ".dlq";
+
     @Value("${app.mq.queue:docs.uploaded.q}")
     private String queueName;
 
@@ -74,6 +82,34 @@ public class MessagingConfig {
         return QueueBuilder.durable("summary-results").build();
     }
 
+    // OCR text for the Postgres full-text search, see OcrTextListener
+    // declared with the same arguments as the OCR worker does, redeclaring with different ones would fail
+    @Bean
+    public Queue ocrResultsQueue() {
+        return QueueBuilder.durable("ocr-results").build();
+    }
+
+    // Batches of summary-results or ocr-results that still fail after the retries, see summaryBatchContainerFactory
+    @Bean
+    public Queue summaryDeadLetterQueue() {
+        return QueueBuilder.durable("summary-results" + DEAD_LETTER_SUFFIX).build();
+    }
+
+    @Bean
+    public Queue ocrDeadLetterQueue() {
+        return QueueBuilder.durable("ocr-results" + DEAD_LETTER_SUFFIX).build();
+    }
+
+    @Bean
+    public Queue indexingTasksQueue() {
+        return QueueBuilder.durable("indexing-tasks").build();
+    }
+
+    @Bean
+    public Queue indexingDeadLetterQueue() {
+        return QueueBuilder.durable("indexing-tasks.dlq").build();
+    }
+
     @Bean
     public Queue deadLetterQueue() {
         return new Queue(dlqName, true);
@@ -100,4 +136,80 @@ public class MessagingConfig {
         tpl.setMessageConverter(mc);
         return tpl;
     }
+
+    // Delivers summary-results in batches: up to batch-size messages, or whatever arrived
+    // within receive-timeout-ms. The batch is acked as a whole once the listener returns.
+    // A failing batch is retried with backoff, then moved to the dead-letter queue of its queue
+    // instead of being requeued forever.
+    @Bean
+    public SimpleRabbitListenerContainerFactory summaryBatchContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            RabbitTemplate rabbitTemplate,
+            @Value("${app.summary.batch-size:50}") int batchSize,
+            @Value("${app.summary.receive-timeout-ms:500}") long receiveTimeoutMs,
+            @Value("${app.summary.concurrency:1}") int concurrency,
+            @Value("${app.summary.max-concurrency:4}") int maxConcurrency,
+            @Value("${app.summary.retry.max-attempts:3}") int maxAttempts,
+            @Value("${app.summary.retry.initial-interval-ms:1000}") long initialIntervalMs,
+            @Value("${app.summary.retry.max-interval-ms:10000}") long maxIntervalMs
+    ) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setBatchReceiveTimeout(receiveTimeoutMs);
+        factory.setPrefetchCount(batchSize);
+        factory.setConcurrentConsumers(concurrency);
+        factory.setMaxConcurrentConsumers(Math.max(concurrency, maxConcurrency));
+        factory.setAdviceChain(batchRetry(rabbitTemplate, maxAttempts, initialIntervalMs, maxIntervalMs));
+        return factory;
+    }
+
+    static RetryOperationsInterceptor batchRetry(RabbitTemplate rabbitTemplate, int maxAttempts,
+                                                 long initialIntervalMs, long maxIntervalMs) {
+        return RetryInterceptorBuilder.stateless()
+                .maxAttempts(maxAttempts)
+                .backOffOptions(initialIntervalMs, 2.0, maxIntervalMs)
+                .recoverer(deadLetter(rabbitTemplate))
+                .build();
+    }
+
+    // Republishes every message of the batch to <queue>.dlq; returning normally acks the batch
+    private static MessageBatchRecoverer deadLetter(RabbitTemplate rabbitTemplate) {
+        return (messages, cause) -> {
+            log.error("Moving a batch of {} messages to the dead-letter queue after retries: {}",
+                    messages.size(), cause.getMessage());
+            for (Message message : messages) {
+                message.getMessageProperties().setHeader("x-exception-message", String.valueOf(cause.getMessage()));
+                rabbitTemplate.send("", message.getMessageProperties().getConsumerQueue() + DEAD_LETTER_SUFFIX, message);
+            }
+        };
+    }
+
+    // Manual acks: IndexingTaskListener acks every message on its own once its bulk item succeeded.
+    // The prefetch bounds how many unacked tasks (with their OCR text) each consumer holds.
+    @Bean
+    @ConditionalOnProperty(name = "app.indexing.enabled", havingValue = "true")
+    public SimpleRabbitListenerContainerFactory indexingBatchContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            @Value("${app.indexing.batch-size:200}") int batchSize,
+            @Value("${app.indexing.receive-timeout-ms:1000}") long receiveTimeoutMs,
+            @Value("${app.indexing.concurrency:2}") int concurrency,
+            @Value("${app.indexing.max-concurrency:4}") int maxConcurrency
+    ) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setBatchReceiveTimeout(receiveTimeoutMs);
+        factory.setPrefetchCount(batchSize);
+        factory.setConcurrentConsumers(concurrency);
+        factory.setMaxConcurrentConsumers(Math.max(concurrency, maxConcurrency));
+        return factory;
+    }
 }
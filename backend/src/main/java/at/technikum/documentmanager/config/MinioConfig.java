@@ -4,11 +4,13 @@ import io.minio.MinioClient;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 
 @Configuration
 public class MinioConfig {
 
     @Bean
+    @Primary
     public MinioClient minioClient(
             @Value("${minio.endpoint}") String endpoint,
             @Value("${minio.access-key}") String accessKey,
@@ -19,4 +21,20 @@ public class MinioConfig {
                 .credentials(accessKey, secretKey)
                 .build();
     }
+
+    // Presigned URLs are signed for the host clients will use, which differs from the
+    // in-cluster endpoint. A fixed region keeps signing free of network round-trips.
+    @Bean
+    public MinioClient presignMinioClient(
+            @Value("${minio.public-endpoint}") String publicEndpoint,
+            @Value("${minio.region:us-east-1}") String region,
+            @Value("${minio.access-key}") String accessKey,
+            @Value("${minio.secret-key}") String secretKey
+    ) {
+        return MinioClient.builder()
+                .endpoint(publicEndpoint)
+                .region(region)
+                .credentials(accessKey, secretKey)
+                .build();
+    }
 }
@@ -1,36 +1,52 @@
 package at.technikum.documentmanager.controller;
 
+import at.technikum.documentmanager.dto.DocumentCursor;
+import at.technikum.documentmanager.dto.DocumentMetadata;
+import at.technikum.documentmanager.dto.DocumentPage;
 import at.technikum.documentmanager.dto.DocumentResponse;
+import at.technikum.documentmanager.dto.PresignedUploadRequest;
+import at.technikum.documentmanager.dto.PresignedUploadResponse;
+import at.technikum.documentmanager.dto.TagResponse;
+import at.technikum.documentmanager.dto.TaggedDocumentPage;
 import at.technikum.documentmanager.entity.Document;
 import at.technikum.documentmanager.entity.Tag;
-import at.technikum.documentmanager.messaging.UploadEventPublisher;
-import at.technikum.documentmanager.messaging.dto.UploadEvent;
-import at.technikum.documentmanager.repository.DocumentRepository;
+import at.technikum.documentmanager.preview.PreviewService;
 import at.technikum.documentmanager.service.DocumentService;
 import at.technikum.documentmanager.service.TagService;
 import at.technikum.documentmanager.storage.StorageService;
+import at.technikum.documentmanager.storage.StoredObject;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
-import org.springframework.core.io.InputStreamResource;
-import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.MediaType;
-import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.security.Principal;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/documents")
@@ -39,97 +55,381 @@ import java.util.stream.Collectors;
 public class DocumentController {
 
     private final DocumentService service;
-    private final UploadEventPublisher publisher;
     private final StorageService storageService;
-    private final DocumentRepository documentRepository;
     private final TagService tagService;
+    private final PreviewService previewService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.documents.page-size:50}")
+    private int defaultPageSize;
+
+    @Value("${app.documents.max-page-size:500}")
+    private int maxPageSize;
+
+    @Value("${app.preview.max-age-seconds:3600}")
+    private long previewMaxAgeSeconds;
 
     @PostMapping("/upload")
     public ResponseEntity<Document> upload(@RequestParam("file") MultipartFile file, Principal principal) throws IOException {
-        // Save file to MinIO and persist metadata
-        Document doc = service.saveFile(file);
-
-        // Publish upload event (RabbitMQ or similar)
-        publisher.publish(new UploadEvent(
-                doc.getId().toString(),
-                doc.getOriginalFilename(),
-                doc.getContentType(),
-                file.getSize(),
-                Instant.now(),
-                principal != null ? principal.getName() : "unknown"
-        ));
-
-        log.info("Uploaded document '{}' ({} bytes) and published event", doc.getOriginalFilename(), file.getSize());
+        // Save file to MinIO and persist metadata; the upload event is relayed from the outbox
+        Document doc = service.saveFile(file, uploaderName(principal));
+
+        log.info("Uploaded document '{}' ({} bytes)", doc.getOriginalFilename(), file.getSize());
         return ResponseEntity.status(HttpStatus.CREATED).body(doc);
     }
 
+    // Raw request body is piped into a MinIO multipart upload as it arrives, so neither
+    // the servlet container nor the JVM ever buffers the whole file.
+    @PostMapping(value = "/upload/stream", consumes = MediaType.ALL_VALUE)
+    public ResponseEntity<Document> uploadStream(@RequestParam("filename") String filename,
+                                                 HttpServletRequest request,
+                                                 Principal principal) throws IOException {
+        String contentType = request.getContentType();
+        if (contentType != null && contentType.startsWith("multipart/")) {
+            throw new IllegalArgumentException("Streaming upload expects the raw file as request body, use /upload for multipart");
+        }
+
+        Document doc = service.saveStream(request.getInputStream(), filename, contentType, uploaderName(principal));
+
+        log.info("Stream-uploaded document '{}' ({} bytes)", doc.getOriginalFilename(), doc.getSize());
+        return ResponseEntity.status(HttpStatus.CREATED).body(doc);
+    }
+
+    // Presigned mode: the client PUTs the bytes directly to object storage
+    @PostMapping("/presigned-uploads")
+    @ResponseStatus(HttpStatus.CREATED)
+    public PresignedUploadResponse initiateDirectUpload(@Valid @RequestBody PresignedUploadRequest request) throws IOException {
+        return service.initiateDirectUpload(request.filename());
+    }
+
+    @PostMapping("/presigned-uploads/{id}/complete")
+    public ResponseEntity<Document> completeDirectUpload(@PathVariable UUID id,
+                                                         @Valid @RequestBody PresignedUploadRequest request,
+                                                         Principal principal) throws IOException {
+        Document doc = service.completeDirectUpload(id, request.filename(), uploaderName(principal));
+
+        log.info("Completed direct upload of '{}' ({} bytes)", doc.getOriginalFilename(), doc.getSize());
+        return ResponseEntity.status(HttpStatus.CREATED).body(doc);
+    }
+
+    private static String uploaderName(Principal principal) {
+        return principal != null ? principal.getName() : "unknown";
+    }
+
+    // Conditional reads: the cached metadata carries the version and the tag ids, a matching
+    // If-None-Match is answered with 304 without touching the database.
     @GetMapping("/{id}")
-    public Document get(@PathVariable UUID id) {
-        return service.get(id);
+    public ResponseEntity<DocumentResponse> get(@PathVariable UUID id, @RequestHeader HttpHeaders requestHeaders) {
+        String etag = taggedETag(service.getMetadata(id));
+        if (matches(requestHeaders.getIfNoneMatch(), etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        DocumentResponse doc = service.getDetail(id);
+        return ResponseEntity.ok().eTag(taggedETag(doc.version(), doc.tags())).body(doc);
+    }
+
+    // Short-lived presigned GET, lets clients fetch the bytes straight from object storage
+    @GetMapping("/{id}/download-url")
+    public DocumentResponse downloadUrl(@PathVariable UUID id) throws IOException {
+        DocumentMetadata doc = service.getMetadata(id);
+        return DocumentResponse.of(doc, service.downloadUrl(doc));
+    }
+
+    // Small first-page PNG; browsers reuse it for max-age and then revalidate with the ETag.
+    // 202 with Retry-After while a missing preview is rendered in the background.
+    @GetMapping("/{id}/preview")
+    public ResponseEntity<byte[]> preview(@PathVariable UUID id, @RequestHeader HttpHeaders requestHeaders) throws IOException {
+        DocumentMetadata doc = service.getMetadata(id);
+        String etag = PreviewService.etag(doc);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(etag);
+        headers.setCacheControl("private, max-age=" + previewMaxAgeSeconds);
+        if (matches(requestHeaders.getIfNoneMatch(), etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+        }
+        Optional<byte[]> png = previewService.load(doc);
+        if (png.isEmpty()) {
+            return ResponseEntity.accepted()
+                    .header(HttpHeaders.RETRY_AFTER, "2")
+                    .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                    .build();
+        }
+        headers.setContentType(MediaType.IMAGE_PNG);
+        return ResponseEntity.ok().headers(headers).body(png.get());
     }
 
     @GetMapping("/download/{id}")
-    public ResponseEntity<Resource> download(@PathVariable UUID id) {
+    public ResponseEntity<StreamingResponseBody> download(@PathVariable UUID id,
+                                                          @RequestParam(defaultValue = "false") boolean redirect,
+                                                          @RequestHeader HttpHeaders requestHeaders) throws IOException {
+        DocumentMetadata doc = service.getMetadata(id); // throws if not found
+        if (redirect) {
+            URI url = URI.create(service.downloadUrl(doc));
+            if (url.isAbsolute()) { // relative -> served by this endpoint, redirecting would loop
+                return ResponseEntity.status(HttpStatus.FOUND).location(url).build();
+            }
+        }
+        String objectName = doc.storageFilename();
+
+        Optional<StoredObject> stat;
         try {
-            // Retrieve metadata via service
-            Document doc = service.get(id);
-            if (doc == null) {
-                throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+            stat = storageService.stat(objectName);
+        } catch (Exception e) {
+            throw new IOException("Failed to read object metadata: " + e.getMessage(), e);
+        }
+        StoredObject object = stat.orElseThrow(() -> new NoSuchElementException("Stored file not found"));
+
+        long length = object.size();
+        String etag = object.etag() != null ? "\"" + object.etag() + "\"" : null;
+        MediaType contentType = MediaType.parseMediaType(doc.contentType());
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        headers.setCacheControl("private, no-cache"); // always revalidate, answered with 304 while unchanged
+        if (etag != null) {
+            headers.setETag(etag);
+        }
+        if (object.lastModified() != null) {
+            headers.setLastModified(object.lastModified());
+        }
+
+        if (etag != null && matches(requestHeaders.getIfNoneMatch(), etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+        }
+
+        headers.setContentDisposition(ContentDisposition.attachment()
+                .filename(doc.originalFilename(), StandardCharsets.UTF_8)
+                .build());
+
+        List<HttpRange> ranges = requestedRanges(requestHeaders, etag, object);
+        if (ranges.isEmpty()) {
+            headers.setContentType(contentType);
+            headers.setContentLength(length);
+            return ResponseEntity.ok().headers(headers).body(out -> copy(objectName, 0, length, length, out));
+        }
+
+        // Resolve to absolute offsets and drop ranges that lie beyond the end of the file
+        List<long[]> satisfiable = new ArrayList<>();
+        for (HttpRange range : ranges) {
+            try {
+                long start = range.getRangeStart(length);
+                long end = range.getRangeEnd(length);
+                if (end >= start) {
+                    satisfiable.add(new long[]{start, end});
+                }
+            } catch (IllegalArgumentException ignored) {
+                // first-byte-pos beyond the end of the file
             }
+        }
+        // Every part is its own ranged read: like HttpRange.toResourceRegions, refuse range sets that
+        // add up to more than the object, e.g. many overlapping "0-" ranges
+        long requested = 0;
+        for (long[] range : satisfiable) {
+            requested += range[1] - range[0] + 1;
+        }
+        if (satisfiable.isEmpty() || (satisfiable.size() > 1 && requested > length)) {
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).headers(headers).build();
+        }
+
+        if (satisfiable.size() == 1) {
+            long start = satisfiable.getFirst()[0];
+            long end = satisfiable.getFirst()[1];
+            headers.setContentType(contentType);
+            headers.setContentLength(end - start + 1);
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers)
+                    .body(out -> copy(objectName, start, end - start + 1, length, out));
+        }
 
-            // Load the file from MinIO
-            Optional<InputStream> in = storageService.load(doc.getStorageFilename());
-            if (in.isEmpty()) {
-                throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+        // Multiple ranges: multipart/byteranges, each part backed by its own ranged read
+        String boundary = UUID.randomUUID().toString();
+        headers.setContentType(MediaType.parseMediaType("multipart/byteranges; boundary=" + boundary));
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers).body(out -> {
+            for (long[] range : satisfiable) {
+                String partHeader = "--" + boundary + "\r\n"
+                        + HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n"
+                        + HttpHeaders.CONTENT_RANGE + ": bytes " + range[0] + "-" + range[1] + "/" + length + "\r\n\r\n";
+                out.write(partHeader.getBytes(StandardCharsets.US_ASCII));
+                copy(objectName, range[0], range[1] - range[0] + 1, length, out);
+                out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
             }
+            out.write(("--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        });
+    }
 
-            // Wrap stream into Spring resource
-            InputStreamResource resource = new InputStreamResource(in.get());
+    // Range is only honoured if If-Range (when sent) still matches the current representation
+    private List<HttpRange> requestedRanges(HttpHeaders requestHeaders, String etag, StoredObject object) {
+        String range = requestHeaders.getFirst(HttpHeaders.RANGE);
+        if (range == null) {
+            return List.of();
+        }
+        String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !ifRangeMatches(ifRange, requestHeaders, etag, object)) {
+            return List.of();
+        }
+        try {
+            return HttpRange.parseRanges(range);
+        } catch (IllegalArgumentException e) {
+            return List.of(); // malformed Range headers are ignored
+        }
+    }
 
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(doc.getContentType()))
-                    .header(HttpHeaders.CONTENT_DISPOSITION,
-                            "attachment; filename=\"" + doc.getOriginalFilename() + "\"")
-                    .body(resource);
+    private static boolean ifRangeMatches(String ifRange, HttpHeaders requestHeaders, String etag, StoredObject object) {
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(etag); // strong comparison only
+        }
+        if (ifRange.startsWith("W/") || object.lastModified() == null) {
+            return false;
+        }
+        try {
+            Instant since = requestHeaders.getFirstZonedDateTime(HttpHeaders.IF_RANGE).toInstant();
+            return !object.lastModified().truncatedTo(ChronoUnit.SECONDS).isAfter(since);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static boolean matches(List<String> ifNoneMatch, String etag) {
+        for (String candidate : ifNoneMatch) {
+            if (candidate.equals("*") || candidate.equals(etag) || candidate.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
+    private void copy(String objectName, long offset, long length, long total, OutputStream out) throws IOException {
+        try {
+            storageService.transferTo(objectName, offset, offset == 0 && length == total ? -1 : length, out);
+        } catch (IOException e) {
+            throw e;
         } catch (Exception e) {
-            log.error("Download failed for document {}", id, e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            throw new IOException("Failed to load object from storage: " + e.getMessage(), e);
         }
     }
 
     @GetMapping("/{id}/summary")
-    public ResponseEntity<String> getSummary(@PathVariable UUID id) {
-        return documentRepository.findById(id)
-                .map(doc -> ResponseEntity.ok(doc.getSummary()))
-                .orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<String> getSummary(@PathVariable UUID id, @RequestHeader HttpHeaders requestHeaders) {
+        String etag = versionETag(service.getMetadata(id).version());
+        if (matches(requestHeaders.getIfNoneMatch(), etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok().eTag(etag).body(service.getSummary(id));
     }
 
+    // Writes must name the version they are based on (If-Match), a stale one is answered with 412
     @PutMapping("/{id}/metadata")
-    public Document updateMetadata(@PathVariable UUID id,
-                                   @RequestParam String newName,
-                                   @RequestParam String newType) {
-        return service.updateMetadata(id, newName, newType);
+    public ResponseEntity<Document> updateMetadata(@PathVariable UUID id,
+                                                   @RequestParam String newName,
+                                                   @RequestParam String newType,
+                                                   @RequestHeader(HttpHeaders.IF_MATCH) String ifMatch) {
+        Document saved = service.updateMetadata(id, newName, newType, expectedVersion(id, ifMatch));
+        return ResponseEntity.ok().eTag(versionETag(saved.getVersion())).body(saved);
     }
 
     @PutMapping("/{id}/replace")
-    public Document replaceFile(@PathVariable UUID id,
-                                @RequestParam("file") MultipartFile file) throws IOException {
-        return service.replaceFile(id, file);
+    public ResponseEntity<Document> replaceFile(@PathVariable UUID id,
+                                                @RequestParam("file") MultipartFile file,
+                                                @RequestHeader(HttpHeaders.IF_MATCH) String ifMatch) throws IOException {
+        Document saved = service.replaceFile(id, file, expectedVersion(id, ifMatch));
+        return ResponseEntity.ok().eTag(versionETag(saved.getVersion())).body(saved);
     }
 
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> delete(@PathVariable UUID id) throws IOException {
-        service.delete(id);
+    public ResponseEntity<Void> delete(@PathVariable UUID id,
+                                       @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) throws IOException {
+        service.delete(id, ifMatch == null ? null : expectedVersion(id, ifMatch));
         return ResponseEntity.noContent().build();
     }
 
+    private static String versionETag(long version) {
+        return "\"" + version + "\"";
+    }
+
+    private static String taggedETag(DocumentMetadata doc) {
+        return taggedETag(doc.version(), doc.tags());
+    }
+
+    // "<version>-<tag ids>": membership changes bump the version already, the hash of the sorted
+    // ids also covers tags that disappear without one (a deleted tag cascades to document_tags)
+    private static String taggedETag(long version, List<TagResponse> tags) {
+        long hash = 1;
+        for (UUID tagId : tags.stream().map(TagResponse::id).sorted().toList()) {
+            hash = 31 * (31 * hash + tagId.getMostSignificantBits()) + tagId.getLeastSignificantBits();
+        }
+        return "\"" + version + "-" + Long.toHexString(hash) + "\"";
+    }
+
+    // Strong comparison only; "*" matches whatever version is current. Writes only depend on the
+    // document version, so the tag part of an ETag from the detail endpoint is ignored.
+    private long expectedVersion(UUID id, String ifMatch) {
+        String value = ifMatch.trim();
+        if (value.equals("*")) {
+            return service.getVersion(id);
+        }
+        if (value.length() < 2 || !value.startsWith("\"") || !value.endsWith("\"")) {
+            throw new OptimisticLockingFailureException("If-Match must be a strong ETag");
+        }
+        String version = value.substring(1, value.length() - 1);
+        int tagPart = version.indexOf('-');
+        try {
+            return Long.parseLong(tagPart < 0 ? version : version.substring(0, tagPart));
+        } catch (NumberFormatException e) {
+            throw new OptimisticLockingFailureException("If-Match does not match any version");
+        }
+    }
+
+    // Streams the full listing as a JSON array, fetching one keyset page at a time
+    // so only a single page is ever held in memory. Summaries only with ?summary=true.
     @GetMapping
-    public List<DocumentResponse> list() {
-        return service.list()
-                .stream()
-                .map(DocumentResponse::of)
-                .collect(Collectors.toList());
+    public ResponseEntity<StreamingResponseBody> list(@RequestParam(defaultValue = "false") boolean summary) {
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator gen = objectMapper.getFactory().createGenerator(out)) {
+                gen.writeStartArray();
+                DocumentCursor cursor = null;
+                List<DocumentResponse> page;
+                do {
+                    page = service.listPage(cursor, maxPageSize, summary);
+                    for (DocumentResponse d : page) {
+                        objectMapper.writeValue(gen, d);
+                    }
+                    gen.flush();
+                    if (!page.isEmpty()) {
+                        cursor = DocumentCursor.of(page.getLast());
+                    }
+                } while (page.size() == maxPageSize);
+                gen.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    @GetMapping("/page")
+    public DocumentPage page(@RequestParam(required = false) String cursor,
+                             @RequestParam(required = false) Integer size,
+                             @RequestParam(defaultValue = "false") boolean summary) {
+        int limit = size == null ? defaultPageSize : Math.clamp(size, 1, maxPageSize);
+        DocumentCursor after = cursor == null || cursor.isBlank() ? null : DocumentCursor.decode(cursor);
+
+        List<DocumentResponse> docs = service.listPage(after, limit, summary);
+        String next = docs.size() == limit ? DocumentCursor.of(docs.getLast()).encode() : null;
+        return new DocumentPage(docs, next);
+    }
+
+    // e.g. ?all=finance,2024&none=archive; names are comma separated or repeated
+    @GetMapping("/by-tags")
+    public TaggedDocumentPage byTags(@RequestParam(required = false) List<String> all,
+                                     @RequestParam(required = false) List<String> any,
+                                     @RequestParam(required = false) List<String> none,
+                                     @RequestParam(required = false) String cursor,
+                                     @RequestParam(required = false) Integer size,
+                                     @RequestParam(defaultValue = "false") boolean summary) {
+        int limit = size == null ? defaultPageSize : Math.clamp(size, 1, maxPageSize);
+        return tagService.findDocuments(all, any, none, cursor == null || cursor.isBlank() ? null : cursor, limit, summary);
     }
 
     @PostMapping("/{id}/tags/{tagId}")
@@ -142,8 +442,13 @@ public class DocumentController {
         return DocumentResponse.of(tagService.removeTagFromDocument(id, tagId));
     }
 
+    // Same ETag as the detail endpoint, both are answered from the cached metadata
     @GetMapping("/{id}/tags")
-    public List<Tag> tags(@PathVariable UUID id) {
-        return tagService.tagsForDocument(id);
+    public ResponseEntity<List<Tag>> tags(@PathVariable UUID id, @RequestHeader HttpHeaders requestHeaders) {
+        String etag = taggedETag(service.getMetadata(id));
+        if (matches(requestHeaders.getIfNoneMatch(), etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok().eTag(etag).body(tagService.tagsForDocument(id));
     }
 }
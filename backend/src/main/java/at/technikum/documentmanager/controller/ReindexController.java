@@ -0,0 +1,44 @@
+package at.technikum.documentmanager.controller;
+
+import at.technikum.documentmanager.entity.ReindexJob;
+import at.technikum.documentmanager.search.ReindexService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+
+// Rebuilds the search index in the background; poll GET /{id} for progress
+@RestController
+@ConditionalOnProperty(name = "app.search.engine", havingValue = "elasticsearch", matchIfMissing = true)
+@RequestMapping("/api/admin/reindex")
+@RequiredArgsConstructor
+public class ReindexController {
+
+    private final ReindexService reindexService;
+
+    @PostMapping
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public ReindexJob start() throws IOException {
+        return reindexService.start();
+    }
+
+    @PostMapping("/{id}/resume")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public ReindexJob resume(@PathVariable UUID id) {
+        return reindexService.resume(id);
+    }
+
+    @GetMapping("/{id}")
+    public ReindexJob get(@PathVariable UUID id) {
+        return reindexService.get(id);
+    }
+
+    @GetMapping
+    public List<ReindexJob> list() {
+        return reindexService.list();
+    }
+}
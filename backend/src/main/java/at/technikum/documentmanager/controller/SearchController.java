@@ -1,13 +1,22 @@
 package at.technikum.documentmanager.controller;
 
+import at.technikum.documentmanager.search.FacetedSearchResult;
+import at.technikum.documentmanager.search.SearchPage;
+import at.technikum.documentmanager.search.SearchQuery;
 import at.technikum.documentmanager.search.SearchResult;
 import at.technikum.documentmanager.search.SearchService;
+import at.technikum.documentmanager.search.SizeRange;
+import at.technikum.documentmanager.search.SuggestIndex;
+import at.technikum.documentmanager.search.Suggestion;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.Instant;
 import java.util.List;
 
 @RestController
@@ -16,9 +25,51 @@ import java.util.List;
 public class SearchController {
 
     private final SearchService searchService;
+    private final SuggestIndex suggestIndex;
+
+    @Value("${app.search.page-size:20}")
+    private int defaultPageSize;
+
+    @Value("${app.search.max-page-size:100}")
+    private int maxPageSize;
+
+    @Value("${app.search.suggest.limit:10}")
+    private int suggestLimit;
 
     @GetMapping
     public List<SearchResult> search(@RequestParam("q") String query) {
         return searchService.search(query);
     }
+
+    // Typeahead for the search box: filenames and tag names with a word starting with q
+    @GetMapping("/suggest")
+    public List<Suggestion> suggest(@RequestParam("q") String prefix,
+                                    @RequestParam(required = false) Integer limit) {
+        return suggestIndex.suggest(prefix, limit == null ? suggestLimit : Math.clamp(limit, 1, maxPageSize));
+    }
+
+    // First request passes q, following requests only the cursor returned as nextCursor
+    @GetMapping("/page")
+    public SearchPage page(@RequestParam(value = "q", required = false) String query,
+                           @RequestParam(required = false) String cursor,
+                           @RequestParam(required = false) Integer size) {
+        if ((cursor == null || cursor.isBlank()) && (query == null || query.isBlank())) {
+            throw new IllegalArgumentException("Either q or cursor is required");
+        }
+        int limit = size == null ? defaultPageSize : Math.clamp(size, 1, maxPageSize);
+        return searchService.searchPage(query, cursor, limit);
+    }
+
+    // Facet buckets come back with the result; drill down by sending a bucket key as filter,
+    // e.g. ?q=invoice&contentType=application/pdf&tag=tax-2025&size=large
+    @GetMapping("/faceted")
+    public FacetedSearchResult faceted(@RequestParam(value = "q", required = false) String query,
+                                       @RequestParam(required = false) List<String> contentType,
+                                       @RequestParam(required = false) List<String> tag,
+                                       @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant uploadedFrom,
+                                       @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant uploadedTo,
+                                       @RequestParam(required = false) List<String> size) {
+        List<SizeRange> sizeRanges = size == null ? List.of() : size.stream().map(SizeRange::fromKey).toList();
+        return searchService.searchFaceted(new SearchQuery(query, contentType, tag, uploadedFrom, uploadedTo, sizeRanges));
+    }
 }
@@ -1,5 +1,6 @@
 package at.technikum.documentmanager.controller;
 
+import at.technikum.documentmanager.dto.TagCloudEntry;
 import at.technikum.documentmanager.dto.TagRequest;
 import at.technikum.documentmanager.entity.Tag;
 import at.technikum.documentmanager.service.TagService;
@@ -27,4 +28,10 @@ public class TagController {
     public List<Tag> list() {
         return tagService.listAll();
     }
+
+    // Tags with the number of documents carrying them, most used first
+    @GetMapping("/cloud")
+    public List<TagCloudEntry> cloud(@RequestParam(defaultValue = "100") int limit) {
+        return tagService.cloud(Math.clamp(limit, 1, 1000));
+    }
 }
@@ -0,0 +1,32 @@
+package at.technikum.documentmanager.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Position in the (uploaded_at, id) keyset ordering of the document listing.
+ * Sent to clients as an opaque URL-safe token.
+ */
+public record DocumentCursor(Instant uploadedAt, UUID id) {
+
+    public static DocumentCursor of(DocumentResponse d) {
+        return new DocumentCursor(d.uploadedAt(), d.id());
+    }
+
+    public String encode() {
+        String raw = uploadedAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static DocumentCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int sep = raw.indexOf('|');
+            return new DocumentCursor(Instant.parse(raw.substring(0, sep)), UUID.fromString(raw.substring(sep + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
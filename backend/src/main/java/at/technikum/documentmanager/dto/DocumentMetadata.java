@@ -0,0 +1,43 @@
+package at.technikum.documentmanager.dto;
+
+import at.technikum.documentmanager.entity.Document;
+
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Immutable snapshot of a document row as held by the "documents" cache. Every caller gets the
+ * same instance, so unlike the JPA entity it cannot be changed underneath other readers.
+ */
+public record DocumentMetadata(
+        UUID id,
+        String originalFilename,
+        String contentType,
+        long size,
+        Instant uploadedAt,
+        String storageFilename,
+        String contentSha256, // null for pre-deduplication uploads
+        String summary,
+        Long version,
+        List<TagResponse> tags
+) {
+    public static DocumentMetadata of(Document d) {
+        return new DocumentMetadata(
+                d.getId(),
+                d.getOriginalFilename(),
+                d.getContentType(),
+                d.getSize(),
+                d.getUploadedAt(),
+                d.getStorageFilename(),
+                d.getContentSha256(),
+                d.getSummary(),
+                d.getVersion(),
+                d.getTags().stream()
+                        .map(TagResponse::of)
+                        .sorted(Comparator.comparing(TagResponse::name, String.CASE_INSENSITIVE_ORDER))
+                        .toList()
+        );
+    }
+}
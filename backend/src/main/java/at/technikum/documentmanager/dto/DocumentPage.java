@@ -0,0 +1,9 @@
+package at.technikum.documentmanager.dto;
+
+import java.util.List;
+
+public record DocumentPage(
+        List<DocumentResponse> items,
+        String nextCursor // null when there are no further pages
+) {
+}
@@ -1,6 +1,7 @@
 package at.technikum.documentmanager.dto;
 
 import at.technikum.documentmanager.entity.Document;
+import at.technikum.documentmanager.repository.DocumentListItem;
 import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
@@ -13,7 +14,8 @@ public record DocumentResponse(
         String downloadUrl,
         Instant uploadedAt,
         String summary,
-        List<TagResponse> tags
+        List<TagResponse> tags,
+        Long version
 ) {
     // Basic mapping (used for list endpoints, no presigned URL)
     public static DocumentResponse of(Document d) {
@@ -25,7 +27,8 @@ public record DocumentResponse(
                 null, // downloadUrl not included in list responses
                 d.getUploadedAt(),
                 d.getSummary(),
-                d.getTags().stream().map(TagResponse::of).toList()
+                d.getTags().stream().map(TagResponse::of).toList(),
+                d.getVersion()
         );
     }
 
@@ -39,7 +42,38 @@ public record DocumentResponse(
                 downloadUrl,
                 d.getUploadedAt(),
                 d.getSummary(),
-                d.getTags().stream().map(TagResponse::of).toList()
+                d.getTags().stream().map(TagResponse::of).toList(),
+                d.getVersion()
+        );
+    }
+
+    // From the cached metadata, with a presigned download URL
+    public static DocumentResponse of(DocumentMetadata d, String downloadUrl) {
+        return new DocumentResponse(
+                d.id(),
+                d.originalFilename(),
+                d.contentType(),
+                d.size(),
+                downloadUrl,
+                d.uploadedAt(),
+                d.summary(),
+                d.tags(),
+                d.version()
+        );
+    }
+
+    // From a projection; tags are loaded separately for the whole page
+    public static DocumentResponse of(DocumentListItem d, List<TagResponse> tags) {
+        return new DocumentResponse(
+                d.getId(),
+                d.getOriginalFilename(),
+                d.getContentType(),
+                d.getSize(),
+                null,
+                d.getUploadedAt(),
+                d.getSummary(),
+                tags,
+                d.getVersion()
         );
     }
 }
@@ -0,0 +1,9 @@
+package at.technikum.documentmanager.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+
+public record PresignedUploadRequest(
+        @NotBlank @Size(max = 255) String filename
+) {
+}
@@ -0,0 +1,11 @@
+package at.technikum.documentmanager.dto;
+
+import java.time.Instant;
+import java.util.UUID;
+
+public record PresignedUploadResponse(
+        UUID documentId,
+        String uploadUrl, // HTTP PUT the file body here, then call .../complete
+        Instant expiresAt
+) {
+}
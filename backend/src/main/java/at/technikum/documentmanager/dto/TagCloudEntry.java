@@ -0,0 +1,11 @@
+package at.technikum.documentmanager.dto;
+
+import java.util.UUID;
+
+public record TagCloudEntry(
+        UUID id,
+        String name,
+        String color,
+        long documents
+) {
+}
@@ -0,0 +1,10 @@
+package at.technikum.documentmanager.dto;
+
+import java.util.List;
+
+public record TaggedDocumentPage(
+        List<DocumentResponse> items,
+        int total,         // matches over all pages
+        String nextCursor  // null when there are no further pages
+) {
+}
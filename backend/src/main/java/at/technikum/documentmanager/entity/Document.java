@@ -36,9 +36,17 @@ public class Document {
     @Column(nullable = false)
     private String storageFilename;
 
+    // SHA-256 of the content, also the key of the shared blob; null for pre-deduplication uploads
+    @Column(name = "content_sha256", length = 64)
+    private String contentSha256;
+
     @Column(columnDefinition = "TEXT")
     private String summary;
 
+    // bumped on every change, including tag membership; sent as the ETag
+    @Version
+    private Long version;
+
     @ManyToMany(fetch = FetchType.EAGER)
     @JoinTable(
             name = "document_tags",
@@ -0,0 +1,52 @@
+package at.technikum.documentmanager.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Entity
+@Table(name = "reindex_jobs")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@ToString
+public class ReindexJob {
+
+    public enum Status { RUNNING, COMPLETED, FAILED }
+
+    @Id
+    private UUID id;
+
+    @Column(nullable = false)
+    private String targetIndex;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Status status;
+
+    private long total;
+
+    private long processed;
+
+    private long failed;
+
+    // last document written, in (uploaded_at DESC, id DESC) order; null = start from the newest
+    private Instant checkpointUploadedAt;
+
+    private UUID checkpointId;
+
+    @Column(nullable = false)
+    private Instant startedAt;
+
+    @Column(nullable = false)
+    private Instant updatedAt;
+
+    private Instant finishedAt;
+
+    @Column(columnDefinition = "TEXT")
+    private String error;
+}
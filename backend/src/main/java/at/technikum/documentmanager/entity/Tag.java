@@ -23,4 +23,7 @@ public class Tag {
 
     @Column(length = 20)
     private String color;
+
+    @Version
+    private Long version;
 }
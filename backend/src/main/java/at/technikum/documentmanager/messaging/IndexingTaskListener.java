@@ -0,0 +1,177 @@
+package at.technikum.documentmanager.messaging;
+
+import at.technikum.documentmanager.search.SearchIndexChangedEvent;
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.Channel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * In-backend replacement for the Python indexing worker. Messages from indexing-tasks arrive in
+ * batches and are written with as few _bulk requests as the byte limit allows. Each message is
+ * acked only after its own bulk item succeeded; failed items go to the dead-letter queue.
+ */
+@Component
+@ConditionalOnProperty(name = "app.indexing.enabled", havingValue = "true")
+@Slf4j
+public class IndexingTaskListener {
+
+    static final String DEAD_LETTER_QUEUE = "indexing-tasks.dlq";
+
+    // fields the OCR worker sends; anything else in the payload is not indexed
+    private static final Set<String> INDEXED_FIELDS =
+            Set.of("documentId", "filename", "contentType", "uploadedAt", "size", "text", "summary");
+
+    private final ElasticsearchClient client;
+    private final RabbitTemplate rabbit;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher events;
+    private final String indexName;
+    private final long maxBulkBytes;
+    private final long retryDelayMs;
+
+    public IndexingTaskListener(
+            ElasticsearchClient client,
+            RabbitTemplate rabbit,
+            ObjectMapper objectMapper,
+            ApplicationEventPublisher events,
+            @Value("${elasticsearch.index:documents}") String indexName,
+            @Value("${app.indexing.max-bulk-bytes:5242880}") long maxBulkBytes,
+            @Value("${app.indexing.retry-delay-ms:5000}") long retryDelayMs
+    ) {
+        this.client = client;
+        this.rabbit = rabbit;
+        this.objectMapper = objectMapper;
+        this.events = events;
+        this.indexName = indexName;
+        this.maxBulkBytes = maxBulkBytes;
+        this.retryDelayMs = retryDelayMs;
+    }
+
+    @RabbitListener(queues = "indexing-tasks", containerFactory = "indexingBatchContainerFactory")
+    public void receive(List<Message> messages, Channel channel) throws IOException {
+        List<Task> chunk = new ArrayList<>();
+        long chunkBytes = 0;
+        for (Message message : messages) {
+            Task task = parse(message, channel);
+            if (task == null) {
+                continue;
+            }
+            // OCR text dominates the request size, split before a single bulk gets too large
+            if (!chunk.isEmpty() && chunkBytes + message.getBody().length > maxBulkBytes) {
+                index(chunk, channel);
+                chunk = new ArrayList<>();
+                chunkBytes = 0;
+            }
+            chunk.add(task);
+            chunkBytes += message.getBody().length;
+        }
+        if (!chunk.isEmpty()) {
+            index(chunk, channel);
+        }
+    }
+
+    private Task parse(Message message, Channel channel) throws IOException {
+        try {
+            Map<String, Object> payload = objectMapper.readValue(message.getBody(), new TypeReference<>() {});
+            Object documentId = payload.get("documentId");
+            if (documentId == null) {
+                throw new IllegalArgumentException("documentId missing");
+            }
+            UUID.fromString(documentId.toString());
+            Map<String, Object> doc = new LinkedHashMap<>();
+            payload.forEach((key, value) -> {
+                if (value != null && INDEXED_FIELDS.contains(key)) {
+                    doc.put(key, value);
+                }
+            });
+            return new Task(message, documentId.toString(), doc);
+        } catch (IOException | IllegalArgumentException e) {
+            deadLetter(message, channel, "unreadable payload: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void index(List<Task> tasks, Channel channel) throws IOException {
+        BulkRequest.Builder bulk = new BulkRequest.Builder().index(indexName);
+        for (Task task : tasks) {
+            // partial upsert, keeps the fields the backend syncs (tags, summary)
+            bulk.operations(op -> op.update(u -> u
+                    .id(task.documentId())
+                    .action(a -> a.doc(task.doc()).docAsUpsert(true))));
+        }
+
+        BulkResponse response;
+        try {
+            response = client.bulk(bulk.build());
+        } catch (IOException | ElasticsearchException e) {
+            // the cluster is unavailable, nothing was written: hand the messages back after a pause
+            log.warn("[IndexingTaskListener] Bulk of {} documents failed, requeueing: {}", tasks.size(), e.getMessage());
+            pause();
+            for (Task task : tasks) {
+                channel.basicNack(deliveryTag(task.message()), false, true);
+            }
+            return;
+        }
+
+        Set<UUID> indexed = new HashSet<>();
+        List<BulkResponseItem> items = response.items();
+        for (int i = 0; i < tasks.size(); i++) {
+            Task task = tasks.get(i);
+            BulkResponseItem item = items.get(i);
+            if (item.error() != null) {
+                deadLetter(task.message(), channel, item.error().reason());
+            } else {
+                channel.basicAck(deliveryTag(task.message()), false);
+                indexed.add(UUID.fromString(task.documentId()));
+            }
+        }
+        log.info("[IndexingTaskListener] Indexed {} of {} documents in one bulk request.", indexed.size(), tasks.size());
+        if (!indexed.isEmpty()) {
+            events.publishEvent(new SearchIndexChangedEvent(indexed));
+        }
+    }
+
+    private void deadLetter(Message message, Channel channel, String reason) throws IOException {
+        log.error("[IndexingTaskListener] Dead-lettering indexing task: {}", reason);
+        message.getMessageProperties().setHeader("x-index-error", reason);
+        rabbit.send("", DEAD_LETTER_QUEUE, message);
+        channel.basicAck(deliveryTag(message), false);
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(retryDelayMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long deliveryTag(Message message) {
+        return message.getMessageProperties().getDeliveryTag();
+    }
+
+    private record Task(Message message, String documentId, Map<String, Object> doc) {
+    }
+}
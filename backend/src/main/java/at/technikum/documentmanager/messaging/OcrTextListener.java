@@ -0,0 +1,49 @@
+package at.technikum.documentmanager.messaging;
+
+import at.technikum.documentmanager.service.DocumentService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Stores the OCR text sent by the OCR worker, which keeps the Postgres full-text search in sync.
+ * Batched like the summaries; retries are harmless since writing the same text changes nothing,
+ * and a batch that still fails ends up in ocr-results.dlq.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OcrTextListener {
+
+    private final ObjectMapper objectMapper;
+    private final DocumentService documentService;
+
+    @RabbitListener(queues = "ocr-results", containerFactory = "summaryBatchContainerFactory")
+    public void receive(List<Message> messages) {
+        Map<UUID, String> texts = new LinkedHashMap<>();
+        for (Message message : messages) {
+            try {
+                OcrTextMessage msg = objectMapper.readValue(message.getBody(), OcrTextMessage.class);
+                texts.put(msg.getDocumentId(), msg.getText());
+            } catch (Exception e) {
+                log.error("[OcrTextListener] Failed to parse OCR message: {}",
+                        new String(message.getBody(), StandardCharsets.UTF_8), e);
+            }
+        }
+        if (texts.isEmpty()) {
+            return;
+        }
+
+        int updated = documentService.saveOcrTexts(texts);
+        log.info("[OcrTextListener] Stored OCR text of {} documents ({} changed).", texts.size(), updated);
+    }
+}
@@ -0,0 +1,10 @@
+package at.technikum.documentmanager.messaging;
+
+import lombok.Data;
+import java.util.UUID;
+
+@Data
+public class OcrTextMessage {
+    private UUID documentId;
+    private String text;
+}
@@ -0,0 +1,184 @@
+package at.technikum.documentmanager.messaging;
+
+import at.technikum.documentmanager.entity.OutboxEvent;
+import at.technikum.documentmanager.messaging.dto.UploadEvent;
+import at.technikum.documentmanager.repository.OutboxEventRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.AmqpTimeoutException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Publishes pending outbox rows in batches. A batch is only marked sent after the broker
+ * confirmed every message of it. An unreachable or unresponsive broker (connect failure, confirm
+ * timeout) is nobody's fault: the relay as a whole backs off exponentially and no event is charged,
+ * however long the outage lasts. A batch the broker rejected is retried one event at a time; only
+ * events rejected while their neighbours went through use up an attempt, are retried with backoff
+ * and dead-lettered (failed_at set, kept in the table) after max-attempts. If every event is
+ * rejected, the relay backs off instead. Unreadable payloads are dead-lettered right away.
+ */
+@Component
+@Slf4j
+public class OutboxRelay {
+
+    private final OutboxEventRepository repository;
+    private final UploadEventPublisher publisher;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate tx;
+    private final int batchSize;
+    private final Duration confirmTimeout;
+    private final Duration retention;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+
+    private volatile Duration backoff = Duration.ZERO;
+    private volatile Instant retryAt = Instant.MIN;
+    Clock clock = Clock.systemUTC();
+
+    public OutboxRelay(
+            OutboxEventRepository repository,
+            UploadEventPublisher publisher,
+            ObjectMapper objectMapper,
+            TransactionTemplate tx,
+            @Value("${app.outbox.batch-size:100}") int batchSize,
+            @Value("${app.outbox.confirm-timeout-ms:5000}") long confirmTimeoutMs,
+            @Value("${app.outbox.retention-hours:168}") long retentionHours,
+            @Value("${app.outbox.max-attempts:25}") int maxAttempts,
+            @Value("${app.outbox.initial-backoff-ms:1000}") long initialBackoffMs,
+            @Value("${app.outbox.max-backoff-ms:60000}") long maxBackoffMs
+    ) {
+        this.repository = repository;
+        this.publisher = publisher;
+        this.objectMapper = objectMapper;
+        this.tx = tx;
+        this.batchSize = batchSize;
+        this.confirmTimeout = Duration.ofMillis(confirmTimeoutMs);
+        this.retention = Duration.ofHours(retentionHours);
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = Duration.ofMillis(initialBackoffMs);
+        this.maxBackoff = Duration.ofMillis(maxBackoffMs);
+    }
+
+    @Scheduled(fixedDelayString = "${app.outbox.poll-interval-ms:500}")
+    public void relay() {
+        if (clock.instant().isBefore(retryAt)) {
+            return;
+        }
+        Integer sent;
+        do {
+            sent = tx.execute(status -> relayBatch());
+        } while (sent != null && sent == batchSize);
+    }
+
+    @Scheduled(fixedDelayString = "PT1H")
+    public void purgeSent() {
+        Integer purged = tx.execute(status -> repository.deleteSentBefore(Instant.now().minus(retention)));
+        if (purged != null && purged > 0) {
+            log.info("[OutboxRelay] Purged {} relayed outbox events", purged);
+        }
+    }
+
+    // Returns the number of rows dealt with, less than batchSize stops the current run
+    private int relayBatch() {
+        List<OutboxEvent> batch = repository.lockUnsent(batchSize);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        List<OutboxEvent> rows = new ArrayList<>(batch.size());
+        List<UploadEvent> events = new ArrayList<>(batch.size());
+        for (OutboxEvent row : batch) {
+            try {
+                events.add(objectMapper.readValue(row.getPayload(), UploadEvent.class));
+                rows.add(row);
+            } catch (IOException e) {
+                log.error("[OutboxRelay] Unreadable payload of outbox event id={}, dead-lettered", row.getId(), e);
+                repository.markFailed(List.of(row.getId()), Instant.now());
+            }
+        }
+        if (rows.isEmpty()) {
+            return batch.size();
+        }
+
+        try {
+            publisher.publishConfirmed(events, confirmTimeout);
+        } catch (AmqpException e) {
+            if (brokerUnavailable(e) || rows.size() == 1) {
+                backOff(rows.size(), e);
+            } else {
+                log.warn("[OutboxRelay] Broker rejected batch of {}, retrying one by one: {}", rows.size(), e.getMessage());
+                relayOneByOne(rows, events);
+            }
+            return 0;
+        }
+
+        repository.markSent(rows.stream().map(OutboxEvent::getId).toList(), Instant.now());
+        backoff = Duration.ZERO;
+        log.info("[OutboxRelay] Relayed {} upload events", rows.size());
+        return batch.size();
+    }
+
+    // Events rejected while others went through are charged; all rejected means the broker is at fault
+    private void relayOneByOne(List<OutboxEvent> rows, List<UploadEvent> events) {
+        List<OutboxEvent> rejected = new ArrayList<>();
+        boolean anySent = false;
+        for (int i = 0; i < rows.size(); i++) {
+            OutboxEvent row = rows.get(i);
+            try {
+                publisher.publishConfirmed(List.of(events.get(i)), confirmTimeout);
+                repository.markSent(List.of(row.getId()), Instant.now());
+                anySent = true;
+            } catch (AmqpException e) {
+                if (brokerUnavailable(e)) {
+                    // went away meanwhile, whatever was rejected so far is not to blame either
+                    backOff(rows.size() - i, e);
+                    return;
+                }
+                log.warn("[OutboxRelay] Broker rejected outbox event id={}: {}", row.getId(), e.getMessage());
+                rejected.add(row);
+            }
+        }
+        if (!anySent) {
+            backOff(rows.size(), new AmqpException("every event of the batch was rejected"));
+            return;
+        }
+        backoff = Duration.ZERO;
+        if (rejected.isEmpty()) {
+            return;
+        }
+        repository.markAttempted(rejected.stream().map(OutboxEvent::getId).toList(), maxAttempts);
+        for (OutboxEvent row : rejected) {
+            if (row.getAttempts() + 1 >= maxAttempts) {
+                log.error("[OutboxRelay] Outbox event id={} dead-lettered after {} attempts", row.getId(), maxAttempts);
+            }
+        }
+    }
+
+    private void backOff(int pending, AmqpException e) {
+        backoff = backoff.isZero() ? initialBackoff : min(backoff.multipliedBy(2), maxBackoff);
+        retryAt = clock.instant().plus(backoff);
+        log.warn("[OutboxRelay] Broker unavailable, {} upload events wait, retrying in {} ms: {}",
+                pending, backoff.toMillis(), e.getMessage());
+    }
+
+    private static boolean brokerUnavailable(AmqpException e) {
+        return e instanceof AmqpConnectException || e instanceof AmqpTimeoutException;
+    }
+
+    private static Duration min(Duration a, Duration b) {
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+}
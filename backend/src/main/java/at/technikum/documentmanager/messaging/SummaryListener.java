@@ -8,6 +8,12 @@ import org.springframework.stereotype.Component;
 import at.technikum.documentmanager.service.DocumentService;
 import org.springframework.amqp.core.Message;
 
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
 @Component
 @RequiredArgsConstructor
 @Slf4j
@@ -16,18 +22,26 @@ public class SummaryListener {
     private final ObjectMapper objectMapper;
     private final DocumentService documentService;
 
-    @RabbitListener(queues = "summary-results")
-    public void receive(Message message) {
-        try {
-            String json = new String(message.getBody());
-            SummaryMessage msg = objectMapper.readValue(json, SummaryMessage.class);
-
-            log.info("[SummaryListener] Received summary for {}", msg.getDocumentId());
-            documentService.saveSummary(msg.getDocumentId(), msg.getSummary());
-            log.info("[SummaryListener] Summary saved.");
-
-        } catch (Exception e) {
-            log.error("[SummaryListener] Failed to process summary message: {}", new String(message.getBody()), e);
+    // A failing database write throws and the whole batch is retried, which is safe because
+    // applying a summary twice does not change anything. After the last retry it is dead-lettered.
+    @RabbitListener(queues = "summary-results", containerFactory = "summaryBatchContainerFactory")
+    public void receive(List<Message> messages) {
+        Map<UUID, String> summaries = new LinkedHashMap<>();
+        for (Message message : messages) {
+            try {
+                SummaryMessage msg = objectMapper.readValue(message.getBody(), SummaryMessage.class);
+                summaries.put(msg.getDocumentId(), msg.getSummary()); // latest summary per document wins
+            } catch (Exception e) {
+                log.error("[SummaryListener] Failed to parse summary message: {}",
+                        new String(message.getBody(), StandardCharsets.UTF_8), e);
+            }
         }
+        if (summaries.isEmpty()) {
+            return;
+        }
+
+        int updated = documentService.saveSummaries(summaries);
+        log.info("[SummaryListener] Applied {} summaries from a batch of {} messages ({} changed).",
+                summaries.size(), messages.size(), updated);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,40 @@
+package at.technikum.documentmanager.messaging;
+
+import at.technikum.documentmanager.entity.OutboxEvent;
+import at.technikum.documentmanager.messaging.dto.UploadEvent;
+import at.technikum.documentmanager.repository.OutboxEventRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.UUID;
+
+/**
+ * Records upload events in the outbox table. Must run inside the transaction that persists the
+ * document, so the event exists if and only if the document does; {@link OutboxRelay} publishes it.
+ */
+@Component
+@RequiredArgsConstructor
+public class UploadEventOutbox {
+
+    static final String EVENT_TYPE = "document.uploaded";
+
+    private final OutboxEventRepository repository;
+    private final ObjectMapper objectMapper;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueue(UploadEvent event) {
+        try {
+            repository.save(OutboxEvent.builder()
+                    .aggregateId(UUID.fromString(event.documentId()))
+                    .eventType(EVENT_TYPE)
+                    .payload(objectMapper.writeValueAsString(event))
+                    .build());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize upload event", e);
+        }
+    }
+}
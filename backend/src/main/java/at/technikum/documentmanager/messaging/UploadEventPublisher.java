@@ -8,6 +8,9 @@ import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.List;
+
 @Service
 public class UploadEventPublisher {
 
@@ -27,12 +30,21 @@ public class UploadEventPublisher {
         this.routing = routing;
     }
 
-    public void publish(UploadEvent evt) {
+    // Publishes all events on one channel and waits once for the broker to confirm the whole batch
+    // (requires spring.rabbitmq.publisher-confirm-type=simple).
+    public void publishConfirmed(List<UploadEvent> events, Duration timeout) {
         try {
-            rabbit.convertAndSend(exchange, routing, evt);
-            log.info("upload-event published docId={} filename={}", evt.documentId(), evt.filename());
+            rabbit.invoke(ops -> {
+                for (UploadEvent evt : events) {
+                    ops.convertAndSend(exchange, routing, evt);
+                }
+                ops.waitForConfirmsOrDie(timeout.toMillis());
+                return null;
+            });
+            events.forEach(evt ->
+                    log.info("upload-event published docId={} filename={}", evt.documentId(), evt.filename()));
         } catch (AmqpException ex) {
-            log.error("failed to publish upload-event docId={} cause={}", evt.documentId(), ex.getMessage(), ex);
+            log.error("failed to publish {} upload-events cause={}", events.size(), ex.getMessage(), ex);
             throw ex;
         }
     }
@@ -8,5 +8,6 @@ public record UploadEvent(
         String contentType,
         long size,
         Instant uploadedAt,
-        String uploadedBy
+        String uploadedBy,
+        String storageKey // object name in the bucket, may be shared by several documents
 ) {}
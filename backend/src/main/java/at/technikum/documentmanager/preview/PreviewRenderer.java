@@ -0,0 +1,107 @@
+package at.technikum.documentmanager.preview;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Renders a small PNG of the first page of a PDF or of an image, scaled to at most maxWidth pixels.
+ * PDFs are read from a file so PDFBox can seek instead of buffering the whole document; large images
+ * are subsampled while decoding, so the full-size raster is never allocated.
+ */
+public class PreviewRenderer {
+
+    private final int maxWidth;
+
+    public PreviewRenderer(int maxWidth) {
+        this.maxWidth = maxWidth;
+    }
+
+    public static boolean supports(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase();
+        return type.startsWith("application/pdf")
+                || type.startsWith("image/png")
+                || type.startsWith("image/jpeg")
+                || type.startsWith("image/gif")
+                || type.startsWith("image/bmp");
+    }
+
+    public byte[] render(File source, String contentType) throws IOException {
+        BufferedImage image = contentType.toLowerCase().startsWith("application/pdf")
+                ? renderPdf(source)
+                : readImage(source);
+        return toPng(scale(image));
+    }
+
+    private BufferedImage renderPdf(File source) throws IOException {
+        try (PDDocument pdf = Loader.loadPDF(source)) {
+            if (pdf.getNumberOfPages() == 0) {
+                throw new IOException("PDF has no pages");
+            }
+            PDRectangle box = pdf.getPage(0).getCropBox();
+            // render straight at the target size, PDF units are 1/72 inch
+            float scale = Math.min(1f, maxWidth / box.getWidth());
+            return new PDFRenderer(pdf).renderImage(0, scale, ImageType.RGB);
+        }
+    }
+
+    private BufferedImage readImage(File source) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(source)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int subsampling = Math.max(1, reader.getWidth(0) / (maxWidth * 2));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private BufferedImage scale(BufferedImage image) {
+        if (image.getWidth() <= maxWidth) {
+            return image;
+        }
+        int height = Math.max(1, Math.round(image.getHeight() * (maxWidth / (float) image.getWidth())));
+        BufferedImage scaled = new BufferedImage(maxWidth, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, maxWidth, height, null);
+        } finally {
+            g.dispose();
+        }
+        return scaled;
+    }
+
+    private static byte[] toPng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, "png", out)) {
+            throw new IOException("No PNG writer available");
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,10 @@
+package at.technikum.documentmanager.preview;
+
+import java.util.UUID;
+
+/**
+ * Published when a document got new content (upload or file replacement). {@link PreviewService}
+ * renders its preview once the transaction has committed.
+ */
+public record PreviewRequestedEvent(UUID documentId, String objectName, String contentType) {
+}
@@ -0,0 +1,183 @@
+package at.technikum.documentmanager.preview;
+
+import at.technikum.documentmanager.dto.DocumentMetadata;
+import at.technikum.documentmanager.storage.BlobStore;
+import at.technikum.documentmanager.storage.StorageService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * First-page previews of PDFs and images, stored next to the content object as
+ * {@code <object>.preview.png}. Everything is rendered in the background on a small bounded pool:
+ * new uploads right away, documents without a stored preview (older uploads, or renders dropped
+ * because the queue was full) once it is first requested. Content that cannot be rendered gets a
+ * {@code <object>.preview.failed} marker and is not tried again.
+ */
+@Service
+@Slf4j
+public class PreviewService {
+
+    private final StorageService storageService;
+    private final PreviewRenderer renderer;
+    private final long maxSourceBytes;
+    private final ThreadPoolExecutor executor;
+    // objects queued or being rendered, a preview requested again meanwhile is not queued twice
+    private final Set<String> rendering = ConcurrentHashMap.newKeySet();
+
+    private final Counter rendered;
+    private final Counter failed;
+    private final Counter skipped;
+    private final Timer renderTime;
+
+    public PreviewService(
+            StorageService storageService,
+            @Value("${app.preview.max-width:320}") int maxWidth,
+            @Value("${app.preview.max-source-bytes:52428800}") long maxSourceBytes,
+            @Value("${app.preview.concurrency:2}") int concurrency,
+            @Value("${app.preview.queue-capacity:1000}") int queueCapacity,
+            MeterRegistry registry
+    ) {
+        this.storageService = storageService;
+        this.renderer = new PreviewRenderer(maxWidth);
+        this.maxSourceBytes = maxSourceBytes;
+        // rendering is CPU and memory heavy, a fixed pool keeps upload bursts from starving requests
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                Thread.ofPlatform().name("preview-", 0).daemon().factory());
+
+        this.rendered = Counter.builder("preview.renders").tag("result", "success").register(registry);
+        this.failed = Counter.builder("preview.renders").tag("result", "failure").register(registry);
+        this.skipped = Counter.builder("preview.renders").tag("result", "skipped").register(registry);
+        this.renderTime = Timer.builder("preview.render.time").register(registry);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPreviewRequested(PreviewRequestedEvent event) {
+        schedule(event.documentId(), event.objectName(), event.contentType());
+    }
+
+    // Changes whenever the document gets new content, the preview URL itself stays the same
+    public static String etag(DocumentMetadata doc) {
+        String content = doc.contentSha256() != null
+                ? doc.contentSha256()
+                : Integer.toHexString(doc.storageFilename().hashCode());
+        return "\"preview-" + content + "\"";
+    }
+
+    /**
+     * The stored preview, or empty while it is rendered in the background (a render is queued if
+     * none is yet). Throws {@link NoSuchElementException} if the document has no preview and never will.
+     */
+    public Optional<byte[]> load(DocumentMetadata doc) throws IOException {
+        if (!PreviewRenderer.supports(doc.contentType())) {
+            throw new NoSuchElementException("No preview available for " + doc.contentType());
+        }
+        String objectName = doc.storageFilename();
+        try {
+            Optional<InputStream> stored = storageService.load(BlobStore.previewObjectName(objectName));
+            if (stored.isPresent()) {
+                try (InputStream in = stored.get()) {
+                    return Optional.of(in.readAllBytes());
+                }
+            }
+            if (storageService.exists(BlobStore.previewFailedObjectName(objectName))) {
+                throw new NoSuchElementException("Preview could not be rendered");
+            }
+        } catch (IOException | NoSuchElementException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Failed to load preview: " + e.getMessage(), e);
+        }
+        schedule(doc.id(), objectName, doc.contentType());
+        return Optional.empty();
+    }
+
+    private void schedule(UUID documentId, String objectName, String contentType) {
+        if (!PreviewRenderer.supports(contentType) || !rendering.add(objectName)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    render(objectName, contentType);
+                } catch (Exception e) {
+                    log.warn("Could not render preview of document {}: {}", documentId, e.getMessage());
+                } finally {
+                    rendering.remove(objectName);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rendering.remove(objectName);
+            skipped.increment(); // queued again when the preview is requested
+        }
+    }
+
+    private void render(String objectName, String contentType) throws Exception {
+        long size = storageService.stat(objectName)
+                .orElseThrow(() -> new NoSuchElementException("Stored file not found: " + objectName))
+                .size();
+        if (size > maxSourceBytes) {
+            skipped.increment();
+            markFailed(objectName, "File too large for a preview");
+            throw new NoSuchElementException("File too large for a preview");
+        }
+
+        // PDFBox wants random access; a temp file keeps large documents off the heap
+        File source = Files.createTempFile("preview-", ".src").toFile();
+        try {
+            try (OutputStream out = Files.newOutputStream(source.toPath())) {
+                storageService.transferTo(objectName, 0, -1, out);
+            }
+            byte[] png;
+            try {
+                png = renderTime.recordCallable(() -> renderer.render(source, contentType));
+            } catch (IOException | RuntimeException e) {
+                // damaged or unsupported file, not a storage problem: rendering it again would fail again
+                failed.increment();
+                markFailed(objectName, String.valueOf(e.getMessage()));
+                throw new NoSuchElementException("Preview could not be rendered: " + e.getMessage());
+            }
+            storageService.store(new ByteArrayInputStream(png), png.length, "image/png",
+                    BlobStore.previewObjectName(objectName));
+            rendered.increment();
+            log.debug("Rendered preview of {} ({} bytes)", objectName, png.length);
+        } finally {
+            Files.deleteIfExists(source.toPath());
+        }
+    }
+
+    // The reason is kept as the marker's content for whoever looks at the bucket
+    private void markFailed(String objectName, String reason) throws Exception {
+        byte[] content = reason.getBytes(StandardCharsets.UTF_8);
+        storageService.store(new ByteArrayInputStream(content), content.length, "text/plain",
+                BlobStore.previewFailedObjectName(objectName));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
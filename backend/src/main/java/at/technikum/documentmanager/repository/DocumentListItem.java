@@ -0,0 +1,17 @@
+package at.technikum.documentmanager.repository;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Columns of a document needed for listings. Tags are loaded separately, one query per page.
+ */
+public interface DocumentListItem {
+    UUID getId();
+    String getOriginalFilename();
+    String getContentType();
+    long getSize();
+    Instant getUploadedAt();
+    String getSummary(); // null unless requested, the column is unbounded TEXT
+    Long getVersion();
+}
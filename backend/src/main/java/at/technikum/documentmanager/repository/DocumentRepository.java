@@ -2,11 +2,67 @@ package at.technikum.documentmanager.repository;
 
 import at.technikum.documentmanager.entity.Document;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
-public interface DocumentRepository extends JpaRepository<Document, UUID> {}
+public interface DocumentRepository extends JpaRepository<Document, UUID> {
+
+    // Keyset pagination, newest first. Both queries are served by idx_documents_uploaded_at_id.
+    // Aliases are quoted, Postgres would fold them to lower case and break the projection.
+    @Query(value = """
+            SELECT id, original_filename AS "originalFilename", content_type AS "contentType", size,
+                   uploaded_at AS "uploadedAt", CASE WHEN :withSummary THEN summary END AS summary, version
+            FROM documents
+            ORDER BY uploaded_at DESC, id DESC
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<DocumentListItem> findFirstPage(@Param("limit") int limit,
+                                         @Param("withSummary") boolean withSummary);
+
+    @Query(value = """
+            SELECT id, original_filename AS "originalFilename", content_type AS "contentType", size,
+                   uploaded_at AS "uploadedAt", CASE WHEN :withSummary THEN summary END AS summary, version
+            FROM documents
+            WHERE (uploaded_at, id) < (:uploadedAt, :id)
+            ORDER BY uploaded_at DESC, id DESC
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<DocumentListItem> findPageAfter(@Param("uploadedAt") Instant uploadedAt,
+                                         @Param("id") UUID id,
+                                         @Param("limit") int limit,
+                                         @Param("withSummary") boolean withSummary);
+
+    @Query(value = """
+            SELECT id, original_filename AS "originalFilename", content_type AS "contentType", size,
+                   uploaded_at AS "uploadedAt", summary, version
+            FROM documents
+            WHERE id = :id
+            """, nativeQuery = true)
+    Optional<DocumentListItem> findItemById(@Param("id") UUID id);
+
+    @Query(value = """
+            SELECT id, original_filename AS "originalFilename", content_type AS "contentType", size,
+                   uploaded_at AS "uploadedAt", CASE WHEN :withSummary THEN summary END AS summary, version
+            FROM documents
+            WHERE id IN (:ids)
+            """, nativeQuery = true)
+    List<DocumentListItem> findItemsByIds(@Param("ids") Collection<UUID> ids,
+                                          @Param("withSummary") boolean withSummary);
+
+    // Enough to answer If-None-Match without loading the document
+    @Query("SELECT d.version FROM Document d WHERE d.id = :id")
+    Optional<Long> findVersionById(@Param("id") UUID id);
+
+    @Query("SELECT d.summary AS summary FROM Document d WHERE d.id = :id")
+    Optional<SummaryOnly> findSummaryById(@Param("id") UUID id);
+
+    interface SummaryOnly {
+        String getSummary();
+    }
+}
@@ -0,0 +1,48 @@
+package at.technikum.documentmanager.repository;
+
+import at.technikum.documentmanager.entity.OutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    // SKIP LOCKED lets several relay instances work through the outbox without blocking each other
+    @Query(value = """
+            SELECT * FROM outbox_events
+            WHERE sent_at IS NULL AND failed_at IS NULL
+              AND (next_attempt_at IS NULL OR next_attempt_at <= now())
+            ORDER BY id
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    List<OutboxEvent> lockUnsent(@Param("limit") int limit);
+
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.sentAt = :sentAt WHERE e.id IN :ids")
+    int markSent(@Param("ids") Collection<Long> ids, @Param("sentAt") Instant sentAt);
+
+    // Backs off 1 s, 2 s, 4 s ... up to 15 min; the attempt that reaches maxAttempts dead-letters the row
+    @Modifying
+    @Query(value = """
+            UPDATE outbox_events
+            SET attempts = attempts + 1,
+                next_attempt_at = now() + least(interval '1 second' * power(2, attempts), interval '15 minutes'),
+                failed_at = CASE WHEN attempts + 1 >= :maxAttempts THEN now() END
+            WHERE id IN (:ids)
+            """, nativeQuery = true)
+    int markAttempted(@Param("ids") Collection<Long> ids, @Param("maxAttempts") int maxAttempts);
+
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.failedAt = :failedAt WHERE e.id IN :ids")
+    int markFailed(@Param("ids") Collection<Long> ids, @Param("failedAt") Instant failedAt);
+
+    @Modifying
+    @Query("DELETE FROM OutboxEvent e WHERE e.sentAt < :before")
+    int deleteSentBefore(@Param("before") Instant before);
+}
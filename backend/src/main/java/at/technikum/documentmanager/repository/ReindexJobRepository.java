@@ -0,0 +1,11 @@
+package at.technikum.documentmanager.repository;
+
+import at.technikum.documentmanager.entity.ReindexJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+import java.util.UUID;
+
+public interface ReindexJobRepository extends JpaRepository<ReindexJob, UUID> {
+    List<ReindexJob> findAllByOrderByStartedAtDesc();
+}
@@ -3,9 +3,7 @@ package at.technikum.documentmanager.repository;
 import at.technikum.documentmanager.entity.Tag;
 import org.springframework.data.jpa.repository.JpaRepository;
 
-import java.util.Optional;
 import java.util.UUID;
 
 public interface TagRepository extends JpaRepository<Tag, UUID> {
-    Optional<Tag> findByNameIgnoreCase(String name);
 }
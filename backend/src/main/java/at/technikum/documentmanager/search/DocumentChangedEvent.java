@@ -0,0 +1,15 @@
+package at.technikum.documentmanager.search;
+
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Published when searchable document data changes in the database: metadata, summary,
+ * tags, or the document itself being deleted. {@link SearchIndexSync} mirrors it into the index.
+ */
+public record DocumentChangedEvent(Set<UUID> documentIds) {
+
+    public static DocumentChangedEvent of(UUID documentId) {
+        return new DocumentChangedEvent(Set.of(documentId));
+    }
+}
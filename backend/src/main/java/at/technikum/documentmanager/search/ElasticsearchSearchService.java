@@ -0,0 +1,377 @@
+package at.technikum.documentmanager.search;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregate;
+import co.elastic.clients.elasticsearch._types.aggregations.CalendarInterval;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Highlight;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * The primary engine. Identical queries are answered from a short-lived cache, see
+ * {@link #onIndexChanged}; {@link RoutingSearchService} falls back to Postgres when it is slow or down.
+ */
+@Service
+@ConditionalOnProperty(name = "app.search.engine", havingValue = "elasticsearch", matchIfMissing = true)
+@Slf4j
+public class ElasticsearchSearchService implements SearchService {
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final String indexName;
+    private final int pageSize;
+    private final String pitKeepAlive;
+
+    // Completed results and searches still in flight share one map, so identical concurrent
+    // queries wait on the same Elasticsearch request instead of sending their own.
+    private final AsyncCache<CacheKey, List<SearchResult>> results;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter coalesced;
+
+    public ElasticsearchSearchService(
+            ElasticsearchClient elasticsearchClient,
+            @Value("${elasticsearch.index:documents}") String indexName,
+            @Value("${app.search.page-size:20}") int pageSize,
+            @Value("${app.search.pit-keep-alive:1m}") String pitKeepAlive,
+            @Value("${app.search.cache.max-entries:1000}") long maxEntries,
+            @Value("${app.search.cache.ttl-seconds:30}") long ttlSeconds,
+            MeterRegistry registry
+    ) {
+        this.elasticsearchClient = elasticsearchClient;
+        this.indexName = indexName;
+        this.pageSize = pageSize;
+        this.pitKeepAlive = pitKeepAlive;
+        this.results = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .buildAsync();
+
+        this.hits = Counter.builder("search.cache.requests").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("search.cache.requests").tag("result", "miss").register(registry);
+        this.coalesced = Counter.builder("search.cache.requests").tag("result", "coalesced").register(registry);
+        Gauge.builder("search.cache.entries", results, c -> c.synchronous().estimatedSize()).register(registry);
+    }
+
+    @Override
+    public List<SearchResult> search(String query) {
+        CacheKey key = new CacheKey(normalize(query));
+
+        CompletableFuture<List<SearchResult>> mine = new CompletableFuture<>();
+        CompletableFuture<List<SearchResult>> existing = results.asMap().putIfAbsent(key, mine);
+        if (existing != null) {
+            (existing.isDone() ? hits : coalesced).increment();
+            return await(existing);
+        }
+
+        misses.increment();
+        try {
+            mine.complete(execute(key.query()));
+        } catch (Throwable e) {
+            // Errors too: an uncompleted future would block every caller of this query for good.
+            // Waiting callers see the same failure, the next one searches again.
+            results.asMap().remove(key, mine);
+            mine.completeExceptionally(e);
+        }
+        return await(mine);
+    }
+
+    // Results may be stale for at most the TTL when the index is written by the indexing worker;
+    // writes of SearchIndexSync drop the cache right away.
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onIndexChanged(SearchIndexChangedEvent event) {
+        results.synchronous().invalidateAll();
+        log.debug("Search cache invalidated for {} changed documents", event.documentIds().size());
+    }
+
+    private List<SearchResult> execute(String query) {
+        try {
+            SearchResponse<IndexedDocument> response = elasticsearchClient.search(s -> s
+                            .index(indexName)
+                            .size(pageSize)
+                            .query(textQuery(query))
+                            .highlight(highlight()),
+                    IndexedDocument.class);
+
+            return response.hits().hits().stream()
+                    .map(this::mapHit)
+                    .toList();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to search documents", e);
+        }
+    }
+
+    /**
+     * Cursor-based paging over a point-in-time snapshot of the index. Each page continues with
+     * search_after from the last hit, so page n costs the same as the first one.
+     */
+    @Override
+    public SearchPage searchPage(String query, String cursor, int size) {
+        SearchCursor after = cursor == null || cursor.isBlank() ? null : SearchCursor.decode(cursor);
+        String q = after != null ? after.query() : normalize(query);
+
+        try {
+            String pitId = after != null ? after.pitId() : elasticsearchClient.openPointInTime(p -> p
+                    .index(indexName)
+                    .keepAlive(t -> t.time(pitKeepAlive))).id();
+
+            SearchResponse<IndexedDocument> response = elasticsearchClient.search(s -> {
+                        s.size(size)
+                                .pit(p -> p.id(pitId).keepAlive(t -> t.time(pitKeepAlive)))
+                                .sort(o -> o.score(sc -> sc.order(SortOrder.Desc)))
+                                .sort(o -> o.field(f -> f.field("_shard_doc").order(SortOrder.Asc)))
+                                .query(textQuery(q))
+                                .highlight(highlight());
+                        if (after != null) {
+                            s.searchAfter(FieldValue.of(after.score()), FieldValue.of(after.shardDoc()));
+                        }
+                        return s;
+                    },
+                    IndexedDocument.class);
+
+            List<Hit<IndexedDocument>> hits = response.hits().hits();
+            // ES may hand out a new PIT id with every response, always continue with the latest
+            String nextPit = response.pitId() != null ? response.pitId() : pitId;
+            String next = null;
+            if (hits.size() == size) {
+                List<FieldValue> sort = hits.getLast().sort();
+                next = new SearchCursor(nextPit, sort.get(0).doubleValue(), sort.get(1).longValue(), q).encode();
+            } else {
+                closePointInTime(nextPit);
+            }
+            return new SearchPage(hits.stream().map(this::mapHit).toList(), next);
+        } catch (ElasticsearchException e) {
+            if (after != null && e.status() == 404) {
+                throw new IllegalArgumentException("Search cursor expired, start a new search");
+            }
+            throw e;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to search documents", e);
+        }
+    }
+
+    /**
+     * Scored text match with the selected facets as non-scoring filter clauses, which
+     * Elasticsearch caches as bitsets, so drilling down does not re-score the whole corpus.
+     */
+    @Override
+    public FacetedSearchResult searchFaceted(SearchQuery query) {
+        try {
+            SearchResponse<IndexedDocument> response = elasticsearchClient.search(s -> s
+                            .index(indexName)
+                            .size(pageSize)
+                            .query(filteredQuery(query))
+                            .highlight(highlight())
+                            .aggregations(FACET_CONTENT_TYPE, a -> a.terms(t -> t.field("contentType").size(20)))
+                            .aggregations(FACET_TAGS, a -> a.terms(t -> t.field("tagNames").size(50)))
+                            .aggregations(FACET_UPLOADED_AT, a -> a.dateHistogram(d -> d
+                                    .field("uploadedAt")
+                                    .calendarInterval(CalendarInterval.Month)
+                                    .format("yyyy-MM")
+                                    .minDocCount(1)))
+                            .aggregations(FACET_SIZE, a -> a.range(r -> {
+                                r.field("size");
+                                for (SizeRange range : SizeRange.values()) {
+                                    r.ranges(b -> b
+                                            .key(range.key())
+                                            .from(range.from() != null ? range.from().doubleValue() : null)
+                                            .to(range.to() != null ? range.to().doubleValue() : null));
+                                }
+                                return r;
+                            })),
+                    IndexedDocument.class);
+
+            Map<String, Aggregate> aggs = response.aggregations();
+            Map<String, List<FacetBucket>> facets = new LinkedHashMap<>();
+            facets.put(FACET_CONTENT_TYPE, aggs.get(FACET_CONTENT_TYPE).sterms().buckets().array().stream()
+                    .map(b -> new FacetBucket(b.key().stringValue(), b.docCount()))
+                    .toList());
+            facets.put(FACET_TAGS, aggs.get(FACET_TAGS).sterms().buckets().array().stream()
+                    .map(b -> new FacetBucket(b.key().stringValue(), b.docCount()))
+                    .toList());
+            facets.put(FACET_UPLOADED_AT, aggs.get(FACET_UPLOADED_AT).dateHistogram().buckets().array().stream()
+                    .map(b -> new FacetBucket(b.keyAsString(), b.docCount()))
+                    .toList());
+            facets.put(FACET_SIZE, aggs.get(FACET_SIZE).range().buckets().array().stream()
+                    .map(b -> new FacetBucket(b.key(), b.docCount()))
+                    .toList());
+
+            long total = response.hits().total() != null ? response.hits().total().value() : response.hits().hits().size();
+            return new FacetedSearchResult(response.hits().hits().stream().map(this::mapHit).toList(), total, facets);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to search documents", e);
+        }
+    }
+
+    private static Query filteredQuery(SearchQuery query) {
+        return Query.of(q -> q.bool(b -> {
+            if (query.hasText()) {
+                b.must(textQuery(normalize(query.text())));
+            } else {
+                b.must(m -> m.matchAll(all -> all));
+            }
+            if (!query.contentTypes().isEmpty()) {
+                b.filter(f -> f.terms(t -> t
+                        .field("contentType")
+                        .terms(v -> v.value(query.contentTypes().stream().map(FieldValue::of).toList()))));
+            }
+            // every selected tag must be present, tag names are synced into the index by SearchIndexSync
+            for (String tag : query.tags()) {
+                b.filter(f -> f.term(t -> t.field("tagNames").value(tag)));
+            }
+            if (query.uploadedFrom() != null || query.uploadedTo() != null) {
+                b.filter(f -> f.range(r -> r.date(d -> {
+                    d.field("uploadedAt");
+                    if (query.uploadedFrom() != null) {
+                        d.gte(query.uploadedFrom().toString());
+                    }
+                    if (query.uploadedTo() != null) {
+                        d.lt(query.uploadedTo().toString());
+                    }
+                    return d;
+                })));
+            }
+            if (!query.sizeRanges().isEmpty()) {
+                // several selected buckets are OR-ed, but still in filter context
+                b.filter(f -> f.bool(any -> {
+                    for (SizeRange range : query.sizeRanges()) {
+                        any.should(sq -> sq.range(r -> r.number(n -> {
+                            n.field("size");
+                            if (range.from() != null) {
+                                n.gte(range.from().doubleValue());
+                            }
+                            if (range.to() != null) {
+                                n.lt(range.to().doubleValue());
+                            }
+                            return n;
+                        })));
+                    }
+                    return any.minimumShouldMatch("1");
+                }));
+            }
+            return b;
+        }));
+    }
+
+    private void closePointInTime(String pitId) {
+        try {
+            elasticsearchClient.closePointInTime(c -> c.id(pitId));
+        } catch (IOException | ElasticsearchException e) {
+            // the PIT expires on its own after the keep-alive
+            log.debug("Failed to close point in time: {}", e.getMessage());
+        }
+    }
+
+    private static Query textQuery(String query) {
+        return Query.of(q -> q.multiMatch(m -> m
+                .fields("text")
+                .fields("filename")
+                .fields("summary")
+                .query(query)
+        ));
+    }
+
+    private static Highlight highlight() {
+        return Highlight.of(h -> h
+                .fields("text", f -> f.fragmentSize(160).numberOfFragments(1))
+                .fields("summary", f -> f.fragmentSize(160).numberOfFragments(1))
+        );
+    }
+
+    private static List<SearchResult> await(CompletableFuture<List<SearchResult>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // The query is analysed case-insensitively, so case and spacing do not change the result
+    private static String normalize(String query) {
+        return query == null ? "" : query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private SearchResult mapHit(Hit<IndexedDocument> hit) {
+        IndexedDocument source = hit.source();
+        String snippet = buildSnippet(hit, source);
+        UUID id = parseUuid(hit.id());
+        return new SearchResult(
+                id,
+                source != null ? source.getFilename() : null,
+                source != null ? source.getContentType() : null,
+                source != null ? source.getUploadedAt() : null,
+                snippet,
+                hit.score() != null ? hit.score() : 0.0,
+                source != null && source.getTagNames() != null ? source.getTagNames() : List.of()
+        );
+    }
+
+    private String buildSnippet(Hit<IndexedDocument> hit, IndexedDocument source) {
+        Map<String, List<String>> highlights = hit.highlight();
+        if (highlights != null) {
+            List<String> textFragments = highlights.get("text");
+            if (textFragments != null && !textFragments.isEmpty()) {
+                return stripTags(textFragments.get(0));
+            }
+            List<String> summaryFragments = highlights.get("summary");
+            if (summaryFragments != null && !summaryFragments.isEmpty()) {
+                return stripTags(summaryFragments.get(0));
+            }
+        }
+        if (source != null && source.getSummary() != null && !source.getSummary().isBlank()) {
+            return trim(source.getSummary());
+        }
+        if (source != null && source.getText() != null && !source.getText().isBlank()) {
+            return trim(source.getText());
+        }
+        return "";
+    }
+
+    private String stripTags(String value) {
+        return value.replaceAll("<[^>]+>", "");
+    }
+
+    private String trim(String value) {
+        return value.length() > 200 ? value.substring(0, 200) + "..." : value;
+    }
+
+    private UUID parseUuid(String id) {
+        try {
+            return UUID.fromString(id);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private record CacheKey(String query) {
+    }
+}
@@ -0,0 +1,7 @@
+package at.technikum.documentmanager.search;
+
+public record FacetBucket(
+        String key,
+        long count
+) {
+}
@@ -0,0 +1,11 @@
+package at.technikum.documentmanager.search;
+
+import java.util.List;
+import java.util.Map;
+
+public record FacetedSearchResult(
+        List<SearchResult> items,
+        long total,
+        Map<String, List<FacetBucket>> facets // facet name -> buckets, counted over the filtered result
+) {
+}
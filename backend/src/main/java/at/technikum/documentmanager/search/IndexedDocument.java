@@ -5,6 +5,7 @@ import lombok.Setter;
 import lombok.ToString;
 
 import java.time.Instant;
+import java.util.List;
 
 @Getter
 @Setter
@@ -17,4 +18,6 @@ public class IndexedDocument {
     private Long size;
     private String text;
     private String summary;
+    private List<String> tagIds;
+    private List<String> tagNames;
 }
@@ -0,0 +1,422 @@
+package at.technikum.documentmanager.search;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetField;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherLifetimeManager;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The embedded index of app.search.engine=lucene, stored memory-mapped under app.search.lucene.path.
+ * It is fed like {@link SearchIndexSync}: changed document ids are collected from
+ * {@link DocumentChangedEvent}s and the current rows, OCR text included, are written in batches.
+ * Readers are refreshed right after every batch (near-real-time, without a commit), commits only
+ * run every commit-interval-ms and on shutdown.
+ */
+@Component
+@ConditionalOnProperty(name = "app.search.engine", havingValue = "lucene")
+@Slf4j
+public class LuceneIndex {
+
+    // field names, the same as in the Elasticsearch index
+    static final String ID = "documentId";
+    static final String FILENAME = "filename";
+    static final String CONTENT_TYPE = "contentType";
+    static final String UPLOADED_AT = "uploadedAt";
+    static final String SIZE = "size";
+    static final String SUMMARY = "summary";
+    static final String TEXT = "text";
+    static final String TAGS = "tagNames";
+
+    // the highlighter reads offsets from the postings instead of re-analysing the stored text
+    private static final FieldType TEXT_WITH_OFFSETS = new FieldType(TextField.TYPE_STORED);
+
+    static {
+        TEXT_WITH_OFFSETS.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+        TEXT_WITH_OFFSETS.freeze();
+    }
+
+    // commit user data: changes to documents.changed_at before this instant (epoch millis) are committed
+    static final String HIGH_WATER_MARK = "dbHighWaterMark";
+
+    // covers the time between a database commit and its event, and clock skew to the database server
+    private static final Duration HIGH_WATER_MARGIN = Duration.ofMinutes(5);
+
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyy-MM").withZone(ZoneOffset.UTC);
+
+    private final JdbcTemplate jdbc;
+    private final int batchSize;
+    private final Duration cursorKeepAlive;
+
+    private final MMapDirectory directory;
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private final FacetsConfig facetsConfig = new FacetsConfig();
+    private final IndexWriter writer;
+    private final SearcherManager searchers;
+    private final SearcherLifetimeManager snapshots = new SearcherLifetimeManager();
+
+    private final Map<UUID, Instant> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final Counter updated;
+    private final Counter deleted;
+    private final Counter failures;
+
+    public LuceneIndex(
+            JdbcTemplate jdbc,
+            @Value("${app.search.lucene.path:./data/lucene}") Path path,
+            @Value("${app.search.sync.batch-size:500}") int batchSize,
+            @Value("${app.search.pit-keep-alive:1m}") Duration cursorKeepAlive,
+            MeterRegistry registry
+    ) throws IOException {
+        this.jdbc = jdbc;
+        this.batchSize = batchSize;
+        this.cursorKeepAlive = cursorKeepAlive;
+
+        facetsConfig.setMultiValued(SearchService.FACET_TAGS, true);
+        this.directory = new MMapDirectory(path);
+        this.writer = new IndexWriter(directory, new IndexWriterConfig(analyzer)
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+        this.searchers = new SearcherManager(writer, null);
+
+        this.updated = Counter.builder("search.sync.operations").tag("type", "update").register(registry);
+        this.deleted = Counter.builder("search.sync.operations").tag("type", "delete").register(registry);
+        this.failures = Counter.builder("search.sync.failures").register(registry);
+        Gauge.builder("search.sync.pending", pending, Map::size).register(registry);
+        Gauge.builder("search.lucene.documents", writer, w -> w.getDocStats().numDocs).register(registry);
+    }
+
+    /**
+     * Events of changes made while the backend was down are lost, and so are changes written since
+     * the last commit when it crashed. Every commit stores a high-water mark of documents.changed_at,
+     * rows changed after it (less a margin) are re-read. Deleted rows leave nothing to compare with,
+     * so the document counts decide whether the ids of index and database are diffed as well.
+     * An index without a mark (written by an older version) is rebuilt from all rows when the counts
+     * differ.
+     * <p>
+     * A write transaction whose changing statement ran more than the margin before its commit can
+     * still be missed; the document transactions are short, uploads stage their content outside.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcile() throws IOException {
+        Long rows = jdbc.queryForObject("SELECT count(*) FROM documents", Long.class);
+        int indexed = writer.getDocStats().numDocs;
+        Instant now = Instant.now();
+        Instant mark = highWaterMark();
+        if (mark == null) {
+            if (rows != null && rows == indexed) {
+                return;
+            }
+            log.info("Search index has {} documents, database {}; re-indexing all of them", indexed, rows);
+            Set<UUID> ids = new LinkedHashSet<>(jdbc.queryForList("SELECT id FROM documents", UUID.class));
+            ids.addAll(indexedIds());
+            ids.forEach(id -> pending.putIfAbsent(id, now));
+            return;
+        }
+
+        List<UUID> changed = jdbc.queryForList("SELECT id FROM documents WHERE changed_at > ?", UUID.class,
+                Timestamp.from(mark.minus(HIGH_WATER_MARGIN)));
+        changed.forEach(id -> pending.putIfAbsent(id, now));
+        // what the index counts once the changed rows are written, unless deletes were lost as well
+        long expected = indexed + changed.size() - countIndexed(changed);
+        if (rows != null && rows != expected) {
+            Set<UUID> dbIds = new HashSet<>(jdbc.queryForList("SELECT id FROM documents", UUID.class));
+            Set<UUID> indexIds = indexedIds();
+            Set<UUID> differing = new HashSet<>(dbIds);
+            differing.addAll(indexIds);
+            dbIds.retainAll(indexIds);
+            differing.removeAll(dbIds);
+            differing.forEach(id -> pending.putIfAbsent(id, now));
+            log.info("Search index misses {} inserts or deletes", differing.size());
+        }
+        if (!changed.isEmpty()) {
+            log.info("Re-indexing {} documents changed since {}", changed.size(), mark);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDocumentChanged(DocumentChangedEvent event) {
+        Instant now = Instant.now();
+        for (UUID id : event.documentIds()) {
+            pending.putIfAbsent(id, now);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.search.sync.flush-interval-ms:1000}")
+    public void flush() {
+        if (!flushLock.tryLock()) {
+            return;
+        }
+        try {
+            while (!pending.isEmpty()) {
+                Map<UUID, Instant> batch = drain(batchSize);
+                try {
+                    write(batch.keySet(), loadDocuments(batch.keySet()));
+                } catch (IOException | RuntimeException e) {
+                    // the database or the disk is failing, the next scheduled flush tries again
+                    failures.increment();
+                    batch.forEach(pending::putIfAbsent);
+                    log.warn("Search index update of {} documents failed: {}", batch.size(), e.getMessage());
+                    return;
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.search.lucene.commit-interval-ms:10000}")
+    public void commit() throws IOException {
+        // no batch may be in flight: its changes are older than the mark but not in the writer yet
+        flushLock.lock();
+        try {
+            if (writer.hasUncommittedChanges()) {
+                // every change whose event arrived before the oldest pending one is in the writer
+                Instant mark = pending.values().stream().min(Instant::compareTo).orElseGet(Instant::now);
+                writer.setLiveCommitData(Map.of(HIGH_WATER_MARK, Long.toString(mark.toEpochMilli())).entrySet());
+                writer.commit();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+        // cursors older than the keep-alive expire, like an Elasticsearch point in time
+        snapshots.prune(new SearcherLifetimeManager.PruneByAge(cursorKeepAlive.toSeconds()));
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        flush();
+        commit();
+        snapshots.close();
+        searchers.close();
+        writer.close();
+        directory.close();
+    }
+
+    /**
+     * Replaces every id in ids with its document in docs, or deletes it when there is none, and
+     * makes the result visible to searches.
+     */
+    void write(Set<UUID> ids, Map<UUID, IndexedDocument> docs) throws IOException {
+        for (UUID id : ids) {
+            IndexedDocument doc = docs.get(id);
+            Term term = new Term(ID, id.toString());
+            if (doc == null) {
+                writer.deleteDocuments(term);
+                deleted.increment();
+            } else {
+                writer.updateDocument(term, facetsConfig.build(toLucene(doc)));
+                updated.increment();
+            }
+        }
+        searchers.maybeRefreshBlocking();
+        log.debug("Wrote {} documents to the search index", ids.size());
+    }
+
+    IndexSearcher acquire() throws IOException {
+        return searchers.acquire();
+    }
+
+    void release(IndexSearcher searcher) throws IOException {
+        searchers.release(searcher);
+    }
+
+    // Keeps the searcher open for later pages, see acquireSnapshot
+    long recordSnapshot(IndexSearcher searcher) throws IOException {
+        return snapshots.record(searcher);
+    }
+
+    // null once the snapshot is pruned
+    IndexSearcher acquireSnapshot(long version) {
+        return snapshots.acquire(version);
+    }
+
+    void releaseSnapshot(IndexSearcher searcher) throws IOException {
+        snapshots.release(searcher);
+    }
+
+    Analyzer analyzer() {
+        return analyzer;
+    }
+
+    FacetsConfig facetsConfig() {
+        return facetsConfig;
+    }
+
+    private Document toLucene(IndexedDocument source) {
+        Document doc = new Document();
+        doc.add(new StringField(ID, source.getDocumentId(), Field.Store.YES));
+        if (source.getFilename() != null) {
+            doc.add(new TextField(FILENAME, source.getFilename(), Field.Store.YES));
+        }
+        if (source.getContentType() != null) {
+            doc.add(new StringField(CONTENT_TYPE, source.getContentType(), Field.Store.YES));
+            doc.add(new SortedSetDocValuesFacetField(SearchService.FACET_CONTENT_TYPE, source.getContentType()));
+        }
+        if (source.getUploadedAt() != null) {
+            long millis = source.getUploadedAt().toEpochMilli();
+            doc.add(new LongPoint(UPLOADED_AT, millis));
+            doc.add(new StoredField(UPLOADED_AT, millis));
+            doc.add(new SortedSetDocValuesFacetField(SearchService.FACET_UPLOADED_AT, MONTH.format(source.getUploadedAt())));
+        }
+        if (source.getSize() != null) {
+            doc.add(new LongPoint(SIZE, source.getSize()));
+            doc.add(new NumericDocValuesField(SIZE, source.getSize()));
+        }
+        if (source.getSummary() != null) {
+            doc.add(new Field(SUMMARY, source.getSummary(), TEXT_WITH_OFFSETS));
+        }
+        if (source.getText() != null) {
+            doc.add(new Field(TEXT, source.getText(), TEXT_WITH_OFFSETS));
+        }
+        for (String tag : source.getTagNames() != null ? source.getTagNames() : List.<String>of()) {
+            doc.add(new StringField(TAGS, tag, Field.Store.YES));
+            doc.add(new SortedSetDocValuesFacetField(SearchService.FACET_TAGS, tag));
+        }
+        return doc;
+    }
+
+    private Map<UUID, IndexedDocument> loadDocuments(Set<UUID> ids) {
+        String placeholders = String.join(",", Collections.nCopies(ids.size(), "?"));
+        Map<UUID, IndexedDocument> result = new LinkedHashMap<>();
+        jdbc.query("""
+                        SELECT d.id, d.original_filename, d.content_type, d.size, d.uploaded_at, d.summary, d.ocr_text,
+                               t.name AS tag_name
+                        FROM documents d
+                        LEFT JOIN document_tags dt ON dt.document_id = d.id
+                        LEFT JOIN tags t ON t.id = dt.tag_id
+                        WHERE d.id IN (%s)
+                        """.formatted(placeholders),
+                rs -> {
+                    UUID id = rs.getObject("id", UUID.class);
+                    IndexedDocument doc = result.get(id);
+                    if (doc == null) {
+                        doc = new IndexedDocument();
+                        doc.setDocumentId(id.toString());
+                        doc.setFilename(rs.getString("original_filename"));
+                        doc.setContentType(rs.getString("content_type"));
+                        doc.setSize(rs.getLong("size"));
+                        Timestamp uploadedAt = rs.getTimestamp("uploaded_at");
+                        doc.setUploadedAt(uploadedAt != null ? uploadedAt.toInstant() : null);
+                        doc.setSummary(rs.getString("summary"));
+                        doc.setText(rs.getString("ocr_text"));
+                        doc.setTagNames(new ArrayList<>());
+                        result.put(id, doc);
+                    }
+                    String tag = rs.getString("tag_name");
+                    if (tag != null) {
+                        doc.getTagNames().add(tag);
+                    }
+                },
+                ids.toArray());
+        return result;
+    }
+
+    // null for an empty index or one committed before the mark was introduced
+    private Instant highWaterMark() {
+        Iterable<Map.Entry<String, String>> data = writer.getLiveCommitData();
+        if (data != null) {
+            for (Map.Entry<String, String> e : data) {
+                if (HIGH_WATER_MARK.equals(e.getKey())) {
+                    return Instant.ofEpochMilli(Long.parseLong(e.getValue()));
+                }
+            }
+        }
+        return null;
+    }
+
+    private int countIndexed(List<UUID> ids) throws IOException {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        IndexSearcher searcher = searchers.acquire();
+        try {
+            return searcher.count(new TermInSetQuery(ID, ids.stream().map(id -> new BytesRef(id.toString())).toList()));
+        } finally {
+            searchers.release(searcher);
+        }
+    }
+
+    private Set<UUID> indexedIds() throws IOException {
+        Set<UUID> ids = new HashSet<>();
+        IndexSearcher searcher = searchers.acquire();
+        try {
+            for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+                StoredFields fields = leaf.reader().storedFields();
+                Bits live = leaf.reader().getLiveDocs();
+                for (int doc = 0; doc < leaf.reader().maxDoc(); doc++) {
+                    if (live == null || live.get(doc)) {
+                        ids.add(UUID.fromString(fields.document(doc, Set.of(ID)).get(ID)));
+                    }
+                }
+            }
+        } finally {
+            searchers.release(searcher);
+        }
+        return ids;
+    }
+
+    private Map<UUID, Instant> drain(int max) {
+        Map<UUID, Instant> batch = new LinkedHashMap<>();
+        Iterator<Map.Entry<UUID, Instant>> it = pending.entrySet().iterator();
+        while (it.hasNext() && batch.size() < max) {
+            Map.Entry<UUID, Instant> e = it.next();
+            batch.put(e.getKey(), e.getValue());
+            it.remove();
+        }
+        return batch;
+    }
+}
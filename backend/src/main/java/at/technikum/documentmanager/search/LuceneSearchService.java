@@ -0,0 +1,323 @@
+package at.technikum.documentmanager.search;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.facet.FacetResult;
+import org.apache.lucene.facet.Facets;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.LabelAndValue;
+import org.apache.lucene.facet.range.LongRange;
+import org.apache.lucene.facet.range.LongRangeFacetCounts;
+import org.apache.lucene.facet.sortedset.DefaultSortedSetDocValuesReaderState;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetCounts;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DisjunctionMaxQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.uhighlight.DefaultPassageFormatter;
+import org.apache.lucene.search.uhighlight.LengthGoalBreakIterator;
+import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.QueryBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.text.BreakIterator;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Searches the in-process {@link LuceneIndex}, for single-node installs without an Elasticsearch
+ * container. Queries mirror the Elasticsearch ones: a best-fields match over text, filename and
+ * summary (BM25 scores), non-scoring filter clauses for the facets, and one highlighted fragment
+ * of about 160 characters from the OCR text or the summary. No result cache, a search costs less
+ * than the round trip to one.
+ */
+@Service
+@Primary
+@ConditionalOnProperty(name = "app.search.engine", havingValue = "lucene")
+public class LuceneSearchService implements SearchService {
+
+    // cursors of this engine carry the searcher version where Elasticsearch keeps its point-in-time id
+    static final String CURSOR_PREFIX = "lucene:";
+
+    private static final String[] TEXT_FIELDS = {LuceneIndex.TEXT, LuceneIndex.FILENAME, LuceneIndex.SUMMARY};
+    private static final String[] HIGHLIGHT_FIELDS = {LuceneIndex.TEXT, LuceneIndex.SUMMARY};
+    // getSentenceInstance loads and compiles the rules every time, a clone is a copy of the tables
+    private static final BreakIterator SENTENCES = BreakIterator.getSentenceInstance(Locale.ROOT);
+
+    private final LuceneIndex index;
+    private final int pageSize;
+
+    // Ordinals of the facet values, per reader; rebuilding them is a full pass over the values
+    private volatile FacetState facetState;
+
+    public LuceneSearchService(LuceneIndex index,
+                               @Value("${app.search.page-size:20}") int pageSize) {
+        this.index = index;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public List<SearchResult> search(String query) {
+        if (query == null || query.isBlank()) {
+            return List.of();
+        }
+        try {
+            IndexSearcher searcher = index.acquire();
+            try {
+                Query q = textQuery(query);
+                return hits(searcher, q, searcher.search(q, pageSize));
+            } finally {
+                index.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to search documents", e);
+        }
+    }
+
+    /**
+     * Pages are read from the searcher the first page was served from, so documents indexed in
+     * between do not shift the result, like a point in time in Elasticsearch.
+     */
+    @Override
+    public SearchPage searchPage(String query, String cursor, int size) {
+        SearchCursor after = cursor == null || cursor.isBlank() ? null : SearchCursor.decode(cursor);
+        String text = after != null ? after.query() : query;
+        if (text == null || text.isBlank()) {
+            return new SearchPage(List.of(), null);
+        }
+
+        try {
+            long version;
+            IndexSearcher searcher;
+            if (after == null) {
+                IndexSearcher current = index.acquire();
+                try {
+                    version = index.recordSnapshot(current);
+                } finally {
+                    index.release(current);
+                }
+                searcher = index.acquireSnapshot(version);
+            } else {
+                version = parseVersion(after);
+                searcher = index.acquireSnapshot(version);
+            }
+            if (searcher == null) {
+                throw new IllegalArgumentException("Search cursor expired, start a new search");
+            }
+
+            try {
+                Query q = textQuery(text);
+                TopDocs top = after == null
+                        ? searcher.search(q, size)
+                        : searcher.searchAfter(new ScoreDoc((int) after.shardDoc(), (float) after.score()), q, size);
+                List<SearchResult> items = hits(searcher, q, top);
+                String next = null;
+                if (top.scoreDocs.length == size) {
+                    ScoreDoc last = top.scoreDocs[top.scoreDocs.length - 1];
+                    next = new SearchCursor(CURSOR_PREFIX + version, last.score, last.doc, text).encode();
+                }
+                return new SearchPage(items, next);
+            } finally {
+                index.releaseSnapshot(searcher);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to search documents", e);
+        }
+    }
+
+    @Override
+    public FacetedSearchResult searchFaceted(SearchQuery query) {
+        try {
+            IndexSearcher searcher = index.acquire();
+            try {
+                Query q = filteredQuery(query);
+                FacetsCollector collector = new FacetsCollector();
+                TopDocs top = FacetsCollector.search(searcher, q, pageSize, collector);
+
+                long total = 0;
+                for (FacetsCollector.MatchingDocs matching : collector.getMatchingDocs()) {
+                    total += matching.totalHits;
+                }
+
+                Map<String, List<FacetBucket>> facets = new LinkedHashMap<>();
+                Facets counts = sortedSetCounts(searcher.getIndexReader(), collector);
+                facets.put(FACET_CONTENT_TYPE, buckets(counts == null ? null : counts.getTopChildren(20, FACET_CONTENT_TYPE)));
+                facets.put(FACET_TAGS, buckets(counts == null ? null : counts.getTopChildren(50, FACET_TAGS)));
+                List<FacetBucket> months = new ArrayList<>(buckets(counts == null ? null : counts.getAllChildren(FACET_UPLOADED_AT)));
+                months.sort((a, b) -> a.key().compareTo(b.key()));
+                facets.put(FACET_UPLOADED_AT, months);
+                facets.put(FACET_SIZE, buckets(new LongRangeFacetCounts(LuceneIndex.SIZE, collector, sizeRanges())
+                        .getAllChildren(LuceneIndex.SIZE)));
+
+                return new FacetedSearchResult(hits(searcher, q, top), total, facets);
+            } finally {
+                index.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to search documents", e);
+        }
+    }
+
+    private Query filteredQuery(SearchQuery query) {
+        BooleanQuery.Builder b = new BooleanQuery.Builder();
+        b.add(query.hasText() ? textQuery(query.text()) : new MatchAllDocsQuery(), BooleanClause.Occur.MUST);
+        if (!query.contentTypes().isEmpty()) {
+            b.add(new TermInSetQuery(LuceneIndex.CONTENT_TYPE, query.contentTypes().stream().map(BytesRef::new).toList()),
+                    BooleanClause.Occur.FILTER);
+        }
+        for (String tag : query.tags()) {
+            b.add(new TermQuery(new Term(LuceneIndex.TAGS, tag)), BooleanClause.Occur.FILTER);
+        }
+        if (query.uploadedFrom() != null || query.uploadedTo() != null) {
+            long from = query.uploadedFrom() != null ? query.uploadedFrom().toEpochMilli() : Long.MIN_VALUE;
+            long to = query.uploadedTo() != null ? query.uploadedTo().toEpochMilli() - 1 : Long.MAX_VALUE;
+            b.add(LongPoint.newRangeQuery(LuceneIndex.UPLOADED_AT, from, to), BooleanClause.Occur.FILTER);
+        }
+        if (!query.sizeRanges().isEmpty()) {
+            BooleanQuery.Builder any = new BooleanQuery.Builder();
+            for (SizeRange range : query.sizeRanges()) {
+                any.add(LongPoint.newRangeQuery(LuceneIndex.SIZE,
+                        range.from() != null ? range.from() : Long.MIN_VALUE,
+                        range.to() != null ? range.to() - 1 : Long.MAX_VALUE), BooleanClause.Occur.SHOULD);
+            }
+            b.add(any.build(), BooleanClause.Occur.FILTER);
+        }
+        return b.build();
+    }
+
+    // Like a multi_match of type best_fields: the best matching field scores the document
+    private Query textQuery(String text) {
+        QueryBuilder builder = new QueryBuilder(index.analyzer());
+        List<Query> perField = new ArrayList<>();
+        for (String field : TEXT_FIELDS) {
+            Query q = builder.createBooleanQuery(field, text);
+            if (q != null) {
+                perField.add(q);
+            }
+        }
+        return perField.isEmpty() ? new MatchNoDocsQuery() : new DisjunctionMaxQuery(perField, 0f);
+    }
+
+    private List<SearchResult> hits(IndexSearcher searcher, Query query, TopDocs top) throws IOException {
+        if (top.scoreDocs.length == 0) {
+            return List.of();
+        }
+        UnifiedHighlighter highlighter = UnifiedHighlighter.builder(searcher, index.analyzer())
+                .withFormatter(new DefaultPassageFormatter("", "", "...", false))
+                .withBreakIterator(() -> LengthGoalBreakIterator.createClosestToLength(
+                        (BreakIterator) SENTENCES.clone(), 160, 0.5f))
+                .withMaxNoHighlightPassages(0)
+                .build();
+        int[] passages = new int[HIGHLIGHT_FIELDS.length];
+        Arrays.fill(passages, 1);
+        Map<String, String[]> highlights = highlighter.highlightFields(HIGHLIGHT_FIELDS, query, top, passages);
+
+        StoredFields stored = searcher.storedFields();
+        List<SearchResult> results = new ArrayList<>(top.scoreDocs.length);
+        for (int i = 0; i < top.scoreDocs.length; i++) {
+            ScoreDoc hit = top.scoreDocs[i];
+            Document doc = stored.document(hit.doc);
+            IndexableField uploadedAt = doc.getField(LuceneIndex.UPLOADED_AT);
+            results.add(new SearchResult(
+                    UUID.fromString(doc.get(LuceneIndex.ID)),
+                    doc.get(LuceneIndex.FILENAME),
+                    doc.get(LuceneIndex.CONTENT_TYPE),
+                    uploadedAt != null ? Instant.ofEpochMilli(uploadedAt.numericValue().longValue()) : null,
+                    snippet(doc, highlights.get(LuceneIndex.TEXT)[i], highlights.get(LuceneIndex.SUMMARY)[i]),
+                    hit.score,
+                    List.of(doc.getValues(LuceneIndex.TAGS))
+            ));
+        }
+        return results;
+    }
+
+    // Same order as the Elasticsearch engine: highlighted text, highlighted summary, then either one as is
+    private static String snippet(Document doc, String textHighlight, String summaryHighlight) {
+        if (textHighlight != null && !textHighlight.isBlank()) {
+            return textHighlight;
+        }
+        if (summaryHighlight != null && !summaryHighlight.isBlank()) {
+            return summaryHighlight;
+        }
+        String summary = doc.get(LuceneIndex.SUMMARY);
+        if (summary != null && !summary.isBlank()) {
+            return trim(summary);
+        }
+        String text = doc.get(LuceneIndex.TEXT);
+        return text != null && !text.isBlank() ? trim(text) : "";
+    }
+
+    private static String trim(String value) {
+        return value.length() > 200 ? value.substring(0, 200) + "..." : value;
+    }
+
+    // null while no document in the index has a facet value yet
+    private Facets sortedSetCounts(IndexReader reader, FacetsCollector collector) throws IOException {
+        FacetState state = facetState;
+        if (state == null || state.reader() != reader) {
+            try {
+                state = new FacetState(reader, new DefaultSortedSetDocValuesReaderState(reader, index.facetsConfig()));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            facetState = state;
+        }
+        return new SortedSetDocValuesFacetCounts(state.ordinals(), collector);
+    }
+
+    private static List<FacetBucket> buckets(FacetResult result) {
+        if (result == null) {
+            return List.of();
+        }
+        List<FacetBucket> buckets = new ArrayList<>(result.labelValues.length);
+        for (LabelAndValue lv : result.labelValues) {
+            buckets.add(new FacetBucket(lv.label, lv.value.longValue()));
+        }
+        return buckets;
+    }
+
+    private static LongRange[] sizeRanges() {
+        return Arrays.stream(SizeRange.values())
+                .map(r -> new LongRange(r.key(),
+                        r.from() != null ? r.from() : Long.MIN_VALUE, true,
+                        r.to() != null ? r.to() : Long.MAX_VALUE, r.to() == null))
+                .toArray(LongRange[]::new);
+    }
+
+    private static long parseVersion(SearchCursor cursor) {
+        if (!cursor.pitId().startsWith(CURSOR_PREFIX)) {
+            throw new IllegalArgumentException("Search cursor expired, start a new search");
+        }
+        try {
+            return Long.parseLong(cursor.pitId().substring(CURSOR_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    private record FacetState(IndexReader reader, SortedSetDocValuesReaderState ordinals) {
+    }
+}
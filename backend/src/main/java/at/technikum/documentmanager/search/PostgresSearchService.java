@@ -0,0 +1,257 @@
+package at.technikum.documentmanager.search;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Full-text search on the generated {@code documents.search_vector} column (GIN indexed). Filename,
+ * summary and OCR text are weighted A, B and C, so a filename match ranks first. Paging is keyset
+ * based on (rank, id); facets are counted with one GROUPING SETS scan plus one query for tags.
+ */
+@Service
+public class PostgresSearchService implements SearchService {
+
+    // cursors of this engine carry the last id where Elasticsearch keeps its point-in-time id
+    static final String CURSOR_PREFIX = "pg:";
+
+    private static final String HEADLINE_OPTIONS = "MaxFragments=1, MaxWords=30, MinWords=10";
+
+    private final JdbcTemplate jdbc;
+    private final int pageSize;
+
+    public PostgresSearchService(JdbcTemplate jdbc,
+                                 @Value("${app.search.page-size:20}") int pageSize) {
+        this.jdbc = jdbc;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public List<SearchResult> search(String query) {
+        if (query == null || query.isBlank()) {
+            return List.of();
+        }
+        return hits(new SearchQuery(query, null, null, null, null, null), null, pageSize);
+    }
+
+    @Override
+    public SearchPage searchPage(String query, String cursor, int size) {
+        SearchCursor after = cursor == null || cursor.isBlank() ? null : SearchCursor.decode(cursor);
+        if (after != null && !after.pitId().startsWith(CURSOR_PREFIX)) {
+            throw new IllegalArgumentException("Search cursor expired, start a new search");
+        }
+        String text = after != null ? after.query() : query;
+        if (text == null || text.isBlank()) {
+            return new SearchPage(List.of(), null);
+        }
+
+        List<SearchResult> items = hits(new SearchQuery(text, null, null, null, null, null), after, size);
+        String next = null;
+        if (items.size() == size) {
+            SearchResult last = items.getLast();
+            next = new SearchCursor(CURSOR_PREFIX + last.id(), last.score(), 0, text).encode();
+        }
+        return new SearchPage(items, next);
+    }
+
+    @Override
+    public FacetedSearchResult searchFaceted(SearchQuery query) {
+        List<SearchResult> items = hits(query, null, pageSize);
+
+        Where where = where(query);
+        Map<String, List<FacetBucket>> facets = new LinkedHashMap<>();
+        List<FacetBucket> contentTypes = new ArrayList<>();
+        List<FacetBucket> months = new ArrayList<>();
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        for (SizeRange range : SizeRange.values()) {
+            sizes.put(range.key(), 0L); // Elasticsearch reports empty ranges as well
+        }
+        long[] total = {0};
+
+        // content type, month, size range and the total in a single scan of the matching rows
+        jdbc.query("""
+                        WITH q AS (SELECT websearch_to_tsquery('simple', ?) AS query),
+                        matching AS (SELECT d.content_type, d.uploaded_at, d.size FROM documents d, q WHERE %s)
+                        SELECT GROUPING(content_type) AS g_type, GROUPING(month) AS g_month, GROUPING(size_range) AS g_size,
+                               content_type, month, size_range, count(*) AS n
+                        FROM (SELECT content_type,
+                                     to_char(uploaded_at AT TIME ZONE 'UTC', 'YYYY-MM') AS month,
+                                     %s AS size_range
+                              FROM matching) m
+                        GROUP BY GROUPING SETS ((content_type), (month), (size_range), ())
+                        """.formatted(where.sql(), sizeRangeCase()),
+                rs -> {
+                    long n = rs.getLong("n");
+                    if (rs.getInt("g_type") == 0) {
+                        contentTypes.add(new FacetBucket(rs.getString("content_type"), n));
+                    } else if (rs.getInt("g_month") == 0) {
+                        months.add(new FacetBucket(rs.getString("month"), n));
+                    } else if (rs.getInt("g_size") == 0) {
+                        sizes.put(rs.getString("size_range"), n);
+                    } else {
+                        total[0] = n;
+                    }
+                },
+                where.bind(query.text()));
+
+        contentTypes.sort((a, b) -> Long.compare(b.count(), a.count()));
+        months.sort((a, b) -> a.key().compareTo(b.key()));
+        facets.put(FACET_CONTENT_TYPE, contentTypes.subList(0, Math.min(20, contentTypes.size())));
+        facets.put(FACET_TAGS, jdbc.query("""
+                        WITH q AS (SELECT websearch_to_tsquery('simple', ?) AS query)
+                        SELECT t.name, count(*) AS n
+                        FROM documents d
+                        CROSS JOIN q
+                        JOIN document_tags dt ON dt.document_id = d.id
+                        JOIN tags t ON t.id = dt.tag_id
+                        WHERE %s
+                        GROUP BY t.name
+                        ORDER BY n DESC, t.name
+                        LIMIT 50
+                        """.formatted(where.sql()),
+                (rs, i) -> new FacetBucket(rs.getString("name"), rs.getLong("n")),
+                where.bind(query.text())));
+        facets.put(FACET_UPLOADED_AT, months);
+        facets.put(FACET_SIZE, sizes.entrySet().stream().map(e -> new FacetBucket(e.getKey(), e.getValue())).toList());
+
+        return new FacetedSearchResult(items, total[0], facets);
+    }
+
+    /**
+     * Best matches first. The inner query only ranks and limits; snippets (ts_headline has to
+     * re-parse the whole OCR text) and tags are computed for the returned rows only.
+     */
+    private List<SearchResult> hits(SearchQuery query, SearchCursor after, int limit) {
+        Where where = where(query);
+        String keyset = "";
+        List<Object> args = new ArrayList<>(Arrays.asList(where.bind(query.text())));
+        if (after != null) {
+            keyset = "WHERE score < ?::real OR (score = ?::real AND id > ?)";
+            args.add(after.score());
+            args.add(after.score());
+            args.add(parseCursorId(after));
+        }
+        args.add(limit);
+
+        return jdbc.query("""
+                        WITH q AS (SELECT websearch_to_tsquery('simple', ?) AS query),
+                        ranked AS (
+                            SELECT d.id, d.original_filename, d.content_type, d.uploaded_at, d.summary, d.ocr_text,
+                                   ts_rank_cd(d.search_vector, q.query) AS score
+                            FROM documents d, q
+                            WHERE %s
+                        )
+                        SELECT h.id, h.original_filename, h.content_type, h.uploaded_at, h.score,
+                               ts_headline('simple', coalesce(nullif(h.ocr_text, ''), h.summary, ''), q.query, '%s') AS snippet,
+                               ARRAY(SELECT t.name FROM document_tags dt JOIN tags t ON t.id = dt.tag_id
+                                     WHERE dt.document_id = h.id ORDER BY t.name) AS tags
+                        FROM (SELECT * FROM ranked %s ORDER BY score DESC, id LIMIT ?) h, q
+                        ORDER BY h.score DESC, h.id
+                        """.formatted(where.sql(), HEADLINE_OPTIONS, keyset),
+                this::mapRow,
+                args.toArray());
+    }
+
+    // Filters on the documents row "d"; the text query is bound once, in the q CTE
+    private static Where where(SearchQuery query) {
+        StringBuilder sql = new StringBuilder("TRUE");
+        List<Object> args = new ArrayList<>();
+        if (query.hasText()) {
+            sql.append(" AND d.search_vector @@ q.query");
+        }
+        if (!query.contentTypes().isEmpty()) {
+            sql.append(" AND d.content_type IN (")
+                    .append(String.join(",", Collections.nCopies(query.contentTypes().size(), "?")))
+                    .append(")");
+            args.addAll(query.contentTypes());
+        }
+        for (String tag : query.tags()) {
+            sql.append(" AND EXISTS (SELECT 1 FROM document_tags dt JOIN tags t ON t.id = dt.tag_id"
+                    + " WHERE dt.document_id = d.id AND t.name = ?)");
+            args.add(tag);
+        }
+        if (query.uploadedFrom() != null) {
+            sql.append(" AND d.uploaded_at >= ?");
+            args.add(Timestamp.from(query.uploadedFrom()));
+        }
+        if (query.uploadedTo() != null) {
+            sql.append(" AND d.uploaded_at < ?");
+            args.add(Timestamp.from(query.uploadedTo()));
+        }
+        if (!query.sizeRanges().isEmpty()) {
+            List<String> any = new ArrayList<>();
+            for (SizeRange range : query.sizeRanges()) {
+                List<String> bounds = new ArrayList<>();
+                if (range.from() != null) {
+                    bounds.add("d.size >= ?");
+                    args.add(range.from());
+                }
+                if (range.to() != null) {
+                    bounds.add("d.size < ?");
+                    args.add(range.to());
+                }
+                any.add(bounds.isEmpty() ? "TRUE" : "(" + String.join(" AND ", bounds) + ")");
+            }
+            sql.append(" AND (").append(String.join(" OR ", any)).append(")");
+        }
+        return new Where(sql.toString(), args);
+    }
+
+    private static String sizeRangeCase() {
+        StringBuilder sql = new StringBuilder("CASE");
+        for (SizeRange range : SizeRange.values()) {
+            if (range.to() != null) {
+                sql.append(" WHEN size < ").append(range.to()).append(" THEN '").append(range.key()).append("'");
+            } else {
+                sql.append(" ELSE '").append(range.key()).append("'");
+            }
+        }
+        return sql.append(" END").toString();
+    }
+
+    private static UUID parseCursorId(SearchCursor cursor) {
+        try {
+            return UUID.fromString(cursor.pitId().substring(CURSOR_PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    private SearchResult mapRow(ResultSet rs, int rowNum) throws SQLException {
+        Timestamp uploadedAt = rs.getTimestamp("uploaded_at");
+        Array tags = rs.getArray("tags");
+        String snippet = rs.getString("snippet");
+        return new SearchResult(
+                rs.getObject("id", UUID.class),
+                rs.getString("original_filename"),
+                rs.getString("content_type"),
+                uploadedAt != null ? uploadedAt.toInstant() : null,
+                snippet != null ? snippet.replaceAll("<[^>]+>", "") : "",
+                rs.getFloat("score"),
+                tags != null ? List.of((String[]) tags.getArray()) : List.of()
+        );
+    }
+
+    private record Where(String sql, List<Object> args) {
+
+        // the text query parameter comes first, it is bound in the q CTE
+        Object[] bind(String text) {
+            List<Object> all = new ArrayList<>(args.size() + 1);
+            all.add(text != null ? text : "");
+            all.addAll(args);
+            return all.toArray();
+        }
+    }
+}
@@ -0,0 +1,405 @@
+package at.technikum.documentmanager.search;
+
+import at.technikum.documentmanager.entity.ReindexJob;
+import at.technikum.documentmanager.repository.ReindexJobRepository;
+import at.technikum.documentmanager.storage.MinioStorageService;
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Rebuilds the search index from Postgres and the OCR text objects in MinIO. Documents are read
+ * in keyset order and written into a new versioned index while searches keep using the current
+ * one; the alias is swapped atomically at the end. Progress is checkpointed after every page,
+ * so a failed or interrupted job resumes where it stopped.
+ * <p>
+ * Until the swap, SearchIndexSync only writes to the old index. The ids of documents changed while
+ * a job runs (renames, retags, summaries, deletes) are therefore recorded and replayed into the new
+ * index right before and right after the swap. They are only kept in memory: after a restart a resumed
+ * job replays what changed since the resume, earlier changes reach the new index with their next edit.
+ */
+@Service
+@ConditionalOnProperty(name = "app.search.engine", havingValue = "elasticsearch", matchIfMissing = true)
+@Slf4j
+public class ReindexService {
+
+    private static final DateTimeFormatter VERSION =
+            DateTimeFormatter.ofPattern("yyyyMMddHHmmss").withZone(ZoneOffset.UTC);
+
+    private static final String SELECT_PAGE = """
+            SELECT d.id, d.original_filename, d.content_type, d.size, d.uploaded_at, d.summary,
+                   array_remove(array_agg(t.id::text), NULL) AS tag_ids,
+                   array_remove(array_agg(t.name), NULL) AS tag_names
+            FROM (SELECT * FROM documents %s ORDER BY uploaded_at %s, id %s LIMIT ?) d
+            LEFT JOIN document_tags dt ON dt.document_id = d.id
+            LEFT JOIN tags t ON t.id = dt.tag_id
+            GROUP BY d.id, d.original_filename, d.content_type, d.size, d.uploaded_at, d.summary
+            ORDER BY d.uploaded_at %s, d.id %s
+            """;
+
+    private final ElasticsearchClient client;
+    private final JdbcTemplate jdbc;
+    private final MinioStorageService storage; // bypasses the local read cache, every object is read once
+    private final ReindexJobRepository jobs;
+    private final ApplicationEventPublisher events;
+    private final String alias;
+    private final int pageSize;
+    private final int fetchConcurrency;
+
+    private final AtomicReference<UUID> running = new AtomicReference<>();
+    private final Set<UUID> changed = ConcurrentHashMap.newKeySet();
+    private volatile UUID tracking; // job whose concurrent changes are collected in changed
+
+    public ReindexService(
+            ElasticsearchClient client,
+            JdbcTemplate jdbc,
+            MinioStorageService storage,
+            ReindexJobRepository jobs,
+            ApplicationEventPublisher events,
+            @Value("${elasticsearch.index:documents}") String alias,
+            @Value("${app.search.reindex.page-size:500}") int pageSize,
+            @Value("${app.search.reindex.fetch-concurrency:16}") int fetchConcurrency
+    ) {
+        this.client = client;
+        this.jdbc = jdbc;
+        this.storage = storage;
+        this.jobs = jobs;
+        this.events = events;
+        this.alias = alias;
+        this.pageSize = pageSize;
+        this.fetchConcurrency = fetchConcurrency;
+    }
+
+    public ReindexJob start() throws IOException {
+        Instant now = Instant.now();
+        String target = alias + "-" + VERSION.format(now);
+        ReindexJob job = ReindexJob.builder()
+                .id(UUID.randomUUID())
+                .targetIndex(target)
+                .status(ReindexJob.Status.RUNNING)
+                .total(jdbc.queryForObject("SELECT count(*) FROM documents", Long.class))
+                .startedAt(now)
+                .updatedAt(now)
+                .build();
+
+        claim(job.getId());
+        track(job.getId());
+        try {
+            createIndex(target);
+            jobs.save(job);
+        } catch (IOException | RuntimeException e) {
+            running.set(null);
+            throw e;
+        }
+        launch(job);
+        return job;
+    }
+
+    public ReindexJob resume(UUID id) {
+        ReindexJob job = get(id);
+        if (job.getStatus() == ReindexJob.Status.COMPLETED) {
+            throw new IllegalArgumentException("Reindex job already completed: " + id);
+        }
+        claim(id);
+        if (!id.equals(tracking)) {
+            log.warn("Reindex {} resumed after a restart, changes made before now are not replayed", id);
+            track(id);
+        }
+        job.setStatus(ReindexJob.Status.RUNNING);
+        job.setError(null);
+        job.setUpdatedAt(Instant.now());
+        jobs.save(job);
+        launch(job);
+        return job;
+    }
+
+    public ReindexJob get(UUID id) {
+        return jobs.findById(id).orElseThrow(() -> new NoSuchElementException("Reindex job not found"));
+    }
+
+    public List<ReindexJob> list() {
+        return jobs.findAllByOrderByStartedAtDesc();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDocumentChanged(DocumentChangedEvent event) {
+        if (tracking != null) {
+            changed.addAll(event.documentIds());
+        }
+    }
+
+    private void track(UUID id) {
+        changed.clear();
+        tracking = id;
+    }
+
+    private void claim(UUID id) {
+        if (!running.compareAndSet(null, id)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Reindex job " + running.get() + " is still running");
+        }
+    }
+
+    private void launch(ReindexJob job) {
+        Thread.ofVirtual().name("reindex-" + job.getId()).start(() -> run(job));
+    }
+
+    void run(ReindexJob job) {
+        log.info("Reindex {} into '{}' started at {} of {} documents", job.getId(), job.getTargetIndex(),
+                job.getProcessed(), job.getTotal());
+        try (ExecutorService fetchers = Executors.newFixedThreadPool(fetchConcurrency)) {
+            List<Row> page;
+            do {
+                page = loadOlderPage(job.getCheckpointUploadedAt(), job.getCheckpointId());
+                if (page.isEmpty()) {
+                    break;
+                }
+                int failed = write(job.getTargetIndex(), page, Set.of(), fetchers);
+
+                Row last = page.getLast();
+                job.setCheckpointUploadedAt(last.uploadedAt());
+                job.setCheckpointId(last.id());
+                job.setProcessed(job.getProcessed() + page.size());
+                job.setFailed(job.getFailed() + failed);
+                job.setUpdatedAt(Instant.now());
+                jobs.save(job);
+            } while (page.size() == pageSize);
+
+            // documents uploaded after the job started sort before the first checkpoint
+            Instant newerUploadedAt = null;
+            UUID newerId = null;
+            do {
+                page = loadNewerPage(job.getStartedAt(), newerUploadedAt, newerId);
+                if (page.isEmpty()) {
+                    break;
+                }
+                job.setFailed(job.getFailed() + write(job.getTargetIndex(), page, Set.of(), fetchers));
+                job.setProcessed(job.getProcessed() + page.size());
+                newerUploadedAt = page.getLast().uploadedAt();
+                newerId = page.getLast().id();
+            } while (page.size() == pageSize);
+
+            replayChanges(job, fetchers);
+            finishIndex(job.getTargetIndex());
+            swapAlias(job.getTargetIndex());
+            // changes committed between the last replay and the swap went to the old index only
+            replayChanges(job, fetchers);
+            tracking = null;
+            changed.clear();
+            events.publishEvent(new SearchIndexChangedEvent(Set.of()));
+
+            job.setStatus(ReindexJob.Status.COMPLETED);
+            job.setFinishedAt(Instant.now());
+            log.info("Reindex {} completed: {} documents, {} failed, alias '{}' now points to '{}'",
+                    job.getId(), job.getProcessed(), job.getFailed(), alias, job.getTargetIndex());
+        } catch (Exception e) {
+            job.setStatus(ReindexJob.Status.FAILED);
+            job.setError(e.getMessage());
+            log.error("Reindex {} failed at {} documents, resume to continue", job.getId(), job.getProcessed(), e);
+        } finally {
+            job.setUpdatedAt(Instant.now());
+            jobs.save(job);
+            running.set(null);
+        }
+    }
+
+    // Current state of every document changed since the job started; gone ones are deleted
+    private void replayChanges(ReindexJob job, ExecutorService fetchers) throws Exception {
+        while (!changed.isEmpty()) {
+            Set<UUID> ids = new HashSet<>();
+            Iterator<UUID> it = changed.iterator();
+            while (it.hasNext() && ids.size() < pageSize) {
+                ids.add(it.next());
+                it.remove();
+            }
+            try {
+                List<Row> rows = loadByIds(ids);
+                Set<UUID> gone = new HashSet<>(ids);
+                rows.forEach(row -> gone.remove(row.id()));
+                job.setFailed(job.getFailed() + write(job.getTargetIndex(), rows, gone, fetchers));
+            } catch (Exception e) {
+                changed.addAll(ids); // replayed again on resume
+                throw e;
+            }
+            log.info("Reindex {} replayed {} concurrent changes", job.getId(), ids.size());
+        }
+    }
+
+    // Fetches OCR texts in parallel, then writes the page (and deletes) with one _bulk request.
+    // Returns the number of documents that could not be indexed.
+    private int write(String index, List<Row> rows, Set<UUID> deletes, ExecutorService fetchers) throws Exception {
+        List<Future<String>> texts = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            texts.add(fetchers.submit(() -> loadText(row.id())));
+        }
+
+        BulkRequest.Builder bulk = new BulkRequest.Builder().index(index);
+        for (int i = 0; i < rows.size(); i++) {
+            Map<String, Object> doc = rows.get(i).toDocument(texts.get(i).get());
+            String id = rows.get(i).id().toString();
+            bulk.operations(op -> op.index(ix -> ix.id(id).document(doc)));
+        }
+        for (UUID id : deletes) {
+            bulk.operations(op -> op.delete(d -> d.id(id.toString())));
+        }
+
+        BulkResponse response = client.bulk(bulk.build());
+        int failed = 0;
+        if (response.errors()) {
+            for (BulkResponseItem item : response.items()) {
+                // a deleted document that never made it into the new index
+                boolean missingDelete = deletes.contains(UUID.fromString(item.id())) && item.status() == 404;
+                if (item.error() != null && !missingDelete) {
+                    failed++;
+                    log.warn("Reindex of document {} failed: {}", item.id(), item.error().reason());
+                }
+            }
+        }
+        return failed;
+    }
+
+    private String loadText(UUID documentId) throws IOException {
+        try {
+            Optional<InputStream> in = storage.load("ocr/" + documentId + ".txt");
+            if (in.isEmpty()) {
+                return null; // not OCR'd yet, the pipeline fills it in later
+            }
+            try (InputStream stream = in.get()) {
+                return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Failed to load OCR text of " + documentId + ": " + e.getMessage(), e);
+        }
+    }
+
+    private List<Row> loadOlderPage(Instant uploadedAt, UUID id) {
+        if (uploadedAt == null) {
+            return jdbc.query(SELECT_PAGE.formatted("", "DESC", "DESC", "DESC", "DESC"), ReindexService::row, pageSize);
+        }
+        return jdbc.query(SELECT_PAGE.formatted("WHERE (uploaded_at, id) < (?, ?)", "DESC", "DESC", "DESC", "DESC"),
+                ReindexService::row, Timestamp.from(uploadedAt), id, pageSize);
+    }
+
+    private List<Row> loadNewerPage(Instant since, Instant uploadedAt, UUID id) {
+        if (uploadedAt == null) {
+            return jdbc.query(SELECT_PAGE.formatted("WHERE uploaded_at >= ?", "ASC", "ASC", "ASC", "ASC"),
+                    ReindexService::row, Timestamp.from(since), pageSize);
+        }
+        return jdbc.query(SELECT_PAGE.formatted("WHERE (uploaded_at, id) > (?, ?)", "ASC", "ASC", "ASC", "ASC"),
+                ReindexService::row, Timestamp.from(uploadedAt), id, pageSize);
+    }
+
+    private List<Row> loadByIds(Set<UUID> ids) {
+        String where = "WHERE id IN (" + String.join(",", Collections.nCopies(ids.size(), "?")) + ")";
+        List<Object> args = new ArrayList<>(ids);
+        args.add(ids.size());
+        return jdbc.query(SELECT_PAGE.formatted(where, "ASC", "ASC", "ASC", "ASC"), ReindexService::row, args.toArray());
+    }
+
+    private static Row row(ResultSet rs, int rowNum) throws SQLException {
+        return new Row(
+                rs.getObject("id", UUID.class),
+                rs.getString("original_filename"),
+                rs.getString("content_type"),
+                rs.getLong("size"),
+                rs.getTimestamp("uploaded_at").toInstant(),
+                rs.getString("summary"),
+                List.of((String[]) rs.getArray("tag_ids").getArray()),
+                List.of((String[]) rs.getArray("tag_names").getArray()));
+    }
+
+    // Same mapping as the indexing worker creates, plus the backend-synced tag fields.
+    // Refresh is off during the bulk load and switched back on in finishIndex.
+    private void createIndex(String name) throws IOException {
+        client.indices().create(c -> c
+                .index(name)
+                .settings(s -> s.refreshInterval(t -> t.time("-1")))
+                .mappings(m -> m
+                        .properties("documentId", p -> p.keyword(k -> k))
+                        .properties("filename", p -> p.text(t -> t.fields("keyword", f -> f.keyword(k -> k))))
+                        .properties("contentType", p -> p.keyword(k -> k))
+                        .properties("uploadedAt", p -> p.date(d -> d))
+                        .properties("size", p -> p.long_(l -> l))
+                        .properties("text", p -> p.text(t -> t))
+                        .properties("summary", p -> p.text(t -> t))
+                        .properties("tagIds", p -> p.keyword(k -> k))
+                        .properties("tagNames", p -> p.keyword(k -> k))));
+    }
+
+    private void finishIndex(String name) throws IOException {
+        client.indices().putSettings(s -> s.index(name).settings(i -> i.refreshInterval(t -> t.time("1s"))));
+        client.indices().refresh(r -> r.index(name));
+    }
+
+    // One _aliases call, so searches never see a missing or empty index. A concrete index that still
+    // carries the alias name (created by the indexing worker before aliases were used) is removed
+    // in the same request, it cannot coexist with an alias of that name.
+    private void swapAlias(String target) throws IOException {
+        boolean aliasExists = client.indices().existsAlias(a -> a.name(alias)).value();
+        boolean concreteIndex = !aliasExists && client.indices().exists(e -> e.index(alias)).value();
+
+        client.indices().updateAliases(u -> {
+            if (concreteIndex) {
+                u.actions(a -> a.removeIndex(r -> r.index(alias)));
+            } else if (aliasExists) {
+                u.actions(a -> a.remove(r -> r.index("*").alias(alias)));
+            }
+            return u.actions(a -> a.add(add -> add.index(target).alias(alias)));
+        });
+    }
+
+    private record Row(UUID id, String filename, String contentType, long size, Instant uploadedAt,
+                       String summary, List<String> tagIds, List<String> tagNames) {
+
+        Map<String, Object> toDocument(String text) {
+            Map<String, Object> doc = new HashMap<>();
+            doc.put("documentId", id.toString());
+            doc.put("filename", filename);
+            doc.put("contentType", contentType);
+            doc.put("size", size);
+            doc.put("uploadedAt", uploadedAt.toString());
+            doc.put("summary", summary);
+            doc.put("text", text);
+            doc.put("tagIds", tagIds);
+            doc.put("tagNames", tagNames);
+            return doc;
+        }
+    }
+}
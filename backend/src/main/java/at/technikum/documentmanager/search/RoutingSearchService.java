@@ -0,0 +1,106 @@
+package at.technikum.documentmanager.search;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Sends searches to Elasticsearch while it is healthy and to Postgres full-text search while the
+ * circuit breaker is open, i.e. when recent Elasticsearch calls failed or got too slow. A failing
+ * call is answered by Postgres right away, so the search page keeps working during an outage.
+ */
+@Service
+@Primary
+@ConditionalOnProperty(name = "app.search.engine", havingValue = "elasticsearch", matchIfMissing = true)
+@Slf4j
+public class RoutingSearchService implements SearchService {
+
+    private final ElasticsearchSearchService elasticsearch;
+    private final PostgresSearchService postgres;
+    private final SearchCircuitBreaker breaker;
+
+    private final Counter viaElasticsearch;
+    private final Counter viaPostgres;
+
+    public RoutingSearchService(
+            ElasticsearchSearchService elasticsearch,
+            PostgresSearchService postgres,
+            @Value("${app.search.breaker.window-size:100}") int windowSize,
+            @Value("${app.search.breaker.min-calls:20}") int minCalls,
+            @Value("${app.search.breaker.error-rate-threshold:0.5}") double errorRateThreshold,
+            @Value("${app.search.breaker.p99-threshold-ms:2000}") long p99ThresholdMs,
+            @Value("${app.search.breaker.open-duration-ms:30000}") long openDurationMs,
+            MeterRegistry registry
+    ) {
+        this.elasticsearch = elasticsearch;
+        this.postgres = postgres;
+        this.breaker = new SearchCircuitBreaker(windowSize, minCalls, errorRateThreshold,
+                Duration.ofMillis(p99ThresholdMs), Duration.ofMillis(openDurationMs), Clock.systemUTC());
+
+        this.viaElasticsearch = Counter.builder("search.requests").tag("engine", "elasticsearch").register(registry);
+        this.viaPostgres = Counter.builder("search.requests").tag("engine", "postgres").register(registry);
+        Gauge.builder("search.breaker.state", breaker, b -> b.state().ordinal()).register(registry);
+    }
+
+    @Override
+    public List<SearchResult> search(String query) {
+        return route(() -> elasticsearch.search(query), () -> postgres.search(query));
+    }
+
+    // A cursor only makes sense to the engine that issued it
+    @Override
+    public SearchPage searchPage(String query, String cursor, int size) {
+        if (cursor == null || cursor.isBlank()) {
+            return route(() -> elasticsearch.searchPage(query, null, size), () -> postgres.searchPage(query, null, size));
+        }
+        if (SearchCursor.decode(cursor).pitId().startsWith(PostgresSearchService.CURSOR_PREFIX)) {
+            viaPostgres.increment();
+            return postgres.searchPage(null, cursor, size);
+        }
+        return route(() -> elasticsearch.searchPage(null, cursor, size), () -> {
+            throw new IllegalArgumentException("Search cursor expired, start a new search");
+        });
+    }
+
+    @Override
+    public FacetedSearchResult searchFaceted(SearchQuery query) {
+        return route(() -> elasticsearch.searchFaceted(query), () -> postgres.searchFaceted(query));
+    }
+
+    SearchCircuitBreaker.State breakerState() {
+        return breaker.state();
+    }
+
+    private <T> T route(Supplier<T> primary, Supplier<T> fallback) {
+        if (!breaker.allowRequest()) {
+            viaPostgres.increment();
+            return fallback.get();
+        }
+        long start = System.nanoTime();
+        try {
+            T result = primary.get();
+            breaker.record(Duration.ofNanos(System.nanoTime() - start), true);
+            viaElasticsearch.increment();
+            return result;
+        } catch (IllegalArgumentException e) {
+            // the request was bad (e.g. an expired cursor), Elasticsearch itself answered fine
+            breaker.record(Duration.ofNanos(System.nanoTime() - start), true);
+            throw e;
+        } catch (RuntimeException e) {
+            breaker.record(Duration.ofNanos(System.nanoTime() - start), false);
+            log.warn("Elasticsearch search failed, answering from Postgres: {}", e.getMessage());
+            viaPostgres.increment();
+            return fallback.get();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package at.technikum.documentmanager.search;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Tracks the last window-size calls of an engine and opens when their error rate or p99 latency
+ * crosses its threshold. While open, callers are sent elsewhere; after open-duration a single probe
+ * call is let through (half-open), which closes the breaker again if it is healthy.
+ */
+public class SearchCircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final long[] latencies; // nanos, ring buffer
+    private final boolean[] failed;
+    private final int minCalls;
+    private final double errorRateThreshold;
+    private final long p99ThresholdNanos;
+    private final Duration openDuration;
+    private final Clock clock;
+
+    private int next;
+    private int count;
+    private State state = State.CLOSED;
+    private Instant openedAt;
+    private boolean probeInFlight;
+
+    public SearchCircuitBreaker(int windowSize, int minCalls, double errorRateThreshold,
+                                Duration p99Threshold, Duration openDuration, Clock clock) {
+        this.latencies = new long[windowSize];
+        this.failed = new boolean[windowSize];
+        this.minCalls = minCalls;
+        this.errorRateThreshold = errorRateThreshold;
+        this.p99ThresholdNanos = p99Threshold.toNanos();
+        this.openDuration = openDuration;
+        this.clock = clock;
+    }
+
+    public synchronized boolean allowRequest() {
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> {
+                if (clock.instant().isBefore(openedAt.plus(openDuration))) {
+                    yield false;
+                }
+                state = State.HALF_OPEN;
+                probeInFlight = true;
+                yield true;
+            }
+            case HALF_OPEN -> {
+                if (probeInFlight) {
+                    yield false;
+                }
+                probeInFlight = true;
+                yield true;
+            }
+        };
+    }
+
+    public synchronized void record(Duration latency, boolean success) {
+        if (state == State.HALF_OPEN) {
+            probeInFlight = false;
+            boolean healthy = success && latency.toNanos() <= p99ThresholdNanos;
+            if (healthy) {
+                reset();
+            } else {
+                open();
+            }
+            return;
+        }
+
+        latencies[next] = latency.toNanos();
+        failed[next] = !success;
+        next = (next + 1) % latencies.length;
+        count = Math.min(count + 1, latencies.length);
+
+        if (state == State.CLOSED && count >= minCalls
+                && (errorRate() > errorRateThreshold || p99Nanos() > p99ThresholdNanos)) {
+            open();
+        }
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    synchronized double errorRate() {
+        int failures = 0;
+        for (int i = 0; i < count; i++) {
+            if (failed[i]) {
+                failures++;
+            }
+        }
+        return count == 0 ? 0 : (double) failures / count;
+    }
+
+    // Sorting at most window-size values per call is cheaper than keeping a histogram up to date
+    synchronized long p99Nanos() {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        return sorted[(int) Math.ceil(count * 0.99) - 1];
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = clock.instant();
+    }
+
+    private void reset() {
+        state = State.CLOSED;
+        next = 0;
+        count = 0;
+    }
+}
@@ -0,0 +1,27 @@
+package at.technikum.documentmanager.search;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Continuation of a paged search: the point-in-time to read from and the sort values
+ * (score, shard doc) of the last hit returned. Sent to clients as an opaque URL-safe token.
+ */
+public record SearchCursor(String pitId, double score, long shardDoc, String query) {
+
+    public String encode() {
+        // query goes last, it is the only part that may contain the separator
+        String raw = pitId + "|" + score + "|" + shardDoc + "|" + query;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static SearchCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 4);
+            return new SearchCursor(parts[0], Double.parseDouble(parts[1]), Long.parseLong(parts[2]), parts[3]);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package at.technikum.documentmanager.search;
+
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Published whenever documents are changed in a way that affects what the search index returns.
+ */
+public record SearchIndexChangedEvent(Set<UUID> documentIds) {
+
+    public static SearchIndexChangedEvent of(UUID documentId) {
+        return new SearchIndexChangedEvent(Set.of(documentId));
+    }
+}
@@ -0,0 +1,270 @@
+package at.technikum.documentmanager.search;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Mirrors backend-side document changes (metadata, summary, tags, deletes) into the search index.
+ * Changes are only collected per document id and the current row is read at flush time, so any
+ * number of edits on one document end up as a single partial update, or a delete once the row is
+ * gone. Flushes run when batch-size documents are pending or after flush-interval-ms, whichever
+ * comes first. A failing cluster is retried with exponential backoff for as long as it takes;
+ * only documents the cluster rejects individually use up their max-attempts.
+ */
+@Component
+@ConditionalOnProperty(name = "app.search.engine", havingValue = "elasticsearch", matchIfMissing = true)
+@Slf4j
+public class SearchIndexSync {
+
+    private final ElasticsearchClient client;
+    private final JdbcTemplate jdbc;
+    private final ApplicationEventPublisher events;
+    private final TaskScheduler scheduler;
+    private final String indexName;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+
+    private final Map<UUID, Pending> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private volatile Duration backoff = Duration.ZERO;
+    private volatile Instant retryAt = Instant.MIN;
+    Clock clock = Clock.systemUTC();
+
+    private final Counter updated;
+    private final Counter deleted;
+    private final Counter failures;
+
+    public SearchIndexSync(
+            ElasticsearchClient client,
+            JdbcTemplate jdbc,
+            ApplicationEventPublisher events,
+            TaskScheduler scheduler,
+            @Value("${elasticsearch.index:documents}") String indexName,
+            @Value("${app.search.sync.batch-size:500}") int batchSize,
+            @Value("${app.search.sync.max-attempts:10}") int maxAttempts,
+            @Value("${app.search.sync.initial-backoff-ms:500}") long initialBackoffMs,
+            @Value("${app.search.sync.max-backoff-ms:60000}") long maxBackoffMs,
+            MeterRegistry registry
+    ) {
+        this.client = client;
+        this.jdbc = jdbc;
+        this.events = events;
+        this.scheduler = scheduler;
+        this.indexName = indexName;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = Duration.ofMillis(initialBackoffMs);
+        this.maxBackoff = Duration.ofMillis(maxBackoffMs);
+
+        this.updated = Counter.builder("search.sync.operations").tag("type", "update").register(registry);
+        this.deleted = Counter.builder("search.sync.operations").tag("type", "delete").register(registry);
+        this.failures = Counter.builder("search.sync.failures").register(registry);
+        Gauge.builder("search.sync.pending", pending, Map::size).register(registry);
+        Gauge.builder("search.sync.lag", this, s -> s.lag().toMillis() / 1000.0).baseUnit("seconds").register(registry);
+    }
+
+    // Indices created by older indexing workers lack the tag fields; without an explicit
+    // keyword mapping they would be mapped dynamically as analysed text.
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureMapping() {
+        try {
+            client.indices().putMapping(m -> m
+                    .index(indexName)
+                    .properties("tagIds", p -> p.keyword(k -> k))
+                    .properties("tagNames", p -> p.keyword(k -> k)));
+        } catch (IOException | ElasticsearchException e) {
+            log.warn("Could not ensure tag mapping on index '{}': {}", indexName, e.getMessage());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDocumentChanged(DocumentChangedEvent event) {
+        Instant now = clock.instant();
+        for (UUID id : event.documentIds()) {
+            pending.putIfAbsent(id, new Pending(now, 0));
+        }
+        if (pending.size() >= batchSize && !flushLock.isLocked()) {
+            scheduler.schedule(this::flush, now);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.search.sync.flush-interval-ms:1000}")
+    public void flush() {
+        if (!flushLock.tryLock()) {
+            return; // the running flush drains everything
+        }
+        try {
+            while (!pending.isEmpty() && !clock.instant().isBefore(retryAt)) {
+                Map<UUID, Pending> batch = drain(batchSize);
+                try {
+                    flushBatch(batch);
+                    backoff = Duration.ZERO;
+                } catch (IOException | RuntimeException e) {
+                    // the cluster or the database is failing (ElasticsearchException, DataAccessException, ...)
+                    failures.increment();
+                    // not the documents' fault: back in the queue without an attempt, newer entries keep their place
+                    batch.forEach((id, p) -> pending.merge(id, p, (current, previous) -> previous));
+                    backoff = backoff.isZero() ? initialBackoff : min(backoff.multipliedBy(2), maxBackoff);
+                    retryAt = clock.instant().plus(backoff);
+                    log.warn("Search index sync of {} documents failed, retrying in {} ms: {}",
+                            batch.size(), backoff.toMillis(), e.getMessage());
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // Age of the oldest change that has not reached the index yet
+    Duration lag() {
+        Instant oldest = null;
+        for (Pending p : pending.values()) {
+            if (oldest == null || p.since().isBefore(oldest)) {
+                oldest = p.since();
+            }
+        }
+        return oldest == null ? Duration.ZERO : Duration.between(oldest, clock.instant());
+    }
+
+    private void flushBatch(Map<UUID, Pending> batch) throws IOException {
+        Map<UUID, Map<String, Object>> docs = loadDocuments(batch.keySet());
+
+        BulkRequest.Builder bulk = new BulkRequest.Builder().index(indexName);
+        for (UUID id : batch.keySet()) {
+            Map<String, Object> doc = docs.get(id);
+            if (doc == null) {
+                bulk.operations(op -> op.delete(d -> d.id(id.toString())));
+            } else {
+                // upsert: the OCR pipeline may not have indexed the document yet, it merges its fields later
+                bulk.operations(op -> op.update(u -> u
+                        .id(id.toString())
+                        .action(a -> a.doc(doc).docAsUpsert(true))));
+            }
+        }
+
+        BulkResponse response = client.bulk(bulk.build());
+        Set<UUID> changed = new HashSet<>();
+        for (BulkResponseItem item : response.items()) {
+            UUID id = UUID.fromString(item.id());
+            boolean isDelete = docs.get(id) == null;
+            // deleting a document that never made it into the index is fine
+            if (item.error() != null && !(isDelete && item.status() == 404)) {
+                failures.increment();
+                log.warn("Search index sync of document {} failed: {}", id, item.error().reason());
+                requeue(id, batch.get(id));
+                continue;
+            }
+            (isDelete ? deleted : updated).increment();
+            changed.add(id);
+        }
+        log.debug("Synced {} documents to the search index", changed.size());
+        events.publishEvent(new SearchIndexChangedEvent(changed));
+    }
+
+    private void requeue(UUID id, Pending previous) {
+        if (previous.attempts() + 1 >= maxAttempts) {
+            log.error("Giving up search index sync of document {} after {} attempts", id, maxAttempts);
+            return;
+        }
+        // keeps the original timestamp, the lag covers the whole retry period
+        pending.put(id, new Pending(previous.since(), previous.attempts() + 1));
+    }
+
+    // Backend-owned fields of every document in ids that still exists
+    private Map<UUID, Map<String, Object>> loadDocuments(Set<UUID> ids) {
+        String placeholders = String.join(",", Collections.nCopies(ids.size(), "?"));
+        Map<UUID, Map<String, Object>> result = new LinkedHashMap<>();
+        jdbc.query("""
+                        SELECT d.id, d.original_filename, d.content_type, d.size, d.uploaded_at, d.summary,
+                               t.id AS tag_id, t.name AS tag_name
+                        FROM documents d
+                        LEFT JOIN document_tags dt ON dt.document_id = d.id
+                        LEFT JOIN tags t ON t.id = dt.tag_id
+                        WHERE d.id IN (%s)
+                        """.formatted(placeholders),
+                rs -> {
+                    UUID id = rs.getObject("id", UUID.class);
+                    Map<String, Object> doc = result.get(id);
+                    if (doc == null) {
+                        doc = new HashMap<>();
+                        doc.put("documentId", id.toString());
+                        doc.put("filename", rs.getString("original_filename"));
+                        doc.put("contentType", rs.getString("content_type"));
+                        doc.put("size", rs.getLong("size"));
+                        Timestamp uploadedAt = rs.getTimestamp("uploaded_at");
+                        doc.put("uploadedAt", uploadedAt != null ? uploadedAt.toInstant().toString() : null);
+                        doc.put("summary", rs.getString("summary"));
+                        doc.put("tagIds", new ArrayList<String>());
+                        doc.put("tagNames", new ArrayList<String>());
+                        result.put(id, doc);
+                    }
+                    UUID tagId = rs.getObject("tag_id", UUID.class);
+                    if (tagId != null) {
+                        tags(doc, "tagIds").add(tagId.toString());
+                        tags(doc, "tagNames").add(rs.getString("tag_name"));
+                    }
+                },
+                ids.toArray());
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> tags(Map<String, Object> doc, String field) {
+        return (List<String>) doc.get(field);
+    }
+
+    private Map<UUID, Pending> drain(int max) {
+        Map<UUID, Pending> batch = new LinkedHashMap<>();
+        Iterator<Map.Entry<UUID, Pending>> it = pending.entrySet().iterator();
+        while (it.hasNext() && batch.size() < max) {
+            Map.Entry<UUID, Pending> e = it.next();
+            batch.put(e.getKey(), e.getValue());
+            it.remove();
+        }
+        return batch;
+    }
+
+    private static Duration min(Duration a, Duration b) {
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+
+    private record Pending(Instant since, int attempts) {
+    }
+}
@@ -0,0 +1,9 @@
+package at.technikum.documentmanager.search;
+
+import java.util.List;
+
+public record SearchPage(
+        List<SearchResult> items,
+        String nextCursor // null when there are no further pages
+) {
+}
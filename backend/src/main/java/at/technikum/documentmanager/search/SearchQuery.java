@@ -0,0 +1,27 @@
+package at.technikum.documentmanager.search;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Free text plus the selected facets. Facets narrow the result without affecting scoring.
+ */
+public record SearchQuery(
+        String text,                // blank = match all documents
+        List<String> contentTypes,  // any of
+        List<String> tags,          // all of, by name
+        Instant uploadedFrom,       // inclusive
+        Instant uploadedTo,         // exclusive
+        List<SizeRange> sizeRanges  // any of
+) {
+
+    public SearchQuery {
+        contentTypes = contentTypes == null ? List.of() : List.copyOf(contentTypes);
+        tags = tags == null ? List.of() : List.copyOf(tags);
+        sizeRanges = sizeRanges == null ? List.of() : List.copyOf(sizeRanges);
+    }
+
+    public boolean hasText() {
+        return text != null && !text.isBlank();
+    }
+}
@@ -1,6 +1,7 @@
 package at.technikum.documentmanager.search;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.UUID;
 
 public record SearchResult(
@@ -9,6 +10,7 @@ public record SearchResult(
         String contentType,
         Instant uploadedAt,
         String snippet,
-        double score
+        double score,
+        List<String> tags
 ) {
 }
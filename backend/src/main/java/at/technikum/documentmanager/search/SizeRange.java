@@ -0,0 +1,41 @@
+package at.technikum.documentmanager.search;
+
+import java.util.Locale;
+
+/**
+ * Fixed buckets of the size facet. Clients select a bucket by sending its key back.
+ */
+public enum SizeRange {
+    SMALL(null, 100L * 1024),
+    MEDIUM(100L * 1024, 1024L * 1024),
+    LARGE(1024L * 1024, 10L * 1024 * 1024),
+    HUGE(10L * 1024 * 1024, null);
+
+    private final Long from; // inclusive, null = unbounded
+    private final Long to;   // exclusive, null = unbounded
+
+    SizeRange(Long from, Long to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    public Long from() {
+        return from;
+    }
+
+    public Long to() {
+        return to;
+    }
+
+    public String key() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    public static SizeRange fromKey(String key) {
+        try {
+            return valueOf(key.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown size range: " + key);
+        }
+    }
+}
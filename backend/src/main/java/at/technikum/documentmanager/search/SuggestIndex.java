@@ -0,0 +1,422 @@
+package at.technikum.documentmanager.search;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Typeahead over document filenames and tag names. Every word start of a lower-cased name is one
+ * entry of a sorted long array (name slot and offset packed into a long, no object per entry), so
+ * a prefix lookup is a binary search plus a scan over the matches. Built from Postgres at startup.
+ * Changes are queued by the event listeners and applied on a single updater thread: whatever queued
+ * up meanwhile becomes one new generation of the arrays, which is swapped in, readers never lock.
+ * Removed names leave an empty slot until a quarter of the slots are empty, then the index is
+ * rebuilt from the remaining names. The estimated heap size is exported as search.suggest.memory.
+ */
+@Component
+@Slf4j
+public class SuggestIndex {
+
+    // "annual-report-2024-final-v2.pdf" already has 7; a longer tail is rarely typed
+    private static final int MAX_WORD_STARTS = 16;
+
+    private static final Suggestion.Type[] TYPES = Suggestion.Type.values();
+
+    // below this many empty slots compacting is not worth a rebuild
+    private static final int MIN_COMPACT_SLOTS = 1024;
+
+    // bind parameters per filename lookup
+    private static final int LOOKUP_CHUNK = 1000;
+
+    private final JdbcTemplate jdbc;
+    private final Executor updater;
+    private volatile Snapshot snapshot = new Snapshot(new String[0], new String[0], new UUID[0], new byte[0], new long[0], 0, 0);
+
+    // Slot of every name by type and id; only touched by writers, under the monitor
+    private final List<Map<UUID, Integer>> slots = Arrays.stream(TYPES).<Map<UUID, Integer>>map(t -> new HashMap<>()).toList();
+
+    private final Set<UUID> pendingDocuments = ConcurrentHashMap.newKeySet();
+    private final Map<UUID, String> pendingTags = new ConcurrentHashMap<>();
+    private final AtomicBoolean updateScheduled = new AtomicBoolean();
+
+    public SuggestIndex(JdbcTemplate jdbc, MeterRegistry registry) {
+        this(jdbc, registry, Executors.newSingleThreadExecutor(Thread.ofPlatform().name("suggest-index").daemon().factory()));
+    }
+
+    SuggestIndex(JdbcTemplate jdbc, MeterRegistry registry, Executor updater) {
+        this.jdbc = jdbc;
+        this.updater = updater;
+        Gauge.builder("search.suggest.names", this, s -> s.snapshot.ids().length - s.snapshot.emptySlots()).register(registry);
+        Gauge.builder("search.suggest.entries", this, s -> s.snapshot.order().length).register(registry);
+        Gauge.builder("search.suggest.memory", this, SuggestIndex::memoryBytes).baseUnit("bytes").register(registry);
+    }
+
+    // Holds the lock while reading, changes that come in meanwhile are applied on top
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void build() {
+        long start = System.nanoTime();
+        List<Suggestion> names = new ArrayList<>();
+        jdbc.query("SELECT id, original_filename FROM documents WHERE original_filename IS NOT NULL", rs -> {
+            names.add(new Suggestion(rs.getString("original_filename"), Suggestion.Type.FILENAME, rs.getObject("id", UUID.class)));
+        });
+        jdbc.query("SELECT id, name FROM tags", rs -> {
+            names.add(new Suggestion(rs.getString("name"), Suggestion.Type.TAG, rs.getObject("id", UUID.class)));
+        });
+        load(names);
+        log.info("Suggest index built in {} ms: {} names, {} entries, {} KiB",
+                (System.nanoTime() - start) / 1_000_000, names.size(), snapshot.order().length, memoryBytes() / 1024);
+    }
+
+    // Filenames change on upload, metadata update and delete; other changes find the name unchanged
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDocumentChanged(DocumentChangedEvent event) {
+        pendingDocuments.addAll(event.documentIds());
+        scheduleUpdate();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTagCreated(TagCreatedEvent event) {
+        pendingTags.put(event.tagId(), event.name());
+        scheduleUpdate();
+    }
+
+    /**
+     * Names with a word starting with prefix (case-insensitive), in alphabetical order of the
+     * matching part. A name matching at several word starts, or uploaded several times, is
+     * returned once.
+     */
+    public List<Suggestion> suggest(String prefix, int limit) {
+        String p = prefix == null ? "" : prefix.strip().toLowerCase(Locale.ROOT);
+        if (p.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        Snapshot s = snapshot;
+        List<Suggestion> result = new ArrayList<>(Math.min(limit, 16));
+        Set<String> seen = new HashSet<>();
+        for (int i = lowerBound(s, p); i < s.order().length && result.size() < limit; i++) {
+            long entry = s.order()[i];
+            int slot = slot(entry);
+            if (!s.keys()[slot].startsWith(p, offset(entry))) {
+                break;
+            }
+            Suggestion.Type type = TYPES[s.types()[slot]];
+            if (seen.add(type + ":" + s.texts()[slot])) {
+                result.add(new Suggestion(s.texts()[slot], type, s.ids()[slot]));
+            }
+        }
+        return result;
+    }
+
+    long memoryBytes() {
+        return snapshot.bytes();
+    }
+
+    synchronized void load(List<Suggestion> names) {
+        int n = names.size();
+        String[] texts = new String[n];
+        String[] keys = new String[n];
+        UUID[] ids = new UUID[n];
+        byte[] types = new byte[n];
+        List<Long> entries = new ArrayList<>(n * 3);
+        long stringBytes = 0;
+        for (int slot = 0; slot < n; slot++) {
+            Suggestion name = names.get(slot);
+            texts[slot] = name.text();
+            keys[slot] = fold(name.text());
+            ids[slot] = name.id();
+            types[slot] = (byte) name.type().ordinal();
+            stringBytes += Snapshot.nameBytes(texts[slot], keys[slot]);
+            for (int offset : wordStarts(keys[slot])) {
+                entries.add(entry(slot, offset));
+            }
+        }
+        entries.sort((a, b) -> compareEntries(keys, a, b));
+        slots.forEach(Map::clear);
+        for (int slot = 0; slot < n; slot++) {
+            slots.get(types[slot]).put(ids[slot], slot);
+        }
+        snapshot = new Snapshot(texts, keys, ids, types, entries.stream().mapToLong(Long::longValue).toArray(), stringBytes, 0);
+    }
+
+    /**
+     * Adds, renames (new text for a known id) or removes (null text) names of one type, as one new
+     * generation: the arrays are copied once, the entries of removed and renamed names dropped and
+     * those of the new texts merged into the sorted order in a single pass.
+     */
+    synchronized void apply(Suggestion.Type type, Map<UUID, String> names) {
+        Snapshot s = snapshot;
+        Map<UUID, Integer> slotsOfType = slots.get(type.ordinal());
+        BitSet dropped = new BitSet();
+        List<Map.Entry<UUID, String>> added = new ArrayList<>();
+        names.forEach((id, text) -> {
+            Integer slot = slotsOfType.get(id);
+            if (slot != null && text != null && s.texts()[slot].equals(text)) {
+                return;
+            }
+            if (slot != null) {
+                dropped.set(slot);
+            }
+            if (text != null) {
+                added.add(Map.entry(id, text));
+            }
+        });
+        if (dropped.isEmpty() && added.isEmpty()) {
+            return;
+        }
+
+        int n = s.ids().length;
+        String[] texts = Arrays.copyOf(s.texts(), n + added.size());
+        String[] keys = Arrays.copyOf(s.keys(), n + added.size());
+        UUID[] ids = Arrays.copyOf(s.ids(), n + added.size());
+        byte[] types = Arrays.copyOf(s.types(), n + added.size());
+        long stringBytes = s.stringBytes();
+        for (int slot = dropped.nextSetBit(0); slot >= 0; slot = dropped.nextSetBit(slot + 1)) {
+            stringBytes -= Snapshot.nameBytes(texts[slot], keys[slot]);
+            slotsOfType.remove(ids[slot]);
+            texts[slot] = null;
+            keys[slot] = null;
+            ids[slot] = null;
+        }
+        List<Long> entries = new ArrayList<>();
+        for (int i = 0; i < added.size(); i++) {
+            int slot = n + i;
+            texts[slot] = added.get(i).getValue();
+            keys[slot] = fold(texts[slot]);
+            ids[slot] = added.get(i).getKey();
+            types[slot] = (byte) type.ordinal();
+            stringBytes += Snapshot.nameBytes(texts[slot], keys[slot]);
+            slotsOfType.put(ids[slot], slot);
+            for (int offset : wordStarts(keys[slot])) {
+                entries.add(entry(slot, offset));
+            }
+        }
+        entries.sort((a, b) -> compareEntries(keys, a, b));
+
+        int emptySlots = s.emptySlots() + dropped.cardinality();
+        snapshot = new Snapshot(texts, keys, ids, types, merge(keys, s.order(), dropped, entries), stringBytes, emptySlots);
+        if (emptySlots >= MIN_COMPACT_SLOTS && emptySlots * 4 > ids.length) {
+            compact();
+        }
+    }
+
+    private void scheduleUpdate() {
+        if (updateScheduled.compareAndSet(false, true)) {
+            updater.execute(() -> {
+                updateScheduled.set(false);
+                applyPending();
+            });
+        }
+    }
+
+    // Runs on the updater thread, a failed lookup is retried with the next change
+    void applyPending() {
+        Set<UUID> documents = new HashSet<>();
+        for (Iterator<UUID> it = pendingDocuments.iterator(); it.hasNext(); ) {
+            documents.add(it.next());
+            it.remove();
+        }
+        Map<UUID, String> tags = new HashMap<>();
+        for (Iterator<Map.Entry<UUID, String>> it = pendingTags.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<UUID, String> tag = it.next();
+            tags.put(tag.getKey(), tag.getValue());
+            it.remove();
+        }
+
+        if (!documents.isEmpty()) {
+            Map<UUID, String> filenames;
+            try {
+                filenames = filenames(documents);
+            } catch (RuntimeException e) {
+                log.warn("Could not look up {} changed filenames: {}", documents.size(), e.getMessage());
+                pendingDocuments.addAll(documents);
+                documents.clear();
+                filenames = Map.of();
+            }
+            Map<UUID, String> changes = new HashMap<>();
+            for (UUID id : documents) {
+                changes.put(id, filenames.get(id)); // null: deleted
+            }
+            apply(Suggestion.Type.FILENAME, changes);
+        }
+        if (!tags.isEmpty()) {
+            apply(Suggestion.Type.TAG, tags);
+        }
+    }
+
+    // Rebuilds from the remaining names, which closes the empty slots
+    private void compact() {
+        Snapshot s = snapshot;
+        List<Suggestion> names = new ArrayList<>(s.ids().length - s.emptySlots());
+        for (int slot = 0; slot < s.ids().length; slot++) {
+            if (s.ids()[slot] != null) {
+                names.add(new Suggestion(s.texts()[slot], TYPES[s.types()[slot]], s.ids()[slot]));
+            }
+        }
+        load(names);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (updater instanceof ExecutorService executor) {
+            executor.shutdownNow();
+        }
+    }
+
+    private Map<UUID, String> filenames(Set<UUID> ids) {
+        Map<UUID, String> result = new HashMap<>();
+        List<UUID> all = new ArrayList<>(ids);
+        for (int from = 0; from < all.size(); from += LOOKUP_CHUNK) {
+            List<UUID> chunk = all.subList(from, Math.min(from + LOOKUP_CHUNK, all.size()));
+            jdbc.query("SELECT id, original_filename FROM documents WHERE id IN (%s)"
+                            .formatted(String.join(",", Collections.nCopies(chunk.size(), "?"))),
+                    rs -> {
+                        result.put(rs.getObject("id", UUID.class), rs.getString("original_filename"));
+                    },
+                    chunk.toArray());
+        }
+        return result;
+    }
+
+    // Old entries minus those of dropped slots, merged with the sorted new ones
+    private static long[] merge(String[] keys, long[] old, BitSet dropped, List<Long> added) {
+        long[] order = new long[old.length + added.size()];
+        int k = 0;
+        int a = 0;
+        for (long entry : old) {
+            if (dropped.get(slot(entry))) {
+                continue;
+            }
+            while (a < added.size() && compareEntries(keys, added.get(a), entry) < 0) {
+                order[k++] = added.get(a++);
+            }
+            order[k++] = entry;
+        }
+        while (a < added.size()) {
+            order[k++] = added.get(a++);
+        }
+        return k == order.length ? order : Arrays.copyOf(order, k);
+    }
+
+    // First entry whose text is not smaller than prefix
+    private static int lowerBound(Snapshot s, String prefix) {
+        int lo = 0;
+        int hi = s.order().length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            long entry = s.order()[mid];
+            if (compare(s.keys()[slot(entry)], offset(entry), prefix, 0) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static int[] wordStarts(String key) {
+        int[] starts = new int[Math.min(key.length(), MAX_WORD_STARTS)];
+        int n = 0;
+        for (int i = 0; i < key.length() && n < starts.length; i++) {
+            if (i == 0 || (Character.isLetterOrDigit(key.charAt(i)) && !Character.isLetterOrDigit(key.charAt(i - 1)))) {
+                starts[n++] = i;
+            }
+        }
+        return Arrays.copyOf(starts, n);
+    }
+
+    private static int compareEntries(String[] keys, long a, long b) {
+        int c = compare(keys[slot(a)], offset(a), keys[slot(b)], offset(b));
+        return c != 0 ? c : Long.compare(a, b);
+    }
+
+    // Compares a.substring(aFrom) with b.substring(bFrom) without creating either
+    private static int compare(String a, int aFrom, String b, int bFrom) {
+        int n = Math.min(a.length() - aFrom, b.length() - bFrom);
+        for (int i = 0; i < n; i++) {
+            int c = Character.compare(a.charAt(aFrom + i), b.charAt(bFrom + i));
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Integer.compare(a.length() - aFrom, b.length() - bFrom);
+    }
+
+    // Shares the instance when the name is lower case already
+    private static String fold(String text) {
+        String folded = text.toLowerCase(Locale.ROOT);
+        return folded.equals(text) ? text : folded;
+    }
+
+    private static long entry(int slot, int offset) {
+        return (long) slot << 32 | offset;
+    }
+
+    private static int slot(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    private static int offset(long entry) {
+        return (int) entry;
+    }
+
+    /**
+     * One immutable generation of the index. Slot i of texts, keys, ids and types describes one
+     * name (all null for a removed one); order holds its entries sorted by the text from their
+     * offset on. The size of the strings is tracked along, measuring them again on every change
+     * would cost more than the change.
+     */
+    private record Snapshot(String[] texts, String[] keys, UUID[] ids, byte[] types, long[] order, long stringBytes,
+                            int emptySlots) {
+
+        // 64-bit JVM with compressed oops
+        private static final int ARRAY_HEADER = 16;
+        private static final int REFERENCE = 4;
+        private static final int UUID_OBJECT = 32;
+        private static final int STRING_OBJECT = 24;
+        // node and boxed slot in the writers' id to slot map
+        private static final int SLOT_MAP_ENTRY = 48;
+
+        long bytes() {
+            return 5L * ARRAY_HEADER
+                    + 3L * REFERENCE * ids.length
+                    + (long) (UUID_OBJECT + SLOT_MAP_ENTRY) * (ids.length - emptySlots)
+                    + types.length
+                    + 8L * order.length
+                    + stringBytes;
+        }
+
+        static long nameBytes(String text, String key) {
+            return key == text ? stringBytes(text) : stringBytes(text) + stringBytes(key);
+        }
+
+        // compact strings: one byte per char unless a char needs two
+        private static long stringBytes(String s) {
+            boolean latin1 = s.chars().allMatch(c -> c < 256);
+            return STRING_OBJECT + ARRAY_HEADER + (long) s.length() * (latin1 ? 1 : 2);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package at.technikum.documentmanager.search;
+
+import java.util.UUID;
+
+/**
+ * One typeahead entry: a document filename (id of the document) or a tag name (id of the tag).
+ */
+public record Suggestion(String text, Type type, UUID id) {
+
+    public enum Type { FILENAME, TAG }
+}
@@ -0,0 +1,9 @@
+package at.technikum.documentmanager.search;
+
+import java.util.UUID;
+
+/**
+ * Published when a tag is created, so its name can be suggested before any document carries it.
+ */
+public record TagCreatedEvent(UUID tagId, String name) {
+}
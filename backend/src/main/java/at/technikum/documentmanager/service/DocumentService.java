@@ -1,17 +1,34 @@
 package at.technikum.documentmanager.service;
 
+import at.technikum.documentmanager.dto.DocumentCursor;
+import at.technikum.documentmanager.dto.DocumentMetadata;
+import at.technikum.documentmanager.dto.DocumentResponse;
+import at.technikum.documentmanager.dto.PresignedUploadResponse;
 import at.technikum.documentmanager.entity.Document;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
 
 public interface DocumentService {
-    Document get(UUID id);
-    List<Document> list();
-    void delete(UUID id) throws IOException;
-    Document updateMetadata(UUID id, String newName, String newType);
-    Document replaceFile(UUID id, MultipartFile file) throws IOException;
-    Document saveFile(MultipartFile file) throws IOException;
+    Document get(UUID id);                   // the entity, for write paths; never cached
+    DocumentMetadata getMetadata(UUID id);   // cached read-only snapshot
+    DocumentResponse getDetail(UUID id);
+    String getSummary(UUID id);
+    List<DocumentResponse> listPage(DocumentCursor after, int limit, boolean withSummary); // after == null -> first page
+    List<DocumentResponse> listByIds(List<UUID> ids, boolean withSummary); // in the order of ids, missing ones skipped
+    long getVersion(UUID id);
+    // expectedVersion: the version the client last saw (If-Match), null -> unconditional
+    void delete(UUID id, Long expectedVersion) throws IOException;
+    Document updateMetadata(UUID id, String newName, String newType, long expectedVersion);
+    Document replaceFile(UUID id, MultipartFile file, long expectedVersion) throws IOException;
+    Document saveFile(MultipartFile file, String uploadedBy) throws IOException;
+    Document saveStream(InputStream in, String filename, String contentType, String uploadedBy) throws IOException;
+    PresignedUploadResponse initiateDirectUpload(String filename) throws IOException;
+    Document completeDirectUpload(UUID id, String filename, String uploadedBy) throws IOException;
+    String downloadUrl(DocumentMetadata doc) throws IOException;
     void saveSummary(UUID docId, String summary);
+    int saveSummaries(Map<UUID, String> summaries); // returns the number of documents that changed
+    int saveOcrTexts(Map<UUID, String> texts);      // feeds search_vector, returns the number of documents that changed
 }
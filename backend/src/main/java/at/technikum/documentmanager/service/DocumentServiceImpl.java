@@ -1,24 +1,71 @@
 package at.technikum.documentmanager.service;
 
+import at.technikum.documentmanager.dto.DocumentCursor;
+import at.technikum.documentmanager.dto.DocumentMetadata;
+import at.technikum.documentmanager.dto.DocumentResponse;
+import at.technikum.documentmanager.dto.PresignedUploadResponse;
+import at.technikum.documentmanager.dto.TagResponse;
 import at.technikum.documentmanager.entity.Document;
+import at.technikum.documentmanager.entity.Tag;
+import at.technikum.documentmanager.messaging.UploadEventOutbox;
+import at.technikum.documentmanager.messaging.dto.UploadEvent;
+import at.technikum.documentmanager.preview.PreviewRequestedEvent;
+import at.technikum.documentmanager.repository.DocumentListItem;
 import at.technikum.documentmanager.repository.DocumentRepository;
+import at.technikum.documentmanager.search.DocumentChangedEvent;
+import at.technikum.documentmanager.storage.BlobStore;
 import at.technikum.documentmanager.storage.StorageService;
+import at.technikum.documentmanager.storage.StoredObject;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class DocumentServiceImpl implements DocumentService {
 
     private final DocumentRepository repo;
     private final StorageService storageService;
+    private final BlobStore blobStore;
+    private final JdbcTemplate jdbc;
+    private final CacheManager cacheManager;
+    private final UploadEventOutbox outbox;
+    private final TransactionTemplate tx;
+    private final ApplicationEventPublisher events;
+
+    @Value("${minio.presign.expiry-seconds:600}")
+    private long presignExpirySeconds;
 
     @Override
     public Document get(UUID id) {
@@ -27,86 +74,362 @@ public class DocumentServiceImpl implements DocumentService {
     }
 
     @Override
-    public List<Document> list() {
-        return repo.findAll();
+    @Cacheable(cacheNames = "documents", key = "#id")
+    public DocumentMetadata getMetadata(UUID id) {
+        return DocumentMetadata.of(get(id));
+    }
+
+    // Read paths below never load the entity: only the listed columns, and tags with one query
+    // for all rows instead of one per document.
+    @Override
+    public DocumentResponse getDetail(UUID id) {
+        DocumentListItem item = repo.findItemById(id)
+                .orElseThrow(() -> new NoSuchElementException("Document not found"));
+        return DocumentResponse.of(item, tagsOf(List.of(id)).getOrDefault(id, List.of()));
+    }
+
+    @Override
+    public long getVersion(UUID id) {
+        return repo.findVersionById(id)
+                .orElseThrow(() -> new NoSuchElementException("Document not found"));
+    }
+
+    @Override
+    public String getSummary(UUID id) {
+        return repo.findSummaryById(id)
+                .orElseThrow(() -> new NoSuchElementException("Document not found"))
+                .getSummary();
+    }
+
+    @Override
+    public List<DocumentResponse> listPage(DocumentCursor after, int limit, boolean withSummary) {
+        List<DocumentListItem> items = after == null
+                ? repo.findFirstPage(limit, withSummary)
+                : repo.findPageAfter(after.uploadedAt(), after.id(), limit, withSummary);
+        if (items.isEmpty()) {
+            return List.of();
+        }
+        Map<UUID, List<TagResponse>> tags = tagsOf(items.stream().map(DocumentListItem::getId).toList());
+        return items.stream()
+                .map(item -> DocumentResponse.of(item, tags.getOrDefault(item.getId(), List.of())))
+                .toList();
+    }
+
+    @Override
+    public List<DocumentResponse> listByIds(List<UUID> ids, boolean withSummary) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<UUID, DocumentListItem> items = repo.findItemsByIds(ids, withSummary).stream()
+                .collect(Collectors.toMap(DocumentListItem::getId, item -> item));
+        if (items.isEmpty()) {
+            return List.of();
+        }
+        Map<UUID, List<TagResponse>> tags = tagsOf(List.copyOf(items.keySet()));
+        return ids.stream()
+                .filter(items::containsKey)
+                .map(id -> DocumentResponse.of(items.get(id), tags.getOrDefault(id, List.of())))
+                .toList();
+    }
+
+    private Map<UUID, List<TagResponse>> tagsOf(List<UUID> documentIds) {
+        String placeholders = String.join(",", Collections.nCopies(documentIds.size(), "?"));
+        Map<UUID, List<TagResponse>> result = new HashMap<>();
+        jdbc.query("""
+                        SELECT dt.document_id, t.id, t.name, t.color
+                        FROM document_tags dt
+                        JOIN tags t ON t.id = dt.tag_id
+                        WHERE dt.document_id IN (%s)
+                        ORDER BY t.name
+                        """.formatted(placeholders),
+                rs -> {
+                    result.computeIfAbsent(rs.getObject("document_id", UUID.class), k -> new ArrayList<>())
+                            .add(new TagResponse(rs.getObject("id", UUID.class), rs.getString("name"), rs.getString("color")));
+                },
+                documentIds.toArray());
+        return result;
     }
 
+    // The row and the blob reference go in one transaction, the object is deleted after the commit
     @Override
-    public void delete(UUID id) throws IOException {
+    @Transactional(rollbackFor = Exception.class)
+    @CacheEvict(cacheNames = "documents", key = "#id")
+    public void delete(UUID id, Long expectedVersion) throws IOException {
         var doc = get(id);
-        try {
-            storageService.delete(doc.getStorageFilename());
-        } catch (Exception e) {
-            throw new IOException("Failed to delete object from storage: " + e.getMessage(), e);
+        if (expectedVersion != null) {
+            checkVersion(doc, expectedVersion);
         }
         repo.deleteById(id);
+        events.publishEvent(DocumentChangedEvent.of(id));
+        if (!doc.getTags().isEmpty()) {
+            events.publishEvent(TagUsageChangedEvent.removed(id,
+                    doc.getTags().stream().map(Tag::getId).collect(Collectors.toSet())));
+        }
+        releaseContent(doc.getContentSha256(), doc.getStorageFilename());
     }
 
     @Override
-    public Document updateMetadata(UUID id, String newName, String newType) {
+    @CacheEvict(cacheNames = "documents", key = "#id")
+    public Document updateMetadata(UUID id, String newName, String newType, long expectedVersion) {
         var existing = get(id);
+        checkVersion(existing, expectedVersion);
         existing.setOriginalFilename(newName);
         existing.setContentType(newType);
-        return repo.save(existing);
+        Document saved = repo.save(existing);
+        events.publishEvent(DocumentChangedEvent.of(id));
+        return saved;
     }
 
     @Override
-    public Document replaceFile(UUID id, MultipartFile file) throws IOException {
+    @Transactional(rollbackFor = Exception.class)
+    @CacheEvict(cacheNames = "documents", key = "#id")
+    public Document replaceFile(UUID id, MultipartFile file, long expectedVersion) throws IOException {
         var existing = get(id);
+        checkVersion(existing, expectedVersion);
+        String previousSha256 = existing.getContentSha256();
+        String previousObject = existing.getStorageFilename();
 
+        BlobStore.StoredBlob blob;
         try {
-            storageService.delete(existing.getStorageFilename());
+            blob = blobStore.store(file, file.getSize(), file.getContentType());
         } catch (Exception e) {
-            throw new IOException("Failed to delete old object from storage: " + e.getMessage(), e);
+            throw new IOException("Failed to upload new file to storage: " + e.getMessage(), e);
         }
 
-        String cleanedName = sanitizeFilename(file.getOriginalFilename());
-        String objectName = id + "-" + cleanedName;
+        existing.setOriginalFilename(file.getOriginalFilename());
+        existing.setContentType(file.getContentType());
+        existing.setSize(blob.size());
+        existing.setStorageFilename(blob.objectName());
+        existing.setContentSha256(blob.sha256());
+        Document saved = repo.save(existing);
+        events.publishEvent(DocumentChangedEvent.of(id));
+        events.publishEvent(new PreviewRequestedEvent(id, saved.getStorageFilename(), saved.getContentType()));
 
+        // The old object is only deleted after the commit, once nothing in the database points to it
+        releaseContent(previousSha256, previousObject);
+        return saved;
+    }
+
+    // The blob reference commits or rolls back with the row, see BlobStore
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public Document saveFile(MultipartFile file, String uploadedBy) throws IOException {
+        BlobStore.StoredBlob blob;
         try {
-            storageService.store(file.getInputStream(), file.getSize(), file.getContentType(), objectName);
+            blob = blobStore.store(file, file.getSize(), file.getContentType());
         } catch (Exception e) {
-            throw new IOException("Failed to upload new file to storage: " + e.getMessage(), e);
+            throw new IOException("Failed to upload file to storage: " + e.getMessage(), e);
         }
 
-        existing.setOriginalFilename(file.getOriginalFilename());
-        existing.setContentType(file.getContentType());
-        existing.setSize(file.getSize());
-        existing.setStorageFilename(objectName);
+        Document doc = Document.builder()
+                .id(UUID.randomUUID())
+                .originalFilename(file.getOriginalFilename())
+                .contentType(file.getContentType())
+                .size(blob.size())
+                .storageFilename(blob.objectName())
+                .contentSha256(blob.sha256())
+                .uploadedAt(Instant.now())
+                .build();
+
+        return persistUploaded(doc, uploadedBy);
+    }
+
+    // The body is staged outside the transaction, a slow client must not hold a database connection
+    @Override
+    public Document saveStream(InputStream in, String filename, String contentType, String uploadedBy) throws IOException {
+        String type = contentType != null ? contentType : "application/octet-stream";
 
-        return repo.save(existing);
+        // Length and digest are only known once the body has been read completely
+        BlobStore.StagedBlob staged;
+        try {
+            staged = blobStore.stage(in, type);
+        } catch (Exception e) {
+            throw new IOException("Failed to stream file to storage: " + e.getMessage(), e);
+        }
+
+        try {
+            return tx.execute(status -> {
+                BlobStore.StoredBlob blob;
+                try {
+                    blob = blobStore.promote(staged);
+                } catch (Exception e) {
+                    throw new UncheckedIOException(new IOException("Failed to stream file to storage: " + e.getMessage(), e));
+                }
+                return persistUploaded(Document.builder()
+                        .id(UUID.randomUUID())
+                        .originalFilename(filename)
+                        .contentType(type)
+                        .size(blob.size())
+                        .storageFilename(blob.objectName())
+                        .contentSha256(blob.sha256())
+                        .uploadedAt(Instant.now())
+                        .build(), uploadedBy);
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            try {
+                blobStore.discard(staged);
+            } catch (Exception e) {
+                log.warn("Could not delete staging object {}: {}", staged.stagingObjectName(), e.getMessage());
+            }
+        }
     }
 
+    // Direct uploads bypass the backend, so the content is never hashed and the object
+    // keeps the per-document <id>-<filename> name instead of a shared blob.
+    @Override
+    public PresignedUploadResponse initiateDirectUpload(String filename) throws IOException {
+        UUID id = UUID.randomUUID();
+        Duration expiry = Duration.ofSeconds(presignExpirySeconds);
+        try {
+            String url = storageService.presignedPutUrl(directUploadObjectName(id, filename), expiry);
+            return new PresignedUploadResponse(id, url, Instant.now().plus(expiry));
+        } catch (Exception e) {
+            throw new IOException("Failed to presign upload: " + e.getMessage(), e);
+        }
+    }
 
     @Override
-    public Document saveFile(MultipartFile file) throws IOException {
-        UUID id = UUID.randomUUID(); // single UUID for both DB and storage
-        String cleanedName = sanitizeFilename(file.getOriginalFilename());
-        String objectName = id + "-" + cleanedName;
+    public Document completeDirectUpload(UUID id, String filename, String uploadedBy) throws IOException {
+        // cheap answer for a repeated call; concurrent ones are caught by the primary key below
+        if (repo.existsById(id)) {
+            throw new IllegalArgumentException("Upload already completed: " + id);
+        }
+        String objectName = directUploadObjectName(id, filename);
 
+        Optional<StoredObject> stat;
         try {
-            storageService.store(file.getInputStream(), file.getSize(), file.getContentType(), objectName);
+            stat = storageService.stat(objectName);
         } catch (Exception e) {
-            throw new IOException("Failed to upload file to storage: " + e.getMessage(), e);
+            throw new IOException("Failed to read uploaded object: " + e.getMessage(), e);
         }
+        StoredObject object = stat.orElseThrow(() -> new NoSuchElementException("No uploaded file found for " + id));
 
         Document doc = Document.builder()
                 .id(id)
-                .originalFilename(file.getOriginalFilename())
-                .contentType(file.getContentType())
-                .size(file.getSize())
+                .originalFilename(filename)
+                .contentType(object.contentType() != null ? object.contentType() : "application/octet-stream")
+                .size(object.size())
                 .storageFilename(objectName)
                 .uploadedAt(Instant.now())
                 .build();
 
-        return repo.save(doc);
+        try {
+            return persistUploaded(doc, uploadedBy);
+        } catch (DataIntegrityViolationException e) {
+            if (repo.existsById(id)) {
+                // another request completed the same upload first, its insert won
+                throw new IllegalArgumentException("Upload already completed: " + id);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public String downloadUrl(DocumentMetadata doc) throws IOException {
+        try {
+            // compressed objects have to be decoded by the backend, the presigned URL would serve zstd
+            if (!storageService.isStoredVerbatim(doc.storageFilename())) {
+                return "/api/documents/download/" + doc.id();
+            }
+            return storageService.presignedGetUrl(doc.storageFilename(),
+                    Duration.ofSeconds(presignExpirySeconds), doc.originalFilename());
+        } catch (Exception e) {
+            throw new IOException("Failed to presign download: " + e.getMessage(), e);
+        }
     }
 
     @Override
+    @CacheEvict(cacheNames = "documents", key = "#docId")
     public void saveSummary(UUID docId, String summary) {
         var doc = get(docId); // throws if not found
         doc.setSummary(summary);
         repo.save(doc);
+        events.publishEvent(DocumentChangedEvent.of(docId));
+    }
+
+    // One JDBC batch for all summaries. Rows that already carry the summary are left untouched,
+    // so redelivered messages are harmless.
+    @Override
+    @Transactional
+    public int saveSummaries(Map<UUID, String> summaries) {
+        List<Object[]> args = new ArrayList<>(summaries.size());
+        summaries.forEach((id, summary) -> args.add(new Object[]{summary, id, summary}));
+
+        int[] counts = jdbc.batchUpdate(
+                "UPDATE documents SET summary = ?, version = version + 1 WHERE id = ? AND summary IS DISTINCT FROM ?", args);
+
+        Cache cache = cacheManager.getCache("documents");
+        Set<UUID> changed = new HashSet<>();
+        int i = 0;
+        for (UUID id : summaries.keySet()) {
+            if (counts[i++] != 0) {
+                changed.add(id);
+                if (cache != null) {
+                    cache.evict(id);
+                }
+            }
+        }
+        if (!changed.isEmpty()) {
+            events.publishEvent(new DocumentChangedEvent(changed));
+        }
+        return changed.size();
+    }
+
+    // OCR text is not part of the entity, it only feeds the generated search_vector column and the
+    // embedded Lucene index, so neither the version nor the document cache are affected.
+    @Override
+    @Transactional
+    public int saveOcrTexts(Map<UUID, String> texts) {
+        List<Object[]> args = new ArrayList<>(texts.size());
+        texts.forEach((id, text) -> args.add(new Object[]{text, id, text}));
+        int[] counts = jdbc.batchUpdate(
+                "UPDATE documents SET ocr_text = ? WHERE id = ? AND ocr_text IS DISTINCT FROM ?", args);
+        Set<UUID> changed = new HashSet<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                changed.add((UUID) args.get(i)[1]);
+            }
+        }
+        if (!changed.isEmpty()) {
+            events.publishEvent(new DocumentChangedEvent(changed));
+        }
+        return changed.size();
+    }
+
+    // The bytes are already in storage; only the row and its upload event share a transaction,
+    // so a crash can leave an orphaned object but never a document without its event.
+    private Document persistUploaded(Document doc, String uploadedBy) {
+        return tx.execute(status -> {
+            // new id, so this is an INSERT; flushed right away so a duplicate id fails before the outbox row
+            Document saved = repo.saveAndFlush(doc);
+            outbox.enqueue(new UploadEvent(
+                    saved.getId().toString(),
+                    saved.getOriginalFilename(),
+                    saved.getContentType(),
+                    saved.getSize(),
+                    saved.getUploadedAt(),
+                    uploadedBy != null ? uploadedBy : "unknown",
+                    saved.getStorageFilename()
+            ));
+            events.publishEvent(DocumentChangedEvent.of(saved.getId()));
+            events.publishEvent(new PreviewRequestedEvent(saved.getId(), saved.getStorageFilename(), saved.getContentType()));
+            return saved;
+        });
+    }
+
+    // Fails early on a stale If-Match; a concurrent writer that slips in between is caught by
+    // the version check of the UPDATE itself (ObjectOptimisticLockingFailureException)
+    private static void checkVersion(Document doc, long expectedVersion) {
+        if (doc.getVersion() == null || doc.getVersion() != expectedVersion) {
+            throw new OptimisticLockingFailureException(
+                    "Document was modified concurrently, current version is " + doc.getVersion());
+        }
+    }
+
+    private String directUploadObjectName(UUID id, String filename) {
+        return id + "-" + sanitizeFilename(filename);
     }
 
     private String sanitizeFilename(String originalFilename) {
@@ -125,4 +448,13 @@ public class DocumentServiceImpl implements DocumentService {
         return namePart + extPart;
     }
 
+    private void releaseContent(String contentSha256, String objectName) {
+        if (contentSha256 != null) {
+            blobStore.release(contentSha256);
+        } else {
+            // uploaded before deduplication, the object belongs to this document alone
+            blobStore.releaseUnshared(objectName);
+        }
+    }
+
 }
@@ -0,0 +1,267 @@
+package at.technikum.documentmanager.service;
+
+import at.technikum.documentmanager.search.DocumentChangedEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The documents of every tag as a compressed bitmap over document ordinals, so "tagged A and B
+ * but not C" is a few bitmap operations instead of a join per tag. Ordinals follow (uploaded_at, id)
+ * at startup and grow with every new document, iterating them backwards lists newest first like the
+ * document listing. Deleted documents leave a gap that is only closed by the next startup.
+ * Built from Postgres before the first request and kept current by {@link TagUsageChangedEvent}s
+ * and {@link DocumentChangedEvent}s after commit.
+ */
+@Component
+@Slf4j
+public class TagBitmapIndex {
+
+    private static final RoaringBitmap EMPTY = new RoaringBitmap();
+
+    private final JdbcTemplate jdbc;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<UUID, Integer> ordinals = new HashMap<>();
+    private final Map<UUID, RoaringBitmap> byTag = new HashMap<>();
+    private final RoaringBitmap live = new RoaringBitmap();
+    private UUID[] documents = new UUID[1024];
+    private int nextOrdinal;
+
+    // Ordinals differ after a restart, cursors of an earlier build are rejected
+    private final long epoch = System.currentTimeMillis();
+
+    public TagBitmapIndex(JdbcTemplate jdbc, MeterRegistry registry) {
+        this.jdbc = jdbc;
+        Gauge.builder("tags.bitmap.documents", this, TagBitmapIndex::documentCount).register(registry);
+        Gauge.builder("tags.bitmap.memory", this, TagBitmapIndex::memoryBytes).baseUnit("bytes").register(registry);
+    }
+
+    @PostConstruct
+    public void load() {
+        long start = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            jdbc.query("SELECT id FROM documents ORDER BY uploaded_at, id",
+                    rs -> {
+                        assign(rs.getObject("id", UUID.class));
+                    });
+            jdbc.query("SELECT document_id, tag_id FROM document_tags",
+                    rs -> {
+                        Integer ordinal = ordinals.get(rs.getObject("document_id", UUID.class));
+                        if (ordinal != null) {
+                            byTag.computeIfAbsent(rs.getObject("tag_id", UUID.class), k -> new RoaringBitmap()).add(ordinal);
+                        }
+                    });
+            byTag.values().forEach(RoaringBitmap::runOptimize);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Tag bitmaps built in {} ms: {} documents, {} tags, {} KiB",
+                (System.nanoTime() - start) / 1_000_000, documentCount(), byTag.size(), memoryBytes() / 1024);
+    }
+
+    /**
+     * One page of the documents tagged with every tag in all, at least one tag in any (when given)
+     * and none of the tags in none, newest first. Empty all and any stand for every document.
+     */
+    public Page find(Collection<UUID> all, Collection<UUID> any, Collection<UUID> none, String cursor, int limit) {
+        int before = cursor == null ? Integer.MAX_VALUE : decode(cursor);
+        lock.readLock().lock();
+        try {
+            RoaringBitmap matches = evaluate(all, any, none);
+            List<UUID> ids = new ArrayList<>(Math.min(limit, matches.getCardinality()));
+            long ordinal = before == 0 ? -1 : matches.previousValue(before - 1);
+            while (ordinal >= 0 && ids.size() < limit) {
+                ids.add(documents[(int) ordinal]);
+                ordinal = ordinal == 0 ? -1 : matches.previousValue((int) ordinal - 1);
+            }
+            // ordinal is the first match of the next page, if any
+            String next = ordinal >= 0 ? encode((int) ordinal + 1) : null;
+            return new Page(ids, matches.getCardinality(), next);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUsageChanged(TagUsageChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinals.get(event.documentId());
+            if (ordinal == null) {
+                if (event.delta() < 0) {
+                    return;
+                }
+                ordinal = assign(event.documentId());
+            }
+            for (UUID tagId : event.tagIds()) {
+                if (event.delta() > 0) {
+                    byTag.computeIfAbsent(tagId, k -> new RoaringBitmap()).add(ordinal);
+                } else {
+                    RoaringBitmap tagged = byTag.get(tagId);
+                    if (tagged != null) {
+                        tagged.remove(ordinal);
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Uploads get the next ordinal, deleted documents are dropped from every bitmap
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDocumentChanged(DocumentChangedEvent event) {
+        Set<UUID> existing = existing(event.documentIds());
+        lock.writeLock().lock();
+        try {
+            for (UUID id : existing) {
+                if (!ordinals.containsKey(id)) {
+                    assign(id);
+                }
+            }
+            for (UUID id : event.documentIds()) {
+                if (!existing.contains(id)) {
+                    drop(id);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int documentCount() {
+        lock.readLock().lock();
+        try {
+            return live.getCardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    long memoryBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = live.getLongSizeInBytes() + (long) documents.length * 4;
+            for (RoaringBitmap tagged : byTag.values()) {
+                bytes += tagged.getLongSizeInBytes();
+            }
+            // HashMap node, boxed ordinal and UUID per document
+            return bytes + ordinals.size() * 96L;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Smallest sets first: the intersection shrinks fastest and empty results stop early
+    private RoaringBitmap evaluate(Collection<UUID> all, Collection<UUID> any, Collection<UUID> none) {
+        RoaringBitmap result = live;
+        if (!all.isEmpty()) {
+            List<RoaringBitmap> required = new ArrayList<>(bitmaps(all));
+            required.sort(Comparator.comparingInt(RoaringBitmap::getCardinality));
+            for (RoaringBitmap tagged : required) {
+                result = RoaringBitmap.and(result, tagged);
+                if (result.isEmpty()) {
+                    return result;
+                }
+            }
+        }
+        if (!any.isEmpty()) {
+            result = RoaringBitmap.and(result, FastAggregation.or(bitmaps(any).iterator()));
+        }
+        if (!none.isEmpty()) {
+            result = RoaringBitmap.andNot(result, FastAggregation.or(bitmaps(none).iterator()));
+        }
+        return result;
+    }
+
+    private List<RoaringBitmap> bitmaps(Collection<UUID> tagIds) {
+        return tagIds.stream().map(id -> byTag.getOrDefault(id, EMPTY)).toList();
+    }
+
+    private int assign(UUID id) {
+        int ordinal = nextOrdinal++;
+        if (ordinal == documents.length) {
+            documents = Arrays.copyOf(documents, documents.length * 2);
+        }
+        documents[ordinal] = id;
+        ordinals.put(id, ordinal);
+        live.add(ordinal);
+        return ordinal;
+    }
+
+    private void drop(UUID id) {
+        Integer ordinal = ordinals.remove(id);
+        if (ordinal == null) {
+            return;
+        }
+        documents[ordinal] = null;
+        live.remove(ordinal);
+        for (RoaringBitmap tagged : byTag.values()) {
+            tagged.remove(ordinal);
+        }
+    }
+
+    // Ordered like the startup build, so several uploads in one event keep their upload order
+    private Set<UUID> existing(Set<UUID> ids) {
+        if (ids.isEmpty()) {
+            return Set.of();
+        }
+        String placeholders = String.join(",", Collections.nCopies(ids.size(), "?"));
+        return new LinkedHashSet<>(jdbc.queryForList(
+                "SELECT id FROM documents WHERE id IN (%s) ORDER BY uploaded_at, id".formatted(placeholders),
+                UUID.class, ids.toArray()));
+    }
+
+    private String encode(int before) {
+        String raw = epoch + "|" + before;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private int decode(String token) {
+        long tokenEpoch;
+        int before;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int sep = raw.indexOf('|');
+            tokenEpoch = Long.parseLong(raw.substring(0, sep));
+            before = Integer.parseInt(raw.substring(sep + 1));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        if (tokenEpoch != epoch || before < 0) {
+            throw new IllegalArgumentException("Cursor expired, start from the first page");
+        }
+        return before;
+    }
+
+    /**
+     * Document ids of one page, the number of matches over all pages and the cursor of the next
+     * page (null on the last one).
+     */
+    public record Page(List<UUID> ids, int total, String nextCursor) {
+    }
+}
@@ -0,0 +1,117 @@
+package at.technikum.documentmanager.service;
+
+import at.technikum.documentmanager.dto.TagCloudEntry;
+import at.technikum.documentmanager.entity.Tag;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * All tags in memory, loaded before the first request: lookups by id or name (case-insensitive)
+ * and the tag list never reach the database. Every tag carries the number of documents tagged
+ * with it, adjusted by {@link TagUsageChangedEvent}s after commit, so the tag cloud only reads
+ * counters. Assumes tags and tag assignments are only written through this backend.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TagCatalog {
+
+    private static final Comparator<TagCloudEntry> MOST_USED_FIRST =
+            Comparator.comparingLong(TagCloudEntry::documents).reversed()
+                    .thenComparing(TagCloudEntry::name, String.CASE_INSENSITIVE_ORDER);
+
+    private final JdbcTemplate jdbc;
+
+    private final Map<UUID, Entry> byId = new ConcurrentHashMap<>();
+    private final Map<String, Entry> byName = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void load() {
+        jdbc.query("""
+                        SELECT t.id, t.name, t.color, t.version, count(dt.document_id) AS documents
+                        FROM tags t
+                        LEFT JOIN document_tags dt ON dt.tag_id = t.id
+                        GROUP BY t.id, t.name, t.color, t.version
+                        """,
+                rs -> {
+                    Tag tag = Tag.builder()
+                            .id(rs.getObject("id", UUID.class))
+                            .name(rs.getString("name"))
+                            .color(rs.getString("color"))
+                            .version(rs.getLong("version"))
+                            .build();
+                    put(tag, rs.getLong("documents"));
+                });
+        log.info("Tag catalog loaded with {} tags", byId.size());
+    }
+
+    public Optional<Tag> get(UUID id) {
+        return Optional.ofNullable(byId.get(id)).map(Entry::tag);
+    }
+
+    public Optional<Tag> findByName(String name) {
+        return Optional.ofNullable(byName.get(key(name))).map(Entry::tag);
+    }
+
+    public List<Tag> all() {
+        return byId.values().stream()
+                .map(Entry::tag)
+                .sorted(Comparator.comparing(Tag::getName, String.CASE_INSENSITIVE_ORDER))
+                .toList();
+    }
+
+    public long documentCount(UUID tagId) {
+        Entry entry = byId.get(tagId);
+        return entry == null ? 0 : entry.documents().get();
+    }
+
+    // A new tag, not on any document yet
+    public void add(Tag tag) {
+        put(tag, 0);
+    }
+
+    // Most used tags first, unused ones included
+    public List<TagCloudEntry> cloud(int limit) {
+        return byId.values().stream()
+                .map(e -> new TagCloudEntry(e.tag().getId(), e.tag().getName(), e.tag().getColor(), e.documents().get()))
+                .sorted(MOST_USED_FIRST)
+                .limit(limit)
+                .toList();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUsageChanged(TagUsageChangedEvent event) {
+        for (UUID tagId : event.tagIds()) {
+            Entry entry = byId.get(tagId);
+            if (entry != null) {
+                entry.documents().addAndGet(event.delta());
+            }
+        }
+    }
+
+    private void put(Tag tag, long documents) {
+        Entry entry = new Entry(tag, new AtomicLong(documents));
+        byId.put(tag.getId(), entry);
+        byName.put(key(tag.getName()), entry);
+    }
+
+    private static String key(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private record Entry(Tag tag, AtomicLong documents) {
+    }
+}
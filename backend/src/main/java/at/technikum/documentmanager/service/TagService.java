@@ -1,26 +1,39 @@
 package at.technikum.documentmanager.service;
 
+import at.technikum.documentmanager.dto.TagCloudEntry;
 import at.technikum.documentmanager.dto.TagRequest;
+import at.technikum.documentmanager.dto.TaggedDocumentPage;
 import at.technikum.documentmanager.entity.Document;
 import at.technikum.documentmanager.entity.Tag;
 import at.technikum.documentmanager.repository.DocumentRepository;
 import at.technikum.documentmanager.repository.TagRepository;
+import at.technikum.documentmanager.search.DocumentChangedEvent;
+import at.technikum.documentmanager.search.TagCreatedEvent;
 import lombok.RequiredArgsConstructor;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class TagService {
     private final TagRepository tagRepository;
     private final DocumentRepository documentRepository;
+    private final DocumentService documentService;
+    private final ApplicationEventPublisher events;
+    private final TagCatalog catalog;
+    private final TagBitmapIndex bitmaps;
 
     public Tag create(TagRequest request) {
-        tagRepository.findByNameIgnoreCase(request.name())
+        catalog.findByName(request.name())
                 .ifPresent(existing -> {
                     throw new IllegalArgumentException("Tag already exists: " + existing.getName());
                 });
@@ -30,38 +43,81 @@ public class TagService {
                 .name(request.name().trim())
                 .color(request.color())
                 .build();
-        return tagRepository.save(tag);
+        Tag saved = tagRepository.save(tag);
+        catalog.add(saved);
+        events.publishEvent(new TagCreatedEvent(saved.getId(), saved.getName()));
+        return saved;
     }
 
     public List<Tag> listAll() {
-        return tagRepository.findAll();
+        return catalog.all();
+    }
+
+    public List<TagCloudEntry> cloud(int limit) {
+        return catalog.cloud(limit);
+    }
+
+    /**
+     * Documents tagged with all of all, at least one of any and none of none (tag names, any case),
+     * newest first. Unknown tag names are rejected rather than matching nothing silently.
+     */
+    public TaggedDocumentPage findDocuments(List<String> all, List<String> any, List<String> none,
+                                            String cursor, int limit, boolean withSummary) {
+        TagBitmapIndex.Page page = bitmaps.find(tagIds(all), tagIds(any), tagIds(none), cursor, limit);
+        return new TaggedDocumentPage(documentService.listByIds(page.ids(), withSummary), page.total(), page.nextCursor());
     }
 
     @Transactional
+    @CacheEvict(cacheNames = "documents", key = "#documentId")
     public Document addTagToDocument(UUID documentId, UUID tagId) {
         Document document = documentRepository.findById(documentId)
                 .orElseThrow(() -> new NoSuchElementException("Document not found"));
         Tag tag = tagRepository.findById(tagId)
                 .orElseThrow(() -> new NoSuchElementException("Tag not found"));
 
-        document.getTags().add(tag);
-        return documentRepository.save(document);
+        boolean added = document.getTags().add(tag);
+        Document saved = documentRepository.save(document);
+        events.publishEvent(DocumentChangedEvent.of(documentId));
+        if (added) {
+            events.publishEvent(TagUsageChangedEvent.added(documentId, tagId));
+        }
+        return saved;
     }
 
     @Transactional
+    @CacheEvict(cacheNames = "documents", key = "#documentId")
     public Document removeTagFromDocument(UUID documentId, UUID tagId) {
         Document document = documentRepository.findById(documentId)
                 .orElseThrow(() -> new NoSuchElementException("Document not found"));
         Tag tag = tagRepository.findById(tagId)
                 .orElseThrow(() -> new NoSuchElementException("Tag not found"));
 
-        document.getTags().remove(tag);
-        return documentRepository.save(document);
+        boolean removed = document.getTags().remove(tag);
+        Document saved = documentRepository.save(document);
+        events.publishEvent(DocumentChangedEvent.of(documentId));
+        if (removed) {
+            events.publishEvent(TagUsageChangedEvent.removed(documentId, Set.of(tagId)));
+        }
+        return saved;
+    }
+
+    private Set<UUID> tagIds(List<String> names) {
+        if (names == null) {
+            return Set.of();
+        }
+        return names.stream()
+                .filter(name -> !name.isBlank())
+                .map(name -> catalog.findByName(name)
+                        .orElseThrow(() -> new IllegalArgumentException("Unknown tag: " + name.trim()))
+                        .getId())
+                .collect(Collectors.toSet());
     }
 
     public List<Tag> tagsForDocument(UUID documentId) {
-        Document document = documentRepository.findById(documentId)
-                .orElseThrow(() -> new NoSuchElementException("Document not found"));
-        return document.getTags().stream().toList();
+        // tag ids from the document metadata cache, the tags themselves from the catalog
+        return documentService.getMetadata(documentId).tags().stream()
+                .map(t -> catalog.get(t.id()))
+                .flatMap(Optional::stream)
+                .toList();
     }
 }
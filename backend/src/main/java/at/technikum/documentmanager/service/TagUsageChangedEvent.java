@@ -0,0 +1,19 @@
+package at.technikum.documentmanager.service;
+
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Published when a document gains or loses tags; delta is added to the document count of every tag
+ * in tagIds once the transaction commits.
+ */
+public record TagUsageChangedEvent(UUID documentId, Set<UUID> tagIds, int delta) {
+
+    public static TagUsageChangedEvent added(UUID documentId, UUID tagId) {
+        return new TagUsageChangedEvent(documentId, Set.of(tagId), 1);
+    }
+
+    public static TagUsageChangedEvent removed(UUID documentId, Set<UUID> tagIds) {
+        return new TagUsageChangedEvent(documentId, tagIds, -1);
+    }
+}
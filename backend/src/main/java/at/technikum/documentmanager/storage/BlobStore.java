@@ -0,0 +1,249 @@
+package at.technikum.documentmanager.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Content-addressed layer on top of {@link StorageService}. Every distinct content is stored once
+ * under {@code blobs/<sha256>} and reference counted in the {@code blobs} table.
+ * <p>
+ * References are taken and dropped in the transaction that writes the referencing document row,
+ * so both commit or roll back together. Objects are only deleted after that transaction committed:
+ * a blob whose count dropped to zero is purged in a transaction of its own, which re-checks the
+ * count under the row lock, so content uploaded again in the meantime is kept.
+ */
+@Service
+@Slf4j
+public class BlobStore {
+
+    private static final String BLOB_PREFIX = "blobs/";
+    private static final String STAGING_PREFIX = "staging/";
+    private static final String PREVIEW_SUFFIX = ".preview.png";
+    private static final String PREVIEW_FAILED_SUFFIX = ".preview.failed";
+
+    private final StorageService storageService;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate separateTx;
+
+    public BlobStore(StorageService storageService, JdbcTemplate jdbc, PlatformTransactionManager transactionManager) {
+        this.storageService = storageService;
+        this.jdbc = jdbc;
+        this.separateTx = new TransactionTemplate(transactionManager);
+        this.separateTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public record StoredBlob(String sha256, String objectName, long size) {}
+
+    // Content read into a staging object, not referenced yet
+    public record StagedBlob(String stagingObjectName, String sha256, long size) {}
+
+    public static String objectName(String sha256) {
+        return BLOB_PREFIX + sha256;
+    }
+
+    // Rendered from the content, so documents sharing a blob share it and it goes away with the blob
+    public static String previewObjectName(String objectName) {
+        return objectName + PREVIEW_SUFFIX;
+    }
+
+    // Marks content whose preview cannot be rendered, so it is not tried again on every request
+    public static String previewFailedObjectName(String objectName) {
+        return objectName + PREVIEW_FAILED_SUFFIX;
+    }
+
+    /**
+     * Stores content that can be read twice (e.g. a spooled multipart file). The digest is computed
+     * from the local copy first, so already known content is never sent to object storage again.
+     */
+    @Transactional(propagation = Propagation.MANDATORY, rollbackFor = Exception.class)
+    public StoredBlob store(InputStreamSource source, long size, String contentType) throws Exception {
+        String sha256;
+        try (InputStream in = source.getInputStream()) {
+            sha256 = digest(in);
+        }
+
+        String objectName = objectName(sha256);
+        if (acquire(sha256, size)) {
+            discardOnRollback(sha256, size);
+            try (InputStream in = source.getInputStream()) {
+                storageService.store(in, size, contentType, objectName);
+            }
+        } else {
+            log.info("Deduplicated upload onto existing blob {}", sha256);
+        }
+        return new StoredBlob(sha256, objectName, size);
+    }
+
+    /**
+     * Reads content of unknown length in a single pass, hashing the bytes while they stream into a
+     * staging object. Runs outside of any transaction; {@link #promote} then takes the reference.
+     * The caller removes the staging object with {@link #discard} in any case.
+     */
+    public StagedBlob stage(InputStream in, String contentType) throws Exception {
+        String staging = STAGING_PREFIX + UUID.randomUUID();
+        MessageDigest md = sha256();
+        CountingInputStream counting = new CountingInputStream(new DigestInputStream(in, md));
+        try {
+            storageService.store(counting, -1, contentType, staging);
+        } catch (Exception e) {
+            storageService.delete(staging);
+            throw e;
+        }
+        return new StagedBlob(staging, HexFormat.of().formatHex(md.digest()), counting.getCount());
+    }
+
+    // Moves staged content to its content address by a server-side copy, unless it is already stored
+    @Transactional(propagation = Propagation.MANDATORY, rollbackFor = Exception.class)
+    public StoredBlob promote(StagedBlob staged) throws Exception {
+        String objectName = objectName(staged.sha256());
+        if (acquire(staged.sha256(), staged.size())) {
+            discardOnRollback(staged.sha256(), staged.size());
+            storageService.copy(staged.stagingObjectName(), objectName);
+        } else {
+            log.info("Deduplicated streamed upload onto existing blob {}", staged.sha256());
+        }
+        return new StoredBlob(staged.sha256(), objectName, staged.size());
+    }
+
+    public void discard(StagedBlob staged) throws Exception {
+        storageService.delete(staged.stagingObjectName());
+    }
+
+    /**
+     * Drops one reference. The object is removed after the surrounding transaction committed, once
+     * nothing points to it anymore.
+     */
+    @Transactional(propagation = Propagation.MANDATORY, rollbackFor = Exception.class)
+    public void release(String sha256) {
+        List<Integer> remaining = jdbc.queryForList(
+                "UPDATE blobs SET ref_count = ref_count - 1 WHERE sha256 = ? RETURNING ref_count",
+                Integer.class, sha256);
+        if (remaining.isEmpty() || remaining.getFirst() > 0) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                purge(sha256);
+            }
+        });
+    }
+
+    /**
+     * Objects stored before deduplication (and direct uploads) belong to a single document. They are
+     * removed together with their preview after the surrounding transaction committed.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void releaseUnshared(String objectName) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    deleteWithPreviews(objectName);
+                } catch (Exception e) {
+                    log.warn("Could not delete object {} of a deleted document: {}", objectName, e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Deletes an unreferenced blob. The row stays locked until the object is gone, so a concurrent
+     * upload of the same content waits and then writes the object again instead of referencing a
+     * blob that is being deleted.
+     */
+    void purge(String sha256) {
+        try {
+            separateTx.executeWithoutResult(status -> {
+                List<String> removed = jdbc.queryForList(
+                        "DELETE FROM blobs WHERE sha256 = ? AND ref_count = 0 RETURNING sha256", String.class, sha256);
+                if (removed.isEmpty()) {
+                    return; // referenced again meanwhile
+                }
+                try {
+                    deleteWithPreviews(objectName(sha256));
+                } catch (Exception e) {
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
+                log.info("Removed unreferenced blob {}", sha256);
+            });
+        } catch (RuntimeException e) {
+            // the row keeps its zero count, the next release or rolled back upload of this content retries
+            log.warn("Could not remove unreferenced blob {}: {}", sha256, e.getMessage());
+        }
+    }
+
+    // A rolled back upload of new content leaves an object that nothing references: count it as an
+    // unreferenced blob and purge it like a released one
+    private void discardOnRollback(String sha256, long size) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_ROLLED_BACK) {
+                    return;
+                }
+                try {
+                    separateTx.executeWithoutResult(s -> jdbc.update(
+                            "INSERT INTO blobs (sha256, size, ref_count) VALUES (?, ?, 0) ON CONFLICT (sha256) DO NOTHING",
+                            sha256, size));
+                    purge(sha256);
+                } catch (RuntimeException e) {
+                    log.warn("Could not discard blob {} of a rolled back upload: {}", sha256, e.getMessage());
+                }
+            }
+        });
+    }
+
+    private void deleteWithPreviews(String objectName) throws Exception {
+        storageService.delete(objectName);
+        storageService.delete(previewObjectName(objectName));
+        storageService.delete(previewFailedObjectName(objectName));
+    }
+
+    /**
+     * Adds a reference. Returns true if the caller has to write the object, i.e. the content is new
+     * or an earlier writer of the same content never completed its upload.
+     */
+    private boolean acquire(String sha256, long size) throws Exception {
+        Integer refs = jdbc.queryForObject("""
+                INSERT INTO blobs (sha256, size, ref_count) VALUES (?, ?, 1)
+                ON CONFLICT (sha256) DO UPDATE SET ref_count = blobs.ref_count + 1
+                RETURNING ref_count
+                """, Integer.class, sha256, size);
+        return refs == null || refs == 1 || !storageService.exists(objectName(sha256));
+    }
+
+    private static String digest(InputStream in) throws Exception {
+        MessageDigest md = sha256();
+        try (DigestInputStream din = new DigestInputStream(in, md)) {
+            din.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package at.technikum.documentmanager.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Read-through cache that keeps recently read objects on local disk, bounded by total bytes with
+ * LRU eviction. Writes and deletes go straight to the delegate and invalidate the cached copy.
+ */
+@Service
+@Primary
+@ConditionalOnProperty(name = "app.storage.cache.enabled", havingValue = "true")
+@Slf4j
+public class CachingStorageService implements StorageService {
+
+    private static final Pattern CACHE_FILE = Pattern.compile("[0-9a-f]{64}|[0-9a-f-]{36}\\.part");
+
+    private record CacheEntry(Path file, long size) {}
+
+    private final StorageService delegate;
+    private final Path dir;
+    private final long maxBytes;
+    private final long maxObjectBytes;
+
+    // access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long currentBytes;
+
+    // objects that are being fetched in the background after a ranged miss
+    private final Set<String> filling = ConcurrentHashMap.newKeySet();
+    private final ExecutorService filler = Executors.newFixedThreadPool(2);
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public CachingStorageService(
+            MinioStorageService delegate,
+            @Value("${app.storage.cache.dir:${java.io.tmpdir}/documentmanager-cache}") Path dir,
+            @Value("${app.storage.cache.max-bytes:1073741824}") long maxBytes,
+            @Value("${app.storage.cache.max-object-bytes:104857600}") long maxObjectBytes,
+            MeterRegistry registry
+    ) throws IOException {
+        this.delegate = delegate;
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.maxObjectBytes = maxObjectBytes;
+
+        // the index lives in memory only, so files from a previous run cannot be trusted
+        Files.createDirectories(dir);
+        try (Stream<Path> stale = Files.list(dir)) {
+            for (Path file : stale.filter(f -> CACHE_FILE.matcher(f.getFileName().toString()).matches()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        this.hits = Counter.builder("storage.cache.requests").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("storage.cache.requests").tag("result", "miss").register(registry);
+        this.evictions = Counter.builder("storage.cache.evictions").register(registry);
+        Gauge.builder("storage.cache.size", this, CachingStorageService::cachedBytes).baseUnit("bytes").register(registry);
+        Gauge.builder("storage.cache.entries", this, CachingStorageService::cachedEntries).register(registry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        filler.shutdownNow();
+    }
+
+    @Override
+    public Optional<InputStream> load(String objectName) throws Exception {
+        Optional<FileChannel> cached = openCached(objectName);
+        if (cached.isPresent()) {
+            hits.increment();
+            return Optional.of(Channels.newInputStream(cached.get()));
+        }
+        misses.increment();
+        return loadThrough(objectName);
+    }
+
+    @Override
+    public Optional<InputStream> load(String objectName, long offset, long length) throws Exception {
+        Optional<FileChannel> cached = openCached(objectName);
+        if (cached.isPresent()) {
+            hits.increment();
+            FileChannel channel = cached.get().position(offset);
+            InputStream in = Channels.newInputStream(channel);
+            return Optional.of(length < 0 ? in : new BoundedInputStream(in, length));
+        }
+        misses.increment();
+        fillInBackground(objectName);
+        return delegate.load(objectName, offset, length);
+    }
+
+    // Hits are copied with FileChannel.transferTo, so the bytes never pass through a heap buffer of ours
+    @Override
+    public long transferTo(String objectName, long offset, long length, OutputStream out) throws Exception {
+        Optional<FileChannel> cached = openCached(objectName);
+        if (cached.isEmpty()) {
+            misses.increment();
+            Optional<InputStream> in;
+            if (offset == 0 && length < 0) {
+                in = loadThrough(objectName);
+            } else {
+                fillInBackground(objectName);
+                in = delegate.load(objectName, offset, length);
+            }
+            try (InputStream stream = in.orElseThrow(() -> new IOException("Stored file not found: " + objectName))) {
+                return stream.transferTo(out);
+            }
+        }
+
+        hits.increment();
+        try (FileChannel channel = cached.get()) {
+            long end = length < 0 ? channel.size() : Math.min(channel.size(), offset + length);
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = offset;
+            while (position < end) {
+                position += channel.transferTo(position, end - position, target);
+            }
+            return end - offset;
+        }
+    }
+
+    @Override
+    public void store(InputStream in, long size, String contentType, String objectName) throws Exception {
+        invalidate(objectName);
+        delegate.store(in, size, contentType, objectName);
+    }
+
+    @Override
+    public void copy(String sourceObjectName, String targetObjectName) throws Exception {
+        invalidate(targetObjectName);
+        delegate.copy(sourceObjectName, targetObjectName);
+    }
+
+    @Override
+    public void delete(String objectName) throws Exception {
+        invalidate(objectName);
+        delegate.delete(objectName);
+    }
+
+    @Override
+    public Optional<StoredObject> stat(String objectName) throws Exception {
+        return delegate.stat(objectName);
+    }
+
+    @Override
+    public boolean exists(String objectName) throws Exception {
+        return delegate.exists(objectName);
+    }
+
+    @Override
+    public boolean isStoredVerbatim(String objectName) throws Exception {
+        return delegate.isStoredVerbatim(objectName);
+    }
+
+    @Override
+    public String presignedGetUrl(String objectName, Duration expiry, String downloadFilename) throws Exception {
+        return delegate.presignedGetUrl(objectName, expiry, downloadFilename);
+    }
+
+    @Override
+    public String presignedPutUrl(String objectName, Duration expiry) throws Exception {
+        return delegate.presignedPutUrl(objectName, expiry);
+    }
+
+    public synchronized long cachedBytes() {
+        return currentBytes;
+    }
+
+    public synchronized int cachedEntries() {
+        return entries.size();
+    }
+
+    private Optional<FileChannel> openCached(String objectName) throws IOException {
+        CacheEntry entry;
+        synchronized (this) {
+            entry = entries.get(objectName);
+        }
+        if (entry == null) {
+            return Optional.empty();
+        }
+        try {
+            // an already open channel stays readable even if the entry is evicted meanwhile
+            return Optional.of(FileChannel.open(entry.file(), StandardOpenOption.READ));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    // Streams the object from the delegate while writing a copy into the cache
+    private Optional<InputStream> loadThrough(String objectName) throws Exception {
+        Optional<InputStream> in = delegate.load(objectName);
+        if (in.isEmpty()) {
+            return in;
+        }
+        Path temp = dir.resolve(UUID.randomUUID() + ".part");
+        return Optional.of(new FillingInputStream(in.get(), objectName, temp));
+    }
+
+    private void fillInBackground(String objectName) {
+        if (!filling.add(objectName)) {
+            return;
+        }
+        filler.execute(() -> {
+            try {
+                Optional<InputStream> in = loadThrough(objectName);
+                if (in.isPresent()) {
+                    try (InputStream stream = in.get()) {
+                        stream.transferTo(OutputStream.nullOutputStream());
+                    }
+                }
+            } catch (Exception e) {
+                log.warn("Background cache fill failed for {}: {}", objectName, e.getMessage());
+            } finally {
+                filling.remove(objectName);
+            }
+        });
+    }
+
+    private void commit(String objectName, Path temp, long size) throws IOException {
+        Path file = dir.resolve(fileName(objectName));
+        synchronized (this) {
+            if (entries.containsKey(objectName)) {
+                Files.deleteIfExists(temp); // a concurrent read got there first
+                return;
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            entries.put(objectName, new CacheEntry(file, size));
+            currentBytes += size;
+            evictIfNeeded();
+        }
+    }
+
+    private synchronized void evictIfNeeded() throws IOException {
+        Iterator<Map.Entry<String, CacheEntry>> it = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && it.hasNext()) {
+            CacheEntry eldest = it.next().getValue();
+            it.remove();
+            currentBytes -= eldest.size();
+            Files.deleteIfExists(eldest.file());
+            evictions.increment();
+        }
+    }
+
+    private void invalidate(String objectName) throws IOException {
+        CacheEntry removed;
+        synchronized (this) {
+            removed = entries.remove(objectName);
+            if (removed != null) {
+                currentBytes -= removed.size();
+            }
+        }
+        if (removed != null) {
+            Files.deleteIfExists(removed.file());
+        }
+    }
+
+    private static String fileName(String objectName) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(objectName.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Tees everything read into a temp file and moves it into the cache once the stream was read
+     * to the end. Objects larger than the per-object limit, or streams closed early, are discarded.
+     */
+    private class FillingInputStream extends FilterInputStream {
+
+        private final String objectName;
+        private final Path temp;
+        private OutputStream copy;
+        private long written;
+        private boolean complete;
+
+        FillingInputStream(InputStream in, String objectName, Path temp) throws IOException {
+            super(in);
+            this.objectName = objectName;
+            this.temp = temp;
+            this.copy = Files.newOutputStream(temp);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                complete = true;
+            } else {
+                tee(new byte[]{(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n == -1) {
+                complete = true;
+            } else if (n > 0) {
+                tee(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            abandon(); // the copy would have a hole
+            return super.skip(n);
+        }
+
+        private void tee(byte[] b, int off, int len) throws IOException {
+            if (copy == null) {
+                return;
+            }
+            if (written + len > maxObjectBytes) {
+                abandon();
+                return;
+            }
+            copy.write(b, off, len);
+            written += len;
+        }
+
+        private void abandon() throws IOException {
+            if (copy != null) {
+                copy.close();
+                copy = null;
+                Files.deleteIfExists(temp);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (copy != null && complete) {
+                    copy.close();
+                    copy = null;
+                    commit(objectName, temp, written);
+                } else {
+                    abandon();
+                }
+            }
+        }
+    }
+}
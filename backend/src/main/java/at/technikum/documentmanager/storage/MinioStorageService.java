@@ -2,50 +2,232 @@ package at.technikum.documentmanager.storage;
 
 import io.minio.*;
 import io.minio.errors.MinioException;
+import io.minio.http.Method;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 public class MinioStorageService implements StorageService {
 
+    private static final int PIPE_BUFFER = 256 * 1024;
+
     private final MinioClient minioClient;
+    private final MinioClient presignClient;
     private final String bucket;
+    private final long partSize;
+    private final ObjectCompression compression;
 
     public MinioStorageService(
             MinioClient minioClient,
-            @Value("${minio.bucket}") String bucket
+            @Qualifier("presignMinioClient") MinioClient presignClient,
+            @Value("${minio.bucket}") String bucket,
+            @Value("${minio.part-size:10485760}") long partSize,
+            @Value("${minio.compression.enabled:true}") boolean compressionEnabled,
+            @Value("${minio.compression.level:3}") int compressionLevel,
+            @Value("${minio.compression.content-types:text/*,application/json,application/xml,application/*+json,application/*+xml}")
+            List<String> compressibleTypes
     ) {
         this.minioClient = minioClient;
+        this.presignClient = presignClient;
         this.bucket = bucket;
+        this.partSize = partSize;
+        this.compression = new ObjectCompression(compressionEnabled, compressionLevel, compressibleTypes);
     }
 
     @Override
     public void store(InputStream in, long size, String contentType, String objectName) throws Exception {
+        String type = contentType != null ? contentType : "application/octet-stream";
+        if (compression.shouldCompress(type)) {
+            storeCompressed(in, size, type, objectName);
+            return;
+        }
         minioClient.putObject(
                 PutObjectArgs.builder()
                         .bucket(bucket)
                         .object(objectName)
-                        .contentType(contentType != null ? contentType : "application/octet-stream")
-                        .stream(in, size, -1)
+                        .contentType(type)
+                        // unknown size -> multipart upload, buffering at most one part at a time
+                        .stream(in, size, size < 0 ? partSize : -1)
                         .build()
         );
     }
 
+    // Compresses while uploading: a virtual thread pushes the zstd stream into a pipe that
+    // putObject drains as a multipart upload, so neither side is held in memory.
+    private void storeCompressed(InputStream in, long size, String contentType, String objectName) throws Exception {
+        CountingInputStream source = new CountingInputStream(in);
+        PipedInputStream compressed = new PipedInputStream(PIPE_BUFFER);
+        OutputStream sink = new PipedOutputStream(compressed);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicBoolean uploadEnded = new AtomicBoolean();
+
+        Thread writer = Thread.ofVirtual().name("compress-" + objectName).start(() -> {
+            OutputStream zstd = null;
+            try {
+                zstd = compression.compress(sink);
+                source.transferTo(zstd);
+                zstd.close(); // finishes the frame and closes the pipe
+            } catch (Throwable e) {
+                // a failed upload closes the pipe under the writer, that is not the writer's failure
+                if (!uploadEnded.get()) {
+                    failure.set(e);
+                }
+                // no end of frame and no end of stream: the reader fails, so the upload is aborted
+                closeQuietly(compressed);
+                closeQuietly(sink);
+                if (zstd != null) {
+                    closeQuietly(zstd); // frees the compressor, the end of frame cannot reach the pipe anymore
+                }
+            }
+        });
+
+        Map<String, String> metadata = size >= 0
+                ? Map.of(ObjectCompression.CODEC, ObjectCompression.ZSTD, ObjectCompression.ORIGINAL_SIZE, Long.toString(size))
+                : Map.of(ObjectCompression.CODEC, ObjectCompression.ZSTD);
+        Exception uploadFailure = null;
+        try {
+            minioClient.putObject(
+                    PutObjectArgs.builder()
+                            .bucket(bucket)
+                            .object(objectName)
+                            .contentType(contentType)
+                            .userMetadata(metadata)
+                            .stream(compressed, -1, partSize)
+                            .build()
+            );
+        } catch (Exception e) {
+            uploadFailure = e;
+        } finally {
+            uploadEnded.set(true);
+            compressed.close(); // unblocks the writer if the upload was aborted
+            writer.join();
+        }
+
+        Throwable writeFailure = failure.get();
+        if (writeFailure != null) {
+            // normally aborted, but a part that made it must not stay behind as a truncated object
+            delete(objectName);
+            if (uploadFailure != null) {
+                writeFailure.addSuppressed(uploadFailure);
+            }
+            if (writeFailure instanceof Exception e) {
+                throw e;
+            }
+            throw (Error) writeFailure;
+        }
+        if (uploadFailure != null) {
+            throw uploadFailure;
+        }
+        if (size < 0) {
+            // length is only known now; rewriting metadata is a server-side copy onto itself
+            minioClient.copyObject(
+                    CopyObjectArgs.builder()
+                            .bucket(bucket)
+                            .object(objectName)
+                            .source(CopySource.builder().bucket(bucket).object(objectName).build())
+                            .metadataDirective(Directive.REPLACE)
+                            .headers(Map.of("Content-Type", contentType))
+                            .userMetadata(Map.of(ObjectCompression.CODEC, ObjectCompression.ZSTD,
+                                    ObjectCompression.ORIGINAL_SIZE, Long.toString(source.getCount())))
+                            .build()
+            );
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // already broken
+        }
+    }
+
     @Override
     public Optional<InputStream> load(String objectName) throws Exception {
         try {
             GetObjectResponse res = minioClient.getObject(
                     GetObjectArgs.builder().bucket(bucket).object(objectName).build()
             );
-            return Optional.of(res);
+            return Optional.of(isCompressed(res) ? ObjectCompression.decompress(res) : res);
         } catch (MinioException e) {
             return Optional.empty();
         }
     }
 
+    /**
+     * Byte ranges refer to the original content. A zstd object is one frame that cannot be entered
+     * in the middle: a range of it costs downloading and decoding everything before the range. The
+     * codec is read from a HEAD first, so neither kind of object is requested twice.
+     */
+    @Override
+    public Optional<InputStream> load(String objectName, long offset, long length) throws Exception {
+        try {
+            StatObjectResponse head = minioClient.statObject(
+                    StatObjectArgs.builder().bucket(bucket).object(objectName).build()
+            );
+            if (ObjectCompression.ZSTD.equals(head.userMetadata().get(ObjectCompression.CODEC))) {
+                Optional<InputStream> full = load(objectName);
+                if (full.isPresent()) {
+                    InputStream in = full.get();
+                    in.skipNBytes(offset);
+                    return Optional.of(length < 0 ? in : new BoundedInputStream(in, length));
+                }
+                return full;
+            }
+            return Optional.of(minioClient.getObject(
+                    GetObjectArgs.builder().bucket(bucket).object(objectName)
+                            .offset(offset)
+                            .length(length >= 0 ? length : null)
+                            .build()
+            ));
+        } catch (MinioException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Optional<StoredObject> stat(String objectName) throws Exception {
+        try {
+            StatObjectResponse res = minioClient.statObject(
+                    StatObjectArgs.builder().bucket(bucket).object(objectName).build()
+            );
+            String originalSize = res.userMetadata().get(ObjectCompression.ORIGINAL_SIZE);
+            return Optional.of(new StoredObject(
+                    originalSize != null ? Long.parseLong(originalSize) : res.size(),
+                    res.etag() != null ? res.etag().replace("\"", "") : null,
+                    res.lastModified() != null ? res.lastModified().toInstant() : null,
+                    res.contentType()
+            ));
+        } catch (MinioException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void copy(String sourceObjectName, String targetObjectName) throws Exception {
+        minioClient.copyObject(
+                CopyObjectArgs.builder()
+                        .bucket(bucket)
+                        .object(targetObjectName)
+                        .source(CopySource.builder().bucket(bucket).object(sourceObjectName).build())
+                        .build()
+        );
+    }
+
     @Override
     public void delete(String objectName) throws Exception {
         minioClient.removeObject(
@@ -64,4 +246,47 @@ public class MinioStorageService implements StorageService {
             return false;
         }
     }
+
+    // Compressed objects cannot be handed out as-is, clients would receive the zstd bytes
+    @Override
+    public boolean isStoredVerbatim(String objectName) throws Exception {
+        try {
+            StatObjectResponse res = minioClient.statObject(
+                    StatObjectArgs.builder().bucket(bucket).object(objectName).build()
+            );
+            return !ObjectCompression.ZSTD.equals(res.userMetadata().get(ObjectCompression.CODEC));
+        } catch (MinioException e) {
+            return true;
+        }
+    }
+
+    @Override
+    public String presignedGetUrl(String objectName, Duration expiry, String downloadFilename) throws Exception {
+        return presignClient.getPresignedObjectUrl(
+                GetPresignedObjectUrlArgs.builder()
+                        .method(Method.GET)
+                        .bucket(bucket)
+                        .object(objectName)
+                        .expiry((int) expiry.toSeconds())
+                        .extraQueryParams(Map.of("response-content-disposition",
+                                "attachment; filename=\"" + downloadFilename + "\""))
+                        .build()
+        );
+    }
+
+    @Override
+    public String presignedPutUrl(String objectName, Duration expiry) throws Exception {
+        return presignClient.getPresignedObjectUrl(
+                GetPresignedObjectUrlArgs.builder()
+                        .method(Method.PUT)
+                        .bucket(bucket)
+                        .object(objectName)
+                        .expiry((int) expiry.toSeconds())
+                        .build()
+        );
+    }
+
+    private static boolean isCompressed(GetObjectResponse res) {
+        return ObjectCompression.ZSTD.equals(res.headers().get("x-amz-meta-" + ObjectCompression.CODEC));
+    }
 }
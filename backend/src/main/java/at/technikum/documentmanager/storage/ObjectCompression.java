@@ -0,0 +1,53 @@
+package at.technikum.documentmanager.storage;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Decides which objects are stored zstd-compressed and wraps the streams. Only content types that
+ * compress well (text, JSON, XML, ...) qualify; PDFs and images are already compressed.
+ */
+public class ObjectCompression {
+
+    // user metadata keys (stored as x-amz-meta-*)
+    public static final String CODEC = "codec";
+    public static final String ORIGINAL_SIZE = "original-size";
+    public static final String ZSTD = "zstd";
+
+    private final boolean enabled;
+    private final int level;
+    private final List<MimeType> contentTypes;
+
+    public ObjectCompression(boolean enabled, int level, List<String> contentTypes) {
+        this.enabled = enabled;
+        this.level = level;
+        this.contentTypes = contentTypes.stream().map(MimeTypeUtils::parseMimeType).toList();
+    }
+
+    public boolean shouldCompress(String contentType) {
+        if (!enabled || contentType == null || contentType.isBlank()) {
+            return false;
+        }
+        try {
+            MimeType type = MimeTypeUtils.parseMimeType(contentType);
+            return contentTypes.stream().anyMatch(pattern -> pattern.includes(type));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    public OutputStream compress(OutputStream out) throws IOException {
+        return new ZstdOutputStream(out, level);
+    }
+
+    public static InputStream decompress(InputStream in) throws IOException {
+        return new ZstdInputStream(in);
+    }
+}
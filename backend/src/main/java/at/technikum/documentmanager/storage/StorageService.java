@@ -1,12 +1,29 @@
 package at.technikum.documentmanager.storage;
 
 import java.io.InputStream;
-import java.net.URL;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 
 public interface StorageService {
-    void store(InputStream in, long size, String contentType, String objectName) throws Exception;
+    void store(InputStream in, long size, String contentType, String objectName) throws Exception; // size < 0 -> unknown length
     Optional<InputStream> load(String objectName) throws Exception;               // stream read (backend usage)
+    Optional<InputStream> load(String objectName, long offset, long length) throws Exception; // ranged read
+    Optional<StoredObject> stat(String objectName) throws Exception;
+    void copy(String sourceObjectName, String targetObjectName) throws Exception;  // server-side, bytes do not pass the backend
     void delete(String objectName) throws Exception;
     boolean exists(String objectName) throws Exception;
+    String presignedGetUrl(String objectName, Duration expiry, String downloadFilename) throws Exception; // client reads directly
+    boolean isStoredVerbatim(String objectName) throws Exception; // false -> stored encoded, serve through load() instead of a presigned URL
+    String presignedPutUrl(String objectName, Duration expiry) throws Exception;                          // client writes directly
+
+    // Copies [offset, offset + length) to out, length < 0 means up to the end of the object.
+    // Implementations backed by local files can avoid buffering the bytes in the heap.
+    default long transferTo(String objectName, long offset, long length, OutputStream out) throws Exception {
+        Optional<InputStream> in = offset == 0 && length < 0 ? load(objectName) : load(objectName, offset, length);
+        try (InputStream stream = in.orElseThrow(() -> new NoSuchElementException("Stored file not found: " + objectName))) {
+            return stream.transferTo(out);
+        }
+    }
 }
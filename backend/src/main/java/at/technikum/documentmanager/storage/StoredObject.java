@@ -0,0 +1,11 @@
+package at.technikum.documentmanager.storage;
+
+import java.time.Instant;
+
+public record StoredObject(
+        long size,
+        String etag, // unquoted
+        Instant lastModified,
+        String contentType
+) {
+}
@@ -0,0 +1,4 @@
+-- The primary key (document_id, tag_id) cannot serve lookups by tag; covers "documents with tag X"
+-- and the ON DELETE CASCADE when a tag is deleted
+CREATE INDEX IF NOT EXISTS idx_document_tags_tag_id
+    ON document_tags (tag_id, document_id);
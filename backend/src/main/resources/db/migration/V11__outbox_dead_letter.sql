@@ -0,0 +1,7 @@
+-- Retry backoff and dead-lettering for the outbox relay: failed rows are kept (never purged) and
+-- can be requeued by clearing failed_at
+ALTER TABLE outbox_events ADD COLUMN IF NOT EXISTS next_attempt_at TIMESTAMPTZ;
+ALTER TABLE outbox_events ADD COLUMN IF NOT EXISTS failed_at TIMESTAMPTZ;
+
+DROP INDEX IF EXISTS idx_outbox_events_unsent;
+CREATE INDEX IF NOT EXISTS idx_outbox_events_unsent ON outbox_events (id) WHERE sent_at IS NULL AND failed_at IS NULL;
@@ -0,0 +1,38 @@
+-- Time of the last change of anything the search index stores about a document, including its
+-- tag names. The embedded Lucene index commits a high-water mark of it and re-reads newer rows
+-- after a crash. clock_timestamp(), not now(): the time of the statement, not of the transaction start.
+ALTER TABLE documents ADD COLUMN changed_at TIMESTAMPTZ NOT NULL DEFAULT now();
+
+CREATE INDEX idx_documents_changed_at ON documents (changed_at);
+
+CREATE FUNCTION documents_touch() RETURNS trigger AS $$
+BEGIN
+    NEW.changed_at := clock_timestamp();
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER documents_changed_at BEFORE INSERT OR UPDATE ON documents
+    FOR EACH ROW EXECUTE FUNCTION documents_touch();
+
+CREATE FUNCTION document_tags_touch() RETURNS trigger AS $$
+BEGIN
+    UPDATE documents SET changed_at = clock_timestamp()
+    WHERE id = (CASE WHEN TG_OP = 'DELETE' THEN OLD.document_id ELSE NEW.document_id END);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER document_tags_changed_at AFTER INSERT OR DELETE ON document_tags
+    FOR EACH ROW EXECUTE FUNCTION document_tags_touch();
+
+CREATE FUNCTION tags_touch() RETURNS trigger AS $$
+BEGIN
+    UPDATE documents SET changed_at = clock_timestamp()
+    WHERE id IN (SELECT document_id FROM document_tags WHERE tag_id = NEW.id);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER tags_changed_at AFTER UPDATE OF name ON tags
+    FOR EACH ROW WHEN (OLD.name IS DISTINCT FROM NEW.name) EXECUTE FUNCTION tags_touch();
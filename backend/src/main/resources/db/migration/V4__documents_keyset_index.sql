@@ -0,0 +1,3 @@
+-- Supports keyset pagination over (uploaded_at, id) for the document listing
+CREATE INDEX IF NOT EXISTS idx_documents_uploaded_at_id
+    ON documents (uploaded_at DESC, id DESC);
@@ -0,0 +1,13 @@
+-- Content-addressed storage: one MinIO object per distinct SHA-256, shared by all documents with that content
+CREATE TABLE IF NOT EXISTS blobs (
+    sha256 VARCHAR(64) PRIMARY KEY,
+    size BIGINT NOT NULL,
+    ref_count INT NOT NULL,
+    created_at TIMESTAMPTZ NOT NULL DEFAULT now()
+);
+
+-- NULL for documents stored before deduplication (object named <id>-<filename>)
+ALTER TABLE documents
+    ADD COLUMN content_sha256 VARCHAR(64) REFERENCES blobs(sha256);
+
+CREATE INDEX IF NOT EXISTS idx_documents_content_sha256 ON documents (content_sha256);
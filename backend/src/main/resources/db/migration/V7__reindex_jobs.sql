@@ -0,0 +1,15 @@
+-- Search index rebuilds: progress and keyset checkpoint, so an interrupted job can resume
+CREATE TABLE IF NOT EXISTS reindex_jobs (
+    id UUID PRIMARY KEY,
+    target_index VARCHAR(255) NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    total BIGINT NOT NULL DEFAULT 0,
+    processed BIGINT NOT NULL DEFAULT 0,
+    failed BIGINT NOT NULL DEFAULT 0,
+    checkpoint_uploaded_at TIMESTAMPTZ,
+    checkpoint_id UUID,
+    started_at TIMESTAMPTZ NOT NULL,
+    updated_at TIMESTAMPTZ NOT NULL,
+    finished_at TIMESTAMPTZ,
+    error TEXT
+);
@@ -0,0 +1,3 @@
+-- optimistic locking, exposed to clients as ETag / If-Match
+ALTER TABLE documents ADD COLUMN version bigint NOT NULL DEFAULT 0;
+ALTER TABLE tags ADD COLUMN version bigint NOT NULL DEFAULT 0;
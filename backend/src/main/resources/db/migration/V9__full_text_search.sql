@@ -0,0 +1,12 @@
+-- Postgres full-text search, fallback for (or replacement of) Elasticsearch.
+-- OCR text arrives through the ocr-results queue; the vector is recomputed by Postgres on every
+-- write of one of its source columns. 'simple' does no stemming, documents are in several languages.
+ALTER TABLE documents ADD COLUMN ocr_text text;
+
+ALTER TABLE documents ADD COLUMN search_vector tsvector GENERATED ALWAYS AS (
+    setweight(to_tsvector('simple', coalesce(original_filename, '')), 'A') ||
+    setweight(to_tsvector('simple', coalesce(summary, '')), 'B') ||
+    setweight(to_tsvector('simple', coalesce(ocr_text, '')), 'C')
+) STORED;
+
+CREATE INDEX idx_documents_search_vector ON documents USING gin (search_vector);
@@ -0,0 +1,72 @@
+package at.technikum.documentmanager.config;
+
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.aop.framework.ProxyFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class MessagingConfigTest {
+
+    RabbitTemplate rabbit = mock(RabbitTemplate.class);
+    List<RuntimeException> failures = new ArrayList<>();
+    int calls;
+
+    // Stands in for the container, which advises its listener invocation with (channel, messages)
+    interface BatchInvoker {
+        void invoke(Channel channel, List<Message> messages);
+    }
+
+    @Test
+    void deadLettersABatchThatKeepsFailing() {
+        Message first = message("summary-results", "{\"documentId\":1}");
+        Message second = message("summary-results", "{\"documentId\":2}");
+        for (int i = 0; i < 5; i++) {
+            failures.add(new IllegalStateException("constraint violation"));
+        }
+
+        listener().invoke(null, List.of(first, second));
+
+        assertEquals(3, calls);
+        verify(rabbit).send("", "summary-results.dlq", first);
+        verify(rabbit).send("", "summary-results.dlq", second);
+        assertEquals("constraint violation", first.getMessageProperties().getHeader("x-exception-message"));
+    }
+
+    @Test
+    void aTransientFailureIsRetriedWithoutDeadLettering() {
+        failures.add(new IllegalStateException("connection reset"));
+
+        listener().invoke(null, List.of(message("ocr-results", "{}")));
+
+        assertEquals(2, calls);
+        verifyNoInteractions(rabbit);
+    }
+
+    private BatchInvoker listener() {
+        BatchInvoker target = (channel, messages) -> {
+            calls++;
+            if (!failures.isEmpty()) {
+                throw failures.removeFirst();
+            }
+        };
+        ProxyFactory proxy = new ProxyFactory(target);
+        proxy.addInterface(BatchInvoker.class);
+        proxy.addAdvice(MessagingConfig.batchRetry(rabbit, 3, 1, 1));
+        return (BatchInvoker) proxy.getProxy();
+    }
+
+    private static Message message(String queue, String body) {
+        MessageProperties props = new MessageProperties();
+        props.setConsumerQueue(queue);
+        return new Message(body.getBytes(StandardCharsets.UTF_8), props);
+    }
+}
@@ -0,0 +1,151 @@
+package at.technikum.documentmanager.controller;
+
+import at.technikum.documentmanager.config.ApiExceptionHandler;
+import at.technikum.documentmanager.dto.DocumentMetadata;
+import at.technikum.documentmanager.dto.DocumentResponse;
+import at.technikum.documentmanager.dto.TagResponse;
+import at.technikum.documentmanager.entity.Document;
+import at.technikum.documentmanager.entity.Tag;
+import at.technikum.documentmanager.service.DocumentService;
+import at.technikum.documentmanager.service.TagService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+class DocumentConditionalRequestTest {
+
+    DocumentService service = mock(DocumentService.class);
+    TagService tagService = mock(TagService.class);
+    MockMvc mvc;
+
+    UUID id = UUID.randomUUID();
+    Tag finance = Tag.builder().id(UUID.randomUUID()).name("finance").color("#00ff00").version(0L).build();
+    Tag legal = Tag.builder().id(UUID.randomUUID()).name("legal").color("#0000ff").version(0L).build();
+
+    @BeforeEach
+    void setUp() {
+        DocumentController controller = new DocumentController(service, null, tagService, null, new ObjectMapper());
+        mvc = MockMvcBuilders.standaloneSetup(controller).setControllerAdvice(new ApiExceptionHandler()).build();
+
+        when(service.getMetadata(id)).thenReturn(metadata(3L, finance));
+        when(tagService.tagsForDocument(id)).thenAnswer(inv -> List.of(finance));
+        when(service.getDetail(id)).thenAnswer(inv -> detail(3L, finance));
+    }
+
+    @Test
+    void detailIsRevalidatedFromTheCachedMetadata() throws Exception {
+        String etag = mvc.perform(get("/api/documents/" + id))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertTrue(etag.startsWith("\"3-"), etag);
+
+        mvc.perform(get("/api/documents/" + id).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+        verify(service, times(1)).getDetail(id);
+        verify(service, never()).getVersion(any());
+    }
+
+    @Test
+    void detailETagChangesWithTheTagIds() throws Exception {
+        String etag = mvc.perform(get("/api/documents/" + id)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // tagged: the version moves on
+        when(service.getMetadata(id)).thenReturn(metadata(4L, finance, legal));
+        when(service.getDetail(id)).thenAnswer(inv -> detail(4L, finance, legal));
+        String tagged = mvc.perform(get("/api/documents/" + id).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.tags[1].name").value("legal"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotEquals(etag, tagged);
+
+        // legal deleted: the cascade leaves the version as it is, the tag ids still differ
+        when(service.getMetadata(id)).thenReturn(metadata(4L, finance));
+        when(service.getDetail(id)).thenAnswer(inv -> detail(4L, finance));
+        mvc.perform(get("/api/documents/" + id).header(HttpHeaders.IF_NONE_MATCH, tagged))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void tagIdsAreHashedInAnyOrder() throws Exception {
+        when(service.getMetadata(id)).thenReturn(metadata(3L, finance, legal));
+        String etag = mvc.perform(get("/api/documents/" + id + "/tags"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        when(service.getMetadata(id)).thenReturn(metadata(3L, legal, finance));
+        mvc.perform(get("/api/documents/" + id + "/tags").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void tagsAndSummaryAreRevalidatedWithoutADatabaseRead() throws Exception {
+        String tagsETag = mvc.perform(get("/api/documents/" + id + "/tags"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        mvc.perform(get("/api/documents/" + id + "/tags").header(HttpHeaders.IF_NONE_MATCH, tagsETag))
+                .andExpect(status().isNotModified());
+
+        mvc.perform(get("/api/documents/" + id + "/summary").header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+                .andExpect(status().isNotModified());
+
+        when(service.getMetadata(id)).thenReturn(metadata(4L, finance));
+        mvc.perform(get("/api/documents/" + id + "/tags").header(HttpHeaders.IF_NONE_MATCH, tagsETag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, startsWith("\"4-")));
+        verify(service, never()).getVersion(any());
+        verify(service, never()).getSummary(any());
+        verify(service, never()).get(any());
+    }
+
+    @Test
+    void writesRequireTheCurrentVersion() throws Exception {
+        when(service.updateMetadata(eq(id), anyString(), anyString(), anyLong())).thenAnswer(inv -> {
+            if (inv.<Long>getArgument(3) != 3L) {
+                throw new OptimisticLockingFailureException("stale");
+            }
+            return Document.builder().id(id).originalFilename("b.pdf").version(4L).build();
+        });
+
+        mvc.perform(put("/api/documents/" + id + "/metadata").param("newName", "b.pdf").param("newType", "application/pdf"))
+                .andExpect(status().isPreconditionRequired());
+        mvc.perform(put("/api/documents/" + id + "/metadata").param("newName", "b.pdf").param("newType", "application/pdf")
+                        .header(HttpHeaders.IF_MATCH, "\"2\""))
+                .andExpect(status().isPreconditionFailed());
+        mvc.perform(put("/api/documents/" + id + "/metadata").param("newName", "b.pdf").param("newType", "application/pdf")
+                        .header(HttpHeaders.IF_MATCH, "W/\"3\""))
+                .andExpect(status().isPreconditionFailed());
+
+        // the ETag of the detail endpoint is accepted as is
+        String detailETag = mvc.perform(get("/api/documents/" + id)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        mvc.perform(put("/api/documents/" + id + "/metadata").param("newName", "b.pdf").param("newType", "application/pdf")
+                        .header(HttpHeaders.IF_MATCH, detailETag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"4\""));
+    }
+
+    private DocumentMetadata metadata(long version, Tag... tags) {
+        return new DocumentMetadata(id, "a.pdf", "application/pdf", 3, Instant.parse("2025-01-01T00:00:00Z"),
+                "blobs/abc", "abc", null, version, Arrays.stream(tags).map(TagResponse::of).toList());
+    }
+
+    private DocumentResponse detail(long version, Tag... tags) {
+        return new DocumentResponse(id, "a.pdf", "application/pdf", 3, null, Instant.parse("2025-01-01T00:00:00Z"),
+                null, Arrays.stream(tags).map(TagResponse::of).toList(), version);
+    }
+}
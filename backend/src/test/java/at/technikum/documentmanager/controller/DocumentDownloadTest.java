@@ -0,0 +1,113 @@
+package at.technikum.documentmanager.controller;
+
+import at.technikum.documentmanager.config.ApiExceptionHandler;
+import at.technikum.documentmanager.dto.DocumentMetadata;
+import at.technikum.documentmanager.service.DocumentService;
+import at.technikum.documentmanager.storage.StorageService;
+import at.technikum.documentmanager.storage.StoredObject;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.startsWith;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+class DocumentDownloadTest {
+
+    static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.US_ASCII);
+
+    DocumentService service = mock(DocumentService.class);
+    StorageService storage = mock(StorageService.class);
+    MockMvc mvc;
+
+    UUID id = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        DocumentController controller = new DocumentController(service, storage, null, null, new ObjectMapper());
+        mvc = MockMvcBuilders.standaloneSetup(controller).setControllerAdvice(new ApiExceptionHandler()).build();
+
+        when(service.getMetadata(id)).thenReturn(new DocumentMetadata(id, "Rechnung März.pdf", "application/pdf",
+                CONTENT.length, Instant.parse("2025-01-01T00:00:00Z"), "blobs/abc", "abc", null, 1L, List.of()));
+        when(storage.stat("blobs/abc")).thenReturn(Optional.of(
+                new StoredObject(CONTENT.length, "abc", Instant.parse("2025-01-01T00:00:00Z"), "application/pdf")));
+        when(storage.transferTo(eq("blobs/abc"), anyLong(), anyLong(), any())).thenAnswer(inv -> {
+            long offset = inv.getArgument(1);
+            long length = inv.<Long>getArgument(2) < 0 ? CONTENT.length : inv.getArgument(2);
+            inv.<OutputStream>getArgument(3).write(CONTENT, (int) offset, (int) length);
+            return length;
+        });
+    }
+
+    @Test
+    void servesTheWholeFileWithAnEncodedFilename() throws Exception {
+        mvc.perform(streamed(download()))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"abc\""))
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, containsString("filename*=UTF-8''Rechnung%20M%C3%A4rz.pdf")))
+                .andExpect(content().bytes(CONTENT));
+    }
+
+    @Test
+    void servesASingleRange() throws Exception {
+        mvc.perform(streamed(download().header(HttpHeaders.RANGE, "bytes=2-4")))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-4/10"))
+                .andExpect(content().string("234"));
+    }
+
+    @Test
+    void servesSeveralRangesAsMultipart() throws Exception {
+        mvc.perform(streamed(download().header(HttpHeaders.RANGE, "bytes=0-1,8-")))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, startsWith("multipart/byteranges;boundary=")))
+                .andExpect(content().string(containsString("Content-Range: bytes 0-1/10\r\n\r\n01\r\n")))
+                .andExpect(content().string(containsString("Content-Range: bytes 8-9/10\r\n\r\n89\r\n")));
+    }
+
+    @Test
+    void answersAMatchingETagWith304() throws Exception {
+        mvc.perform(download().header(HttpHeaders.IF_NONE_MATCH, "\"abc\""))
+                .andExpect(status().isNotModified());
+        verify(storage, never()).transferTo(anyString(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void rejectsUnsatisfiableAndOverlappingRanges() throws Exception {
+        mvc.perform(download().header(HttpHeaders.RANGE, "bytes=20-30"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */10"));
+        // every part would read the whole object
+        mvc.perform(download().header(HttpHeaders.RANGE, "bytes=0-,0-,0-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable());
+        verify(storage, never()).transferTo(anyString(), anyLong(), anyLong(), any());
+    }
+
+    private MockHttpServletRequestBuilder download() {
+        return get("/api/documents/download/" + id);
+    }
+
+    // The body is a StreamingResponseBody, written on an async dispatch
+    private RequestBuilder streamed(RequestBuilder request) throws Exception {
+        MvcResult started = mvc.perform(request).andExpect(request().asyncStarted()).andReturn();
+        return asyncDispatch(started);
+    }
+}
@@ -0,0 +1,70 @@
+package at.technikum.documentmanager.controller;
+
+import at.technikum.documentmanager.config.ApiExceptionHandler;
+import at.technikum.documentmanager.entity.Document;
+import at.technikum.documentmanager.service.DocumentService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+class DocumentStreamUploadTest {
+
+    DocumentService service = mock(DocumentService.class);
+    MockMvc mvc;
+
+    @BeforeEach
+    void setUp() {
+        DocumentController controller = new DocumentController(service, null, null, null, new ObjectMapper());
+        mvc = MockMvcBuilders.standaloneSetup(controller).setControllerAdvice(new ApiExceptionHandler()).build();
+    }
+
+    @Test
+    void passesTheRawBodyToTheService() throws Exception {
+        AtomicReference<String> received = new AtomicReference<>();
+        when(service.saveStream(any(), eq("notes.txt"), eq("text/plain"), eq("unknown"))).thenAnswer(inv -> {
+            received.set(new String(inv.<InputStream>getArgument(0).readAllBytes(), StandardCharsets.UTF_8));
+            return Document.builder().id(UUID.randomUUID()).originalFilename("notes.txt").contentType("text/plain")
+                    .size(11L).build();
+        });
+
+        mvc.perform(post("/api/documents/upload/stream").param("filename", "notes.txt")
+                        .contentType(MediaType.TEXT_PLAIN).content("hello world"))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.originalFilename").value("notes.txt"))
+                .andExpect(jsonPath("$.size").value(11));
+
+        assertEquals("hello world", received.get());
+    }
+
+    @Test
+    void leavesAMissingContentTypeToTheService() throws Exception {
+        when(service.saveStream(any(), eq("blob"), isNull(), any()))
+                .thenReturn(Document.builder().id(UUID.randomUUID()).originalFilename("blob").build());
+
+        mvc.perform(post("/api/documents/upload/stream").param("filename", "blob").content(new byte[]{1, 2, 3}))
+                .andExpect(status().isCreated());
+    }
+
+    @Test
+    void rejectsMultipartBodies() throws Exception {
+        mvc.perform(post("/api/documents/upload/stream").param("filename", "a.pdf")
+                        .contentType("multipart/form-data; boundary=x").content("--x--"))
+                .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(service);
+    }
+}
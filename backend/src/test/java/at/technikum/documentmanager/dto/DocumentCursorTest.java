@@ -0,0 +1,24 @@
+package at.technikum.documentmanager.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocumentCursorTest {
+
+    @Test
+    void roundTripsThroughToken() {
+        var cursor = new DocumentCursor(Instant.parse("2024-05-01T10:15:30.123456Z"), UUID.randomUUID());
+
+        var decoded = DocumentCursor.decode(cursor.encode());
+        assertEquals(cursor, decoded);
+    }
+
+    @Test
+    void rejectsGarbage() {
+        assertThrows(IllegalArgumentException.class, () -> DocumentCursor.decode("not-a-cursor"));
+    }
+}
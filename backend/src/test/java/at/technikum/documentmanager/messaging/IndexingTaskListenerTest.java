@@ -0,0 +1,105 @@
+package at.technikum.documentmanager.messaging;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ErrorCause;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.core.bulk.OperationType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class IndexingTaskListenerTest {
+
+    @Mock
+    ElasticsearchClient client;
+
+    @Mock
+    RabbitTemplate rabbit;
+
+    @Mock
+    ApplicationEventPublisher events;
+
+    @Mock
+    Channel channel;
+
+    IndexingTaskListener listener;
+
+    @BeforeEach
+    void setUp() {
+        listener = new IndexingTaskListener(client, rabbit, new ObjectMapper(), events, "documents", 1024 * 1024, 0);
+    }
+
+    @Test
+    void acksIndexedItemsAndDeadLettersFailedOnes() throws Exception {
+        Message ok = message(1, UUID.randomUUID());
+        Message rejected = message(2, UUID.randomUUID());
+        Message garbage = new Message("not json".getBytes(StandardCharsets.UTF_8), props(3));
+
+        when(client.bulk(any(BulkRequest.class))).thenReturn(BulkResponse.of(b -> b
+                .errors(true)
+                .took(1)
+                .items(List.of(
+                        item(ok, null),
+                        item(rejected, ErrorCause.of(e -> e.type("mapper_parsing_exception").reason("bad size")))
+                ))));
+
+        listener.receive(List.of(ok, garbage, rejected), channel);
+
+        verify(client, times(1)).bulk(any(BulkRequest.class));
+        verify(channel).basicAck(1, false);
+        verify(channel).basicAck(2, false);
+        verify(channel).basicAck(3, false);
+        verify(rabbit).send(eq(""), eq(IndexingTaskListener.DEAD_LETTER_QUEUE), same(rejected));
+        verify(rabbit).send(eq(""), eq(IndexingTaskListener.DEAD_LETTER_QUEUE), same(garbage));
+        verify(rabbit, never()).send(anyString(), anyString(), same(ok));
+    }
+
+    @Test
+    void requeuesWholeChunkWhenClusterIsDown() throws Exception {
+        when(client.bulk(any(BulkRequest.class))).thenThrow(new java.io.IOException("connection refused"));
+
+        listener.receive(List.of(message(7, UUID.randomUUID())), channel);
+
+        verify(channel).basicNack(7, false, true);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    }
+
+    private static Message message(long tag, UUID id) {
+        String body = "{\"documentId\":\"" + id + "\",\"filename\":\"a.pdf\",\"text\":\"hello\"}";
+        return new Message(body.getBytes(StandardCharsets.UTF_8), props(tag));
+    }
+
+    private static MessageProperties props(long tag) {
+        MessageProperties props = new MessageProperties();
+        props.setDeliveryTag(tag);
+        return props;
+    }
+
+    private static BulkResponseItem item(Message message, ErrorCause error) {
+        String id = new String(message.getBody(), StandardCharsets.UTF_8).substring(15, 51);
+        return BulkResponseItem.of(i -> i
+                .operationType(OperationType.Update)
+                .index("documents")
+                .id(id)
+                .status(error == null ? 200 : 400)
+                .error(error));
+    }
+}
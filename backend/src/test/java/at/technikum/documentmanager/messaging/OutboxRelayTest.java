@@ -0,0 +1,180 @@
+package at.technikum.documentmanager.messaging;
+
+import at.technikum.documentmanager.entity.OutboxEvent;
+import at.technikum.documentmanager.messaging.dto.UploadEvent;
+import at.technikum.documentmanager.repository.OutboxEventRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.AmqpIOException;
+import org.springframework.amqp.AmqpTimeoutException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OutboxRelayTest {
+
+    @Mock
+    OutboxEventRepository repository;
+
+    @Mock
+    UploadEventPublisher publisher;
+
+    @Mock
+    TransactionTemplate tx;
+
+    ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    OutboxRelay relay;
+
+    @BeforeEach
+    void setUp() {
+        when(tx.execute(any())).thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        relay = new OutboxRelay(repository, publisher, objectMapper, tx, 10, 1000, 1, 3, 1000, 60_000);
+        relay.clock = Clock.fixed(Instant.parse("2025-01-01T00:00:00Z"), ZoneOffset.UTC);
+    }
+
+    @Test
+    void marksBatchSentAfterConfirm() throws Exception {
+        var row = row(1L);
+        when(repository.lockUnsent(10)).thenReturn(List.of(row));
+
+        relay.relay();
+
+        verify(publisher).publishConfirmed(argThat(events -> events.size() == 1), any());
+        verify(repository).markSent(eq(List.of(1L)), any());
+        verify(repository, never()).markAttempted(any(), anyInt());
+    }
+
+    @Test
+    void keepsEventPendingWithoutAnAttemptWhenBrokerDoesNotConfirm() throws Exception {
+        when(repository.lockUnsent(10)).thenReturn(List.of(row(1L)));
+        doThrow(new AmqpTimeoutException("no confirm")).when(publisher).publishConfirmed(anyList(), any());
+
+        relay.relay();
+        advance(Duration.ofMillis(500));
+        relay.relay(); // backing off
+
+        verify(publisher, times(1)).publishConfirmed(anyList(), any());
+        verify(repository, never()).markAttempted(any(), anyInt());
+        verify(repository, never()).markSent(any(), any());
+    }
+
+    @Test
+    void brokerOutageLongerThanMaxAttemptsDeadLettersNothing() throws Exception {
+        var first = row(1L);
+        var second = row(2L);
+        when(repository.lockUnsent(10)).thenReturn(List.of(first, second));
+        doThrow(new AmqpConnectException(new ConnectException("connection refused")))
+                .when(publisher).publishConfirmed(anyList(), any());
+
+        // ten times max-attempts (3), each after the relay's backoff ran out
+        for (int i = 0; i < 30; i++) {
+            relay.relay();
+            advance(Duration.ofMinutes(1));
+        }
+        verify(repository, never()).markAttempted(any(), anyInt());
+        verify(repository, never()).markFailed(any(), any());
+
+        doNothing().when(publisher).publishConfirmed(anyList(), any());
+        relay.relay();
+        verify(repository).markSent(eq(List.of(1L, 2L)), any());
+    }
+
+    @Test
+    void backsOffExponentiallyWhileTheBrokerIsDown() throws Exception {
+        when(repository.lockUnsent(10)).thenReturn(List.of(row(1L)));
+        doThrow(new AmqpConnectException(new ConnectException("connection refused")))
+                .when(publisher).publishConfirmed(anyList(), any());
+
+        relay.relay();              // fails, waits 1 s
+        advance(Duration.ofSeconds(1));
+        relay.relay();              // fails, waits 2 s
+        advance(Duration.ofSeconds(1));
+        relay.relay();              // still waiting
+        advance(Duration.ofSeconds(1));
+        relay.relay();              // fails
+
+        verify(repository, times(3)).lockUnsent(10);
+    }
+
+    @Test
+    void chargesOnlyTheEventRejectedWhileItsNeighboursWentThrough() throws Exception {
+        var good = row(1L);
+        var rejected = row(2L);
+        var after = row(3L);
+        when(repository.lockUnsent(10)).thenReturn(List.of(good, rejected, after));
+        String rejectedId = rejected.getAggregateId().toString();
+        doAnswer(inv -> {
+            List<UploadEvent> events = inv.getArgument(0);
+            if (events.stream().anyMatch(e -> e.documentId().equals(rejectedId))) {
+                throw new AmqpIOException(new IOException("nacks received"));
+            }
+            return null;
+        }).when(publisher).publishConfirmed(anyList(), any());
+
+        relay.relay();
+
+        verify(repository).markSent(eq(List.of(1L)), any());
+        verify(repository).markSent(eq(List.of(3L)), any());
+        verify(repository).markAttempted(List.of(2L), 3);
+    }
+
+    @Test
+    void aBatchRejectedAsAWholeIsNotCharged() throws Exception {
+        when(repository.lockUnsent(10)).thenReturn(List.of(row(1L), row(2L)));
+        doThrow(new AmqpIOException(new IOException("nacks received"))).when(publisher).publishConfirmed(anyList(), any());
+
+        relay.relay();
+        relay.relay(); // backing off
+
+        // the batch, then each event once
+        verify(publisher, times(3)).publishConfirmed(anyList(), any());
+        verify(repository, never()).markAttempted(any(), anyInt());
+        verify(repository, never()).markSent(any(), any());
+    }
+
+    @Test
+    void deadLettersUnreadablePayloadAndRelaysTheRest() throws Exception {
+        var poison = OutboxEvent.builder().id(1L).aggregateId(UUID.randomUUID())
+                .eventType(UploadEventOutbox.EVENT_TYPE).payload("{not json").build();
+        when(repository.lockUnsent(10)).thenReturn(List.of(poison, row(2L)));
+
+        relay.relay();
+
+        verify(repository).markFailed(eq(List.of(1L)), any());
+        verify(repository).markSent(eq(List.of(2L)), any());
+    }
+
+    private void advance(Duration duration) {
+        relay.clock = Clock.offset(relay.clock, duration);
+    }
+
+    private OutboxEvent row(long id) throws Exception {
+        var event = new UploadEvent(UUID.randomUUID().toString(), "a.pdf", "application/pdf", 3,
+                Instant.now(), "alice", "blobs/abc");
+        return OutboxEvent.builder()
+                .id(id)
+                .aggregateId(UUID.fromString(event.documentId()))
+                .eventType(UploadEventOutbox.EVENT_TYPE)
+                .payload(objectMapper.writeValueAsString(event))
+                .build();
+    }
+}
@@ -0,0 +1,72 @@
+package at.technikum.documentmanager.preview;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PreviewRendererTest {
+
+    @TempDir
+    Path dir;
+
+    PreviewRenderer renderer = new PreviewRenderer(320);
+
+    @Test
+    void rendersFirstPdfPageAtPreviewWidth() throws Exception {
+        File pdf = dir.resolve("a.pdf").toFile();
+        try (PDDocument doc = new PDDocument()) {
+            doc.addPage(new PDPage(PDRectangle.A4));
+            doc.addPage(new PDPage(PDRectangle.A4));
+            doc.save(pdf);
+        }
+
+        BufferedImage preview = read(renderer.render(pdf, "application/pdf"));
+
+        assertEquals(320, preview.getWidth());
+        assertTrue(preview.getHeight() > preview.getWidth()); // portrait page
+    }
+
+    @Test
+    void scalesDownLargeImages() throws Exception {
+        File png = dir.resolve("a.png").toFile();
+        ImageIO.write(new BufferedImage(2000, 1000, BufferedImage.TYPE_INT_RGB), "png", png);
+
+        BufferedImage preview = read(renderer.render(png, "image/png"));
+
+        assertEquals(320, preview.getWidth());
+        assertEquals(160, preview.getHeight());
+    }
+
+    @Test
+    void rejectsDamagedFiles() throws Exception {
+        File broken = dir.resolve("broken.pdf").toFile();
+        Files.writeString(broken.toPath(), "not a pdf");
+
+        assertThrows(Exception.class, () -> renderer.render(broken, "application/pdf"));
+    }
+
+    @Test
+    void supportsPdfsAndCommonImages() {
+        assertTrue(PreviewRenderer.supports("application/pdf"));
+        assertTrue(PreviewRenderer.supports("image/jpeg"));
+        assertFalse(PreviewRenderer.supports("text/plain"));
+        assertFalse(PreviewRenderer.supports(null));
+    }
+
+    private static BufferedImage read(byte[] png) throws Exception {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        assertNotNull(image);
+        return image;
+    }
+}
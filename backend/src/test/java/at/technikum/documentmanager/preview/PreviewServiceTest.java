@@ -0,0 +1,99 @@
+package at.technikum.documentmanager.preview;
+
+import at.technikum.documentmanager.dto.DocumentMetadata;
+import at.technikum.documentmanager.storage.StorageService;
+import at.technikum.documentmanager.storage.StoredObject;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PreviewServiceTest {
+
+    // object storage contents by object name
+    Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    StorageService storage = mock(StorageService.class);
+    PreviewService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        service = new PreviewService(storage, 320, 1024 * 1024, 1, 10, new SimpleMeterRegistry());
+
+        doAnswer(inv -> objects.put(inv.getArgument(3), inv.<InputStream>getArgument(0).readAllBytes()))
+                .when(storage).store(any(), anyLong(), anyString(), anyString());
+        when(storage.load(anyString())).thenAnswer(inv ->
+                Optional.ofNullable(objects.get(inv.<String>getArgument(0))).map(ByteArrayInputStream::new));
+        when(storage.exists(anyString())).thenAnswer(inv -> objects.containsKey(inv.<String>getArgument(0)));
+        when(storage.stat(anyString())).thenAnswer(inv -> Optional.ofNullable(objects.get(inv.<String>getArgument(0)))
+                .map(bytes -> new StoredObject(bytes.length, "etag", Instant.now(), null)));
+        when(storage.transferTo(anyString(), anyLong(), anyLong(), any())).thenAnswer(inv -> {
+            byte[] bytes = objects.get(inv.<String>getArgument(0));
+            inv.<OutputStream>getArgument(3).write(bytes);
+            return (long) bytes.length;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void rendersAMissingPreviewInTheBackground() throws Exception {
+        ByteArrayOutputStream image = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(640, 480, BufferedImage.TYPE_INT_RGB), "png", image);
+        objects.put("blobs/img", image.toByteArray());
+        DocumentMetadata doc = document("blobs/img", "image/png");
+
+        assertTrue(service.load(doc).isEmpty());
+
+        awaitObject("blobs/img.preview.png");
+        byte[] preview = service.load(doc).orElseThrow();
+        assertEquals(320, ImageIO.read(new ByteArrayInputStream(preview)).getWidth());
+    }
+
+    @Test
+    void doesNotRetryContentThatCannotBeRendered() throws Exception {
+        objects.put("blobs/broken", "not a pdf".getBytes(StandardCharsets.UTF_8));
+        DocumentMetadata doc = document("blobs/broken", "application/pdf");
+
+        assertTrue(service.load(doc).isEmpty());
+
+        awaitObject("blobs/broken.preview.failed");
+        assertThrows(NoSuchElementException.class, () -> service.load(doc));
+        assertThrows(NoSuchElementException.class, () -> service.load(doc));
+        verify(storage, times(1)).transferTo(eq("blobs/broken"), anyLong(), anyLong(), any());
+    }
+
+    private void awaitObject(String objectName) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!objects.containsKey(objectName)) {
+            assertTrue(System.currentTimeMillis() < deadline, objectName + " was never stored");
+            Thread.sleep(10);
+        }
+    }
+
+    private static DocumentMetadata document(String objectName, String contentType) {
+        return new DocumentMetadata(UUID.randomUUID(), "file", contentType, 0, Instant.now(), objectName,
+                null, null, 0L, List.of());
+    }
+}
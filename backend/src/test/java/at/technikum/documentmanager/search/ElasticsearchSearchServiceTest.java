@@ -0,0 +1,332 @@
+package at.technikum.documentmanager.search;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.ErrorResponse;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch.core.ClosePointInTimeRequest;
+import co.elastic.clients.elasticsearch.core.OpenPointInTimeRequest;
+import co.elastic.clients.elasticsearch.core.OpenPointInTimeResponse;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.util.ObjectBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(MockitoExtension.class)
+class ElasticsearchSearchServiceTest {
+
+    @Mock
+    ElasticsearchClient client;
+
+    @Test
+    void usesHighlightWhenAvailable() throws Exception {
+        ElasticsearchSearchService service = new ElasticsearchSearchService(client, "documents", 20, "1m", 100, 30, new SimpleMeterRegistry());
+
+        IndexedDocument source = new IndexedDocument();
+        source.setDocumentId("11111111-1111-1111-1111-111111111111");
+        source.setFilename("report.pdf");
+        source.setContentType("application/pdf");
+        source.setUploadedAt(Instant.parse("2024-01-01T00:00:00Z"));
+        source.setText("full body text");
+
+        SearchResponse<IndexedDocument> response = SearchResponse.of(r -> r
+                .took(1)
+                .timedOut(false)
+                .shards(s -> s.total(1).successful(1).failed(0))
+                .hits(h -> h.hits(List.of(
+                        Hit.of(hit -> hit
+                                .index("documents")
+                                .id(source.getDocumentId())
+                                .score(1.2)
+                                .source(source)
+                                .highlight(Map.of("text", List.of("<em>body</em> text")))
+                        )
+                )))
+        );
+
+        when(client.search(
+                ArgumentMatchers.<Function<SearchRequest.Builder, ObjectBuilder<SearchRequest>>>any(),
+                eq(IndexedDocument.class)
+        )).thenReturn(response);
+
+        var results = service.search("body");
+        assertEquals(1, results.size());
+        assertEquals("body text", results.getFirst().snippet());
+        assertEquals(source.getFilename(), results.getFirst().filename());
+        assertEquals(source.getContentType(), results.getFirst().contentType());
+    }
+
+    @Test
+    void servesRepeatedQueriesFromCacheUntilIndexChanges() throws Exception {
+        ElasticsearchSearchService service = new ElasticsearchSearchService(client, "documents", 20, "1m", 100, 30, new SimpleMeterRegistry());
+        SearchResponse<IndexedDocument> empty = SearchResponse.of(r -> r
+                .took(1)
+                .timedOut(false)
+                .shards(s -> s.total(1).successful(1).failed(0))
+                .hits(h -> h.hits(List.of()))
+        );
+        when(client.search(
+                ArgumentMatchers.<Function<SearchRequest.Builder, ObjectBuilder<SearchRequest>>>any(),
+                eq(IndexedDocument.class)
+        )).thenReturn(empty);
+
+        service.search("Invoice  2024");
+        service.search(" invoice 2024");
+        verify(client, times(1)).search(
+                ArgumentMatchers.<Function<SearchRequest.Builder, ObjectBuilder<SearchRequest>>>any(),
+                eq(IndexedDocument.class));
+
+        service.onIndexChanged(SearchIndexChangedEvent.of(UUID.randomUUID()));
+        service.search("invoice 2024");
+        verify(client, times(2)).search(
+                ArgumentMatchers.<Function<SearchRequest.Builder, ObjectBuilder<SearchRequest>>>any(),
+                eq(IndexedDocument.class));
+    }
+
+    @Test
+    void appliesSelectedFacetsAsFilterClauses() throws Exception {
+        ElasticsearchSearchService service = new ElasticsearchSearchService(client, "documents", 20, "1m", 100, 30, new SimpleMeterRegistry());
+        ArgumentCaptor<Function<SearchRequest.Builder, ObjectBuilder<SearchRequest>>> captor = ArgumentCaptor.captor();
+        when(client.search(captor.capture(), eq(IndexedDocument.class))).thenThrow(new IOException("stop"));
+
+        var query = new SearchQuery("invoice", List.of("application/pdf"), List.of("tax-2025"), null, null, List.of(SizeRange.LARGE));
+        assertThrows(RuntimeException.class, () -> service.searchFaceted(query));
+
+        SearchRequest request = captor.getValue().apply(new SearchRequest.Builder()).build();
+        var bool = request.query().bool();
+        assertEquals(1, bool.must().size());
+        assertEquals(3, bool.filter().size());
+        assertEquals("contentType", bool.filter().get(0).terms().field());
+        assertEquals("tagNames", bool.filter().get(1).term().field());
+        assertEquals(4, request.aggregations().size());
+    }
+
+    @Test
+    void concurrentIdenticalQueriesShareOneRequest() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ElasticsearchSearchService service = new ElasticsearchSearchService(client, "documents", 20, "1m", 100, 30, registry);
+        CountDownLatch searching = new CountDownLatch(1);
+        CountDownLatch respond = new CountDownLatch(1);
+        when(client.search(
+                ArgumentMatchers.<Function<SearchRequest.Builder, ObjectBuilder<SearchRequest>>>any(),
+                eq(IndexedDocument.class)
+        )).thenAnswer(inv -> {
+            searching.countDown();
+            respond.await();
+            return emptyResponse();
+        });
+
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<SearchResult>> first = callers.submit(() -> service.search("invoice"));
+            assertTrue(searching.await(5, TimeUnit.SECONDS));
+            Future<List<SearchResult>> second = callers.submit(() -> service.search(" Invoice "));
+            awaitCount(registry, "coalesced", 1);
+
+            respond.countDown();
+            assertEquals(List.of(), first.get(5, TimeUnit.SECONDS));
+            assertEquals(List.of(), second.get(5, TimeUnit.SECONDS));
+        } finally {
+            callers.shutdownNow();
+        }
+        verify(client, times(1)).search(
+                ArgumentMatchers.<Function<SearchRequest.Builder, ObjectBuilder<SearchRequest>>>any(),
+                eq(IndexedDocument.class));
+        assertEquals(1.0, registry.get("search.cache.requests").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void anErrorReleasesWaitingCallersAndTheNextCallSearchesAgain() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ElasticsearchSearchService service = new ElasticsearchSearchService(client, "documents", 20, "1m", 100, 30, registry);
+        CountDownLatch searching = new CountDownLatch(1);
+        CountDownLatch respond = new CountDownLatch(1);
+        when(client.search(
+                ArgumentMatchers.<Function<SearchRequest.Builder, ObjectBuilder<SearchRequest>>>any(),
+                eq(IndexedDocument.class)
+        )).thenAnswer(inv -> {
+            searching.countDown();
+            respond.await();
+            throw new StackOverflowError("deeply nested query");
+        }).thenReturn(emptyResponse());
+
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<SearchResult>> first = callers.submit(() -> service.search("invoice"));
+            assertTrue(searching.await(5, TimeUnit.SECONDS));
+            Future<List<SearchResult>> second = callers.submit(() -> service.search("invoice"));
+            awaitCount(registry, "coalesced", 1);
+
+            respond.countDown();
+            ExecutionException firstError = assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+            ExecutionException secondError = assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(StackOverflowError.class, firstError.getCause());
+            assertInstanceOf(StackOverflowError.class, secondError.getCause());
+        } finally {
+            callers.shutdownNow();
+        }
+
+        assertEquals(List.of(), service.search("invoice"));
+        verify(client, times(2)).search(
+                ArgumentMatchers.<Function<SearchRequest.Builder, ObjectBuilder<SearchRequest>>>any(),
+                eq(IndexedDocument.class));
+    }
+
+    @Test
+    void firstPageOpensAPointInTimeAndHandsOutACursor() throws Exception {
+        ElasticsearchSearchService service = new ElasticsearchSearchService(client, "documents", 20, "1m", 100, 30, new SimpleMeterRegistry());
+        when(client.openPointInTime(ArgumentMatchers.<Function<OpenPointInTimeRequest.Builder, ObjectBuilder<OpenPointInTimeRequest>>>any()))
+                .thenReturn(OpenPointInTimeResponse.of(r -> r.id("pit-1")));
+        SearchResponse<IndexedDocument> response = page("pit-2", hit(2.5, 7), hit(1.5, 9));
+        ArgumentCaptor<Function<SearchRequest.Builder, ObjectBuilder<SearchRequest>>> request = searchCaptor();
+        when(client.search(request.capture(), eq(IndexedDocument.class))).thenReturn(response);
+
+        SearchPage page = service.searchPage(" Invoice ", null, 2);
+
+        assertEquals(2, page.items().size());
+        SearchRequest sent = SearchRequest.of(request.getValue());
+        assertEquals("pit-1", sent.pit().id());
+        assertTrue(sent.searchAfter().isEmpty());
+        assertEquals(new SearchCursor("pit-2", 1.5, 9, "invoice"), SearchCursor.decode(page.nextCursor()));
+        verify(client, never()).closePointInTime(ArgumentMatchers.<Function<ClosePointInTimeRequest.Builder, ObjectBuilder<ClosePointInTimeRequest>>>any());
+    }
+
+    @Test
+    void nextPageContinuesAfterTheCursor() throws Exception {
+        ElasticsearchSearchService service = new ElasticsearchSearchService(client, "documents", 20, "1m", 100, 30, new SimpleMeterRegistry());
+        SearchResponse<IndexedDocument> response = page("pit-3", hit(1.0, 12), hit(0.5, 14));
+        ArgumentCaptor<Function<SearchRequest.Builder, ObjectBuilder<SearchRequest>>> request = searchCaptor();
+        when(client.search(request.capture(), eq(IndexedDocument.class))).thenReturn(response);
+
+        SearchPage page = service.searchPage("ignored", new SearchCursor("pit-2", 1.5, 9, "invoice").encode(), 2);
+
+        SearchRequest sent = SearchRequest.of(request.getValue());
+        assertEquals("pit-2", sent.pit().id());
+        assertEquals(1.5, sent.searchAfter().get(0).doubleValue());
+        assertEquals(9L, sent.searchAfter().get(1).longValue());
+        assertEquals(new SearchCursor("pit-3", 0.5, 14, "invoice"), SearchCursor.decode(page.nextCursor()));
+        verify(client, never()).openPointInTime(ArgumentMatchers.<Function<OpenPointInTimeRequest.Builder, ObjectBuilder<OpenPointInTimeRequest>>>any());
+    }
+
+    @Test
+    void lastPageHasNoCursorAndClosesThePointInTime() throws Exception {
+        ElasticsearchSearchService service = new ElasticsearchSearchService(client, "documents", 20, "1m", 100, 30, new SimpleMeterRegistry());
+        SearchResponse<IndexedDocument> response = page("pit-3", hit(0.4, 20));
+        when(client.search(
+                ArgumentMatchers.<Function<SearchRequest.Builder, ObjectBuilder<SearchRequest>>>any(),
+                eq(IndexedDocument.class)
+        )).thenReturn(response);
+        ArgumentCaptor<Function<ClosePointInTimeRequest.Builder, ObjectBuilder<ClosePointInTimeRequest>>> close =
+                ArgumentCaptor.captor();
+
+        SearchPage page = service.searchPage(null, new SearchCursor("pit-2", 1.5, 9, "invoice").encode(), 2);
+
+        assertEquals(1, page.items().size());
+        assertNull(page.nextCursor());
+        verify(client).closePointInTime(close.capture());
+        assertEquals("pit-3", ClosePointInTimeRequest.of(close.getValue()).id());
+    }
+
+    @Test
+    void expiredCursorIsRejected() throws Exception {
+        ElasticsearchSearchService service = new ElasticsearchSearchService(client, "documents", 20, "1m", 100, 30, new SimpleMeterRegistry());
+        when(client.search(
+                ArgumentMatchers.<Function<SearchRequest.Builder, ObjectBuilder<SearchRequest>>>any(),
+                eq(IndexedDocument.class)
+        )).thenThrow(new ElasticsearchException("search", ErrorResponse.of(e -> e
+                .status(404)
+                .error(c -> c.type("search_context_missing_exception").reason("No search context found")))));
+        String cursor = new SearchCursor("pit-2", 1.5, 9, "invoice").encode();
+
+        assertThrows(IllegalArgumentException.class, () -> service.searchPage(null, cursor, 2));
+    }
+
+    @Test
+    void invalidCursorIsRejectedWithoutSearching() {
+        ElasticsearchSearchService service = new ElasticsearchSearchService(client, "documents", 20, "1m", 100, 30, new SimpleMeterRegistry());
+
+        assertThrows(IllegalArgumentException.class, () -> service.searchPage(null, "not a cursor", 2));
+        assertThrows(IllegalArgumentException.class, () -> service.searchPage(null,
+                Base64.getUrlEncoder().encodeToString("pit-2|high|9|invoice".getBytes(StandardCharsets.UTF_8)), 2));
+        verifyNoInteractions(client);
+    }
+
+    private static ArgumentCaptor<Function<SearchRequest.Builder, ObjectBuilder<SearchRequest>>> searchCaptor() {
+        return ArgumentCaptor.captor();
+    }
+
+    @SafeVarargs
+    private static SearchResponse<IndexedDocument> page(String pitId, Hit<IndexedDocument>... hits) {
+        return SearchResponse.of(r -> r
+                .took(1)
+                .timedOut(false)
+                .pitId(pitId)
+                .shards(s -> s.total(1).successful(1).failed(0))
+                .hits(h -> h.hits(List.of(hits)))
+        );
+    }
+
+    private static Hit<IndexedDocument> hit(double score, long shardDoc) {
+        IndexedDocument source = new IndexedDocument();
+        source.setDocumentId(UUID.randomUUID().toString());
+        source.setFilename("invoice-" + shardDoc + ".pdf");
+        source.setContentType("application/pdf");
+        source.setUploadedAt(Instant.parse("2024-01-01T00:00:00Z"));
+        source.setText("invoice");
+        return Hit.of(h -> h
+                .index("documents")
+                .id(source.getDocumentId())
+                .score(score)
+                .source(source)
+                .sort(FieldValue.of(score), FieldValue.of(shardDoc)));
+    }
+
+    private static SearchResponse<IndexedDocument> emptyResponse() {
+        return SearchResponse.of(r -> r
+                .took(1)
+                .timedOut(false)
+                .shards(s -> s.total(1).successful(1).failed(0))
+                .hits(h -> h.hits(List.of()))
+        );
+    }
+
+    private static void awaitCount(SimpleMeterRegistry registry, String result, double expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (registry.get("search.cache.requests").tag("result", result).counter().count() < expected) {
+            assertTrue(System.currentTimeMillis() < deadline, "no " + result + " request");
+            Thread.sleep(5);
+        }
+    }
+}
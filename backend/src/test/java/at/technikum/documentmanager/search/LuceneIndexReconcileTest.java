@@ -0,0 +1,126 @@
+package at.technikum.documentmanager.search;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class LuceneIndexReconcileTest {
+
+    @TempDir
+    Path dir;
+
+    JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    LuceneIndex index;
+
+    UUID kept = UUID.randomUUID();
+    UUID edited = UUID.randomUUID();
+    UUID removed = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // a previous run indexed three documents and shut down cleanly
+        LuceneIndex previous = open();
+        previous.write(Set.of(kept, edited, removed), Map.of(kept, doc(kept, "kept.pdf"),
+                edited, doc(edited, "draft.pdf"), removed, doc(removed, "removed.pdf")));
+        previous.close();
+        index = open();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        index.close();
+    }
+
+    @Test
+    void reReadsRowsChangedAfterTheCommittedMark() throws Exception {
+        Instant before = Instant.now();
+        when(jdbc.queryForObject("SELECT count(*) FROM documents", Long.class)).thenReturn(3L);
+        when(jdbc.queryForList(eq("SELECT id FROM documents WHERE changed_at > ?"), eq(UUID.class), any(Timestamp.class)))
+                .thenReturn(List.of(edited));
+        List<UUID> loaded = loadedIds("final.pdf");
+
+        index.reconcile();
+        index.flush();
+
+        assertEquals(List.of(edited), loaded);
+        // the mark lies before the close, less the margin for commits whose events were still on their way
+        verify(jdbc).queryForList(anyString(), eq(UUID.class), argThat((Timestamp t) ->
+                t.toInstant().isBefore(before) && t.toInstant().isAfter(before.minus(Duration.ofMinutes(10)))));
+        // same count: no id scan
+        verify(jdbc, never()).queryForList("SELECT id FROM documents", UUID.class);
+    }
+
+    @Test
+    void diffsTheIdsWhenADeleteWasLost() throws Exception {
+        UUID added = UUID.randomUUID();
+        // removed is gone, added is new: the count alone would not tell
+        when(jdbc.queryForObject("SELECT count(*) FROM documents", Long.class)).thenReturn(3L);
+        when(jdbc.queryForList(eq("SELECT id FROM documents WHERE changed_at > ?"), eq(UUID.class), any(Timestamp.class)))
+                .thenReturn(List.of(added));
+        when(jdbc.queryForList("SELECT id FROM documents", UUID.class)).thenReturn(List.of(kept, edited, added));
+        List<UUID> loaded = loadedIds("added.pdf");
+
+        index.reconcile();
+        index.flush();
+
+        assertEquals(Set.of(added, removed), Set.copyOf(loaded));
+        assertEquals(3, index.acquire().getIndexReader().numDocs());
+    }
+
+    // records the ids each batch loads, answering with a document named filename for every one except removed
+    private List<UUID> loadedIds(String filename) {
+        List<UUID> loaded = new ArrayList<>();
+        doAnswer(inv -> {
+            Object[] args = inv.getArguments();
+            RowCallbackHandler handler = inv.getArgument(1);
+            for (Object arg : Arrays.copyOfRange(args, 2, args.length)) {
+                UUID id = (UUID) arg;
+                loaded.add(id);
+                if (!id.equals(removed)) {
+                    handler.processRow(row(id, filename));
+                }
+            }
+            return null;
+        }).when(jdbc).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+        return loaded;
+    }
+
+    private LuceneIndex open() throws Exception {
+        return new LuceneIndex(jdbc, dir, 500, Duration.ofMinutes(1), new SimpleMeterRegistry());
+    }
+
+    private static ResultSet row(UUID id, String filename) throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getObject("id", UUID.class)).thenReturn(id);
+        when(rs.getString("original_filename")).thenReturn(filename);
+        return rs;
+    }
+
+    private static IndexedDocument doc(UUID id, String filename) {
+        IndexedDocument doc = new IndexedDocument();
+        doc.setDocumentId(id.toString());
+        doc.setFilename(filename);
+        doc.setTagNames(List.of());
+        return doc;
+    }
+}
@@ -0,0 +1,136 @@
+package at.technikum.documentmanager.search;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LuceneSearchServiceTest {
+
+    @TempDir
+    Path dir;
+
+    LuceneIndex index;
+    LuceneSearchService service;
+
+    UUID invoice = UUID.randomUUID();
+    UUID contract = UUID.randomUUID();
+    UUID letter = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        index = new LuceneIndex(null, dir, 500, Duration.ofMinutes(1), new SimpleMeterRegistry());
+        service = new LuceneSearchService(index, 20);
+        write(doc(invoice, "invoice-2024.pdf", "application/pdf", "2024-03-05T10:00:00Z", 50_000L,
+                "Invoice for the office chairs.", "Total amount due: 420 EUR. Please pay the invoice within 14 days.",
+                List.of("finance")));
+        write(doc(contract, "rental-contract.pdf", "application/pdf", "2024-04-01T10:00:00Z", 2_000_000L,
+                "Rental contract for the Vienna office.", "The tenant pays the rent on the first day of each month.",
+                List.of("finance", "legal")));
+        write(doc(letter, "letter.png", "image/png", "2024-04-20T10:00:00Z", 300_000L,
+                null, "Dear customer, thank you for the order.", List.of()));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        index.close();
+    }
+
+    @Test
+    void findsMatchesInTextFilenameAndSummaryWithHighlights() {
+        List<SearchResult> results = service.search("Invoice");
+
+        assertEquals(1, results.size());
+        SearchResult hit = results.getFirst();
+        assertEquals(invoice, hit.id());
+        assertEquals("invoice-2024.pdf", hit.filename());
+        assertEquals(Instant.parse("2024-03-05T10:00:00Z"), hit.uploadedAt());
+        assertEquals(List.of("finance"), hit.tags());
+        assertTrue(hit.score() > 0);
+        assertTrue(hit.snippet().contains("pay the invoice"), hit.snippet());
+    }
+
+    @Test
+    void ranksTheBestMatchingDocumentFirst() {
+        List<SearchResult> results = service.search("vienna office");
+
+        assertEquals(List.of(contract, invoice), results.stream().map(SearchResult::id).toList());
+        assertTrue(results.get(0).score() > results.get(1).score());
+    }
+
+    @Test
+    void filtersAndCountsFacets() {
+        FacetedSearchResult result = service.searchFaceted(new SearchQuery(
+                null, List.of("application/pdf"), List.of("finance"), null, null, null));
+
+        assertEquals(2, result.total());
+        Map<String, List<FacetBucket>> facets = result.facets();
+        assertEquals(List.of(new FacetBucket("application/pdf", 2)), facets.get(SearchService.FACET_CONTENT_TYPE));
+        assertEquals(List.of(new FacetBucket("finance", 2), new FacetBucket("legal", 1)), facets.get(SearchService.FACET_TAGS));
+        assertEquals(List.of(new FacetBucket("2024-03", 1), new FacetBucket("2024-04", 1)), facets.get(SearchService.FACET_UPLOADED_AT));
+        assertEquals(List.of(new FacetBucket("small", 1), new FacetBucket("medium", 0),
+                new FacetBucket("large", 1), new FacetBucket("huge", 0)), facets.get(SearchService.FACET_SIZE));
+
+        FacetedSearchResult narrowed = service.searchFaceted(new SearchQuery(
+                "order", null, null, Instant.parse("2024-04-01T00:00:00Z"), null, List.of(SizeRange.MEDIUM)));
+        assertEquals(List.of(letter), narrowed.items().stream().map(SearchResult::id).toList());
+    }
+
+    @Test
+    void pagesStayOnTheirSnapshot() throws Exception {
+        SearchPage first = service.searchPage("the", null, 2);
+        assertEquals(2, first.items().size());
+        assertNotNull(first.nextCursor());
+
+        // neither the new document nor the delete show up in the running paged search
+        write(doc(UUID.randomUUID(), "the-the-the.txt", "text/plain", "2024-05-01T10:00:00Z", 10L,
+                "the the the", "the the the", List.of()));
+        index.write(Set.of(letter, invoice, contract), Map.of());
+
+        SearchPage second = service.searchPage(null, first.nextCursor(), 2);
+        List<UUID> seen = new ArrayList<>(first.items().stream().map(SearchResult::id).toList());
+        seen.addAll(second.items().stream().map(SearchResult::id).toList());
+        assertEquals(Set.of(invoice, contract, letter), Set.copyOf(seen));
+        assertNull(second.nextCursor());
+
+        assertEquals(1, service.search("the").size());
+    }
+
+    @Test
+    void rejectsCursorsOfOtherEngines() {
+        String cursor = new SearchCursor(PostgresSearchService.CURSOR_PREFIX + UUID.randomUUID(), 1.0, 0, "x").encode();
+
+        assertThrows(IllegalArgumentException.class, () -> service.searchPage(null, cursor, 2));
+    }
+
+    private void write(IndexedDocument doc) throws Exception {
+        UUID id = UUID.fromString(doc.getDocumentId());
+        index.write(Set.of(id), Map.of(id, doc));
+    }
+
+    private static IndexedDocument doc(UUID id, String filename, String contentType, String uploadedAt, Long size,
+                                       String summary, String text, List<String> tags) {
+        IndexedDocument doc = new IndexedDocument();
+        doc.setDocumentId(id.toString());
+        doc.setFilename(filename);
+        doc.setContentType(contentType);
+        doc.setUploadedAt(Instant.parse(uploadedAt));
+        doc.setSize(size);
+        doc.setSummary(summary);
+        doc.setText(text);
+        doc.setTagNames(tags);
+        return doc;
+    }
+}
@@ -0,0 +1,127 @@
+package at.technikum.documentmanager.search;
+
+import at.technikum.documentmanager.entity.ReindexJob;
+import at.technikum.documentmanager.repository.ReindexJobRepository;
+import at.technikum.documentmanager.storage.MinioStorageService;
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.indices.ElasticsearchIndicesClient;
+import co.elastic.clients.elasticsearch.indices.ExistsAliasRequest;
+import co.elastic.clients.elasticsearch.indices.UpdateAliasesRequest;
+import co.elastic.clients.elasticsearch.indices.update_aliases.Action;
+import co.elastic.clients.transport.endpoints.BooleanResponse;
+import co.elastic.clients.util.ObjectBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReindexServiceTest {
+
+    @Mock
+    ElasticsearchClient client;
+
+    @Mock
+    ElasticsearchIndicesClient indices;
+
+    @Mock
+    JdbcTemplate jdbc;
+
+    @Mock
+    MinioStorageService storage;
+
+    @Mock
+    ReindexJobRepository jobs;
+
+    @Mock
+    ApplicationEventPublisher events;
+
+    ReindexService service;
+
+    ReindexJob job = ReindexJob.builder()
+            .id(UUID.randomUUID())
+            .targetIndex("documents-20250101000000")
+            .status(ReindexJob.Status.FAILED)
+            .startedAt(Instant.parse("2025-01-01T00:00:00Z"))
+            .updatedAt(Instant.parse("2025-01-01T00:05:00Z"))
+            .build();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        service = new ReindexService(client, jdbc, storage, jobs, events, "documents", 500, 2);
+        when(jobs.findById(job.getId())).thenReturn(Optional.of(job));
+        when(client.indices()).thenReturn(indices);
+        when(indices.existsAlias(ArgumentMatchers.<Function<ExistsAliasRequest.Builder, ObjectBuilder<ExistsAliasRequest>>>any()))
+                .thenReturn(new BooleanResponse(true));
+    }
+
+    @Test
+    void resumesAfterTheCheckpoint() {
+        Instant checkpoint = Instant.parse("2024-06-01T12:00:00Z");
+        UUID checkpointId = UUID.randomUUID();
+        job.setCheckpointUploadedAt(checkpoint);
+        job.setCheckpointId(checkpointId);
+        job.setProcessed(1000);
+        when(jdbc.query(anyString(), ArgumentMatchers.<RowMapper<Object>>any(), any(Object[].class))).thenReturn(List.of());
+
+        service.resume(job.getId());
+
+        verify(jobs, timeout(5000).times(2)).save(job);
+        verify(jdbc).query(contains("WHERE (uploaded_at, id) < (?, ?)"), ArgumentMatchers.<RowMapper<Object>>any(),
+                eq(Timestamp.from(checkpoint)), eq(checkpointId), eq(500));
+        assertEquals(ReindexJob.Status.COMPLETED, job.getStatus());
+        assertEquals(1000, job.getProcessed());
+    }
+
+    @Test
+    void replaysConcurrentChangesAndSwapsTheAlias() throws Exception {
+        UUID deletedMeanwhile = UUID.randomUUID();
+        when(jdbc.query(anyString(), ArgumentMatchers.<RowMapper<Object>>any(), any(Object[].class))).thenAnswer(inv -> {
+            if (inv.<String>getArgument(0).contains("DESC")) {
+                // committed while the job reads the old pages, reaches the old index only
+                service.onDocumentChanged(DocumentChangedEvent.of(deletedMeanwhile));
+            }
+            return List.of();
+        });
+        when(client.bulk(any(BulkRequest.class))).thenReturn(BulkResponse.of(b -> b.errors(false).took(1).items(List.of())));
+
+        service.resume(job.getId());
+
+        verify(jobs, timeout(5000).times(2)).save(job);
+        assertEquals(ReindexJob.Status.COMPLETED, job.getStatus());
+
+        ArgumentCaptor<BulkRequest> bulk = ArgumentCaptor.forClass(BulkRequest.class);
+        verify(client).bulk(bulk.capture());
+        assertEquals("documents-20250101000000", bulk.getValue().index());
+        assertEquals(1, bulk.getValue().operations().size());
+        assertEquals(deletedMeanwhile.toString(), bulk.getValue().operations().getFirst().delete().id());
+
+        ArgumentCaptor<Function<UpdateAliasesRequest.Builder, ObjectBuilder<UpdateAliasesRequest>>> swap = ArgumentCaptor.captor();
+        verify(indices).updateAliases(swap.capture());
+        List<Action> actions = swap.getValue().apply(new UpdateAliasesRequest.Builder()).build().actions();
+        assertEquals(2, actions.size());
+        assertEquals("documents", actions.get(0).remove().alias());
+        assertEquals("*", actions.get(0).remove().index());
+        assertEquals("documents-20250101000000", actions.get(1).add().index());
+        assertEquals("documents", actions.get(1).add().alias());
+    }
+}
@@ -0,0 +1,78 @@
+package at.technikum.documentmanager.search;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RoutingSearchServiceTest {
+
+    @Mock
+    ElasticsearchSearchService elasticsearch;
+
+    @Mock
+    PostgresSearchService postgres;
+
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    RoutingSearchService routing;
+
+    @BeforeEach
+    void setUp() {
+        routing = new RoutingSearchService(elasticsearch, postgres, 10, 3, 0.5, 2000, 30000, registry);
+    }
+
+    @Test
+    void answersFromPostgresWhenElasticsearchFails() {
+        SearchResult hit = new SearchResult(UUID.randomUUID(), "a.pdf", "application/pdf", null, "", 1.0, List.of());
+        when(elasticsearch.search("invoice")).thenThrow(new RuntimeException("Failed to search documents"));
+        when(postgres.search("invoice")).thenReturn(List.of(hit));
+
+        assertEquals(List.of(hit), routing.search("invoice"));
+    }
+
+    @Test
+    void stopsCallingElasticsearchOnceTheBreakerIsOpen() {
+        when(elasticsearch.search(any())).thenThrow(new RuntimeException("connection refused"));
+        when(postgres.search(any())).thenReturn(List.of());
+
+        for (int i = 0; i < 5; i++) {
+            routing.search("q" + i);
+        }
+
+        verify(elasticsearch, times(3)).search(any()); // min-calls, then open
+        assertEquals(SearchCircuitBreaker.State.OPEN, routing.breakerState());
+        assertEquals(5.0, registry.get("search.requests").tag("engine", "postgres").counter().count());
+    }
+
+    @Test
+    void badRequestsDoNotCountAsEngineFailures() {
+        when(elasticsearch.search(any())).thenThrow(new IllegalArgumentException("Search cursor expired"));
+
+        for (int i = 0; i < 5; i++) {
+            assertThrows(IllegalArgumentException.class, () -> routing.search("q"));
+        }
+
+        assertEquals(SearchCircuitBreaker.State.CLOSED, routing.breakerState());
+        verifyNoInteractions(postgres);
+    }
+
+    @Test
+    void postgresCursorsStayWithPostgres() {
+        String cursor = new SearchCursor(PostgresSearchService.CURSOR_PREFIX + UUID.randomUUID(), 0.5, 0, "invoice").encode();
+        when(postgres.searchPage(null, cursor, 20)).thenReturn(new SearchPage(List.of(), null));
+
+        routing.searchPage(null, cursor, 20);
+
+        verifyNoInteractions(elasticsearch);
+    }
+}
@@ -0,0 +1,88 @@
+package at.technikum.documentmanager.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchCircuitBreakerTest {
+
+    MutableClock clock = new MutableClock();
+    SearchCircuitBreaker breaker = new SearchCircuitBreaker(10, 5, 0.5, Duration.ofMillis(500), Duration.ofSeconds(30), clock);
+
+    @Test
+    void opensOnErrorRate() {
+        for (int i = 0; i < 4; i++) {
+            breaker.record(Duration.ofMillis(10), false);
+        }
+        assertEquals(SearchCircuitBreaker.State.CLOSED, breaker.state()); // below min-calls
+
+        breaker.record(Duration.ofMillis(10), true);
+        assertEquals(SearchCircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    void opensOnSlowP99EvenWithoutErrors() {
+        for (int i = 0; i < 9; i++) {
+            breaker.record(Duration.ofMillis(10), true);
+        }
+        breaker.record(Duration.ofSeconds(2), true);
+        assertEquals(SearchCircuitBreaker.State.OPEN, breaker.state());
+    }
+
+    @Test
+    void letsOneProbeThroughAfterOpenDuration() {
+        for (int i = 0; i < 5; i++) {
+            breaker.record(Duration.ofMillis(10), false);
+        }
+        clock.advance(Duration.ofSeconds(31));
+
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest()); // probe in flight
+        breaker.record(Duration.ofMillis(10), true);
+
+        assertEquals(SearchCircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(0.0, breaker.errorRate());
+    }
+
+    @Test
+    void failedProbeOpensAgain() {
+        for (int i = 0; i < 5; i++) {
+            breaker.record(Duration.ofMillis(10), false);
+        }
+        clock.advance(Duration.ofSeconds(31));
+        assertTrue(breaker.allowRequest());
+        breaker.record(Duration.ofMillis(10), false);
+
+        assertEquals(SearchCircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.allowRequest());
+    }
+
+    static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2025-01-01T00:00:00Z");
+
+        void advance(Duration d) {
+            now = now.plus(d);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
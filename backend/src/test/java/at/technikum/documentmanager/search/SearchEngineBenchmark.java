@@ -0,0 +1,191 @@
+package at.technikum.documentmanager.search;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Latency of the embedded Lucene engine against Elasticsearch on the same synthetic corpus,
+ * through the same SearchService calls the controller makes. Not part of the test run; start it with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=at.technikum.documentmanager.search.SearchEngineBenchmark}.
+ * The elasticsearch runs need a node at -Delasticsearch.url (default http://localhost:9200), they
+ * (re)create the index benchmark-documents; pass {@code -p engine=lucene} to the JMH runner without one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchEngineBenchmark {
+
+    private static final String ES_INDEX = "benchmark-documents";
+
+    private static final List<String> WORDS = List.of(
+            "invoice", "total", "amount", "date", "customer", "number", "tax", "payment", "due", "order",
+            "contract", "rent", "tenant", "office", "insurance", "policy", "salary", "statement", "bank", "delivery",
+            "the", "and", "of", "to", "for", "with", "EUR", "Vienna", "account", "reference");
+    private static final List<String> TAGS = List.of(
+            "finance", "legal", "hr", "tax", "insurance", "personal", "archive", "todo", "2023", "2024");
+    private static final List<String> CONTENT_TYPES = List.of("application/pdf", "image/png", "image/jpeg", "text/plain");
+
+    @Param({"lucene", "elasticsearch"})
+    private String engine;
+
+    @Param({"10000"})
+    private int documents;
+
+    private final Random random = new Random(42);
+    private final List<String> queries = new ArrayList<>();
+    private int next;
+
+    private SearchService service;
+    private LuceneIndex luceneIndex;
+    private Path luceneDir;
+    private RestClient restClient;
+
+    @Setup
+    public void setUp() throws IOException {
+        Map<UUID, IndexedDocument> corpus = new LinkedHashMap<>();
+        for (int i = 0; i < documents; i++) {
+            IndexedDocument doc = document(i);
+            corpus.put(UUID.fromString(doc.getDocumentId()), doc);
+        }
+        for (int i = 0; i < 1000; i++) {
+            queries.add(word() + " " + word());
+        }
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        if (engine.equals("lucene")) {
+            luceneDir = Files.createTempDirectory("lucene-benchmark");
+            luceneIndex = new LuceneIndex(null, luceneDir, 1000, Duration.ofMinutes(1), registry);
+            luceneIndex.write(corpus.keySet(), corpus);
+            service = new LuceneSearchService(luceneIndex, 20);
+        } else {
+            ObjectMapper mapper = new ObjectMapper().findAndRegisterModules()
+                    .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+            restClient = RestClient.builder(HttpHost.create(System.getProperty("elasticsearch.url", "http://localhost:9200"))).build();
+            ElasticsearchClient client = new ElasticsearchClient(new RestClientTransport(restClient, new JacksonJsonpMapper(mapper)));
+            indexIntoElasticsearch(client, corpus);
+            // a single cache entry, the rotating queries always miss it
+            service = new ElasticsearchSearchService(client, ES_INDEX, 20, "1m", 1, 1, registry);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (luceneIndex != null) {
+            luceneIndex.close();
+            try (Stream<Path> files = Files.walk(luceneDir)) {
+                for (Path p : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(p);
+                }
+            }
+        }
+        if (restClient != null) {
+            restClient.close();
+        }
+    }
+
+    @Benchmark
+    public List<SearchResult> search() {
+        return service.search(nextQuery());
+    }
+
+    @Benchmark
+    public FacetedSearchResult faceted() {
+        return service.searchFaceted(new SearchQuery(nextQuery(), null, List.of(TAGS.get(next % TAGS.size())), null, null, null));
+    }
+
+    private String nextQuery() {
+        next = (next + 1) % queries.size();
+        return queries.get(next);
+    }
+
+    private void indexIntoElasticsearch(ElasticsearchClient client, Map<UUID, IndexedDocument> corpus) throws IOException {
+        if (client.indices().exists(e -> e.index(ES_INDEX)).value()) {
+            client.indices().delete(d -> d.index(ES_INDEX));
+        }
+        client.indices().create(c -> c
+                .index(ES_INDEX)
+                .mappings(m -> m
+                        .properties("documentId", p -> p.keyword(k -> k))
+                        .properties("filename", p -> p.text(t -> t))
+                        .properties("contentType", p -> p.keyword(k -> k))
+                        .properties("uploadedAt", p -> p.date(d -> d))
+                        .properties("size", p -> p.long_(l -> l))
+                        .properties("summary", p -> p.text(t -> t))
+                        .properties("text", p -> p.text(t -> t))
+                        .properties("tagNames", p -> p.keyword(k -> k))));
+
+        List<IndexedDocument> docs = new ArrayList<>(corpus.values());
+        for (int from = 0; from < docs.size(); from += 1000) {
+            BulkRequest.Builder bulk = new BulkRequest.Builder().index(ES_INDEX);
+            for (IndexedDocument doc : docs.subList(from, Math.min(from + 1000, docs.size()))) {
+                bulk.operations(op -> op.index(i -> i.id(doc.getDocumentId()).document(doc)));
+            }
+            client.bulk(bulk.build());
+        }
+        client.indices().refresh(r -> r.index(ES_INDEX));
+    }
+
+    private IndexedDocument document(int i) {
+        IndexedDocument doc = new IndexedDocument();
+        doc.setDocumentId(new UUID(0, i).toString());
+        doc.setFilename(word() + "-" + i + ".pdf");
+        doc.setContentType(CONTENT_TYPES.get(random.nextInt(CONTENT_TYPES.size())));
+        doc.setUploadedAt(Instant.parse("2024-01-01T00:00:00Z").plusSeconds(random.nextInt(365 * 24 * 3600)));
+        doc.setSize((long) random.nextInt(20 * 1024 * 1024));
+        doc.setSummary(words(20));
+        doc.setText(words(300));
+        List<String> tags = new ArrayList<>();
+        for (String tag : TAGS) {
+            if (random.nextInt(4) == 0) {
+                tags.add(tag);
+            }
+        }
+        doc.setTagNames(tags);
+        return doc;
+    }
+
+    private String words(int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            sb.append(word()).append(random.nextInt(12) == 0 ? ". " : " ");
+        }
+        return sb.toString().trim();
+    }
+
+    private String word() {
+        return WORDS.get(random.nextInt(WORDS.size()));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SearchEngineBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,136 @@
+package at.technikum.documentmanager.search;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SearchIndexSyncTest {
+
+    @Mock
+    ElasticsearchClient client;
+
+    @Mock
+    JdbcTemplate jdbc;
+
+    @Mock
+    ApplicationEventPublisher events;
+
+    @Mock
+    TaskScheduler scheduler;
+
+    SearchCircuitBreakerTest.MutableClock clock = new SearchCircuitBreakerTest.MutableClock();
+
+    SearchIndexSync sync;
+
+    @BeforeEach
+    void setUp() {
+        sync = new SearchIndexSync(client, jdbc, events, scheduler, "documents", 100, 3, 60_000, 60_000,
+                new SimpleMeterRegistry());
+        sync.clock = clock;
+    }
+
+    @Test
+    void coalescesChangesAndDeletesDocumentsThatAreGone() throws Exception {
+        UUID id = UUID.randomUUID();
+        // no rows: the document was deleted
+        doNothing().when(jdbc).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+        when(client.bulk(any(BulkRequest.class))).thenReturn(BulkResponse.of(b -> b
+                .errors(false).took(1).items(List.of())));
+
+        sync.onDocumentChanged(DocumentChangedEvent.of(id));
+        sync.onDocumentChanged(DocumentChangedEvent.of(id));
+        sync.flush();
+
+        ArgumentCaptor<BulkRequest> captor = ArgumentCaptor.forClass(BulkRequest.class);
+        verify(client).bulk(captor.capture());
+        assertEquals(1, captor.getValue().operations().size());
+        assertTrue(captor.getValue().operations().getFirst().isDelete());
+        verify(events).publishEvent(any(SearchIndexChangedEvent.class));
+    }
+
+    @Test
+    void keepsChangesAndBacksOffWhenClusterFails() throws Exception {
+        doNothing().when(jdbc).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+        when(client.bulk(any(BulkRequest.class))).thenThrow(new IOException("connection refused"));
+
+        sync.onDocumentChanged(DocumentChangedEvent.of(UUID.randomUUID()));
+        sync.flush();
+        clock.advance(Duration.ofSeconds(5));
+        sync.flush(); // still backing off
+
+        verify(client, times(1)).bulk(any(BulkRequest.class));
+        assertEquals(Duration.ofSeconds(5), sync.lag());
+        verify(events, never()).publishEvent(any());
+    }
+
+    @Test
+    void clusterOutageDoesNotUseUpAttempts() throws Exception {
+        doNothing().when(jdbc).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+        when(client.bulk(any(BulkRequest.class)))
+                .thenThrow(new IOException("connection refused"))
+                .thenThrow(new IOException("connection refused"))
+                .thenThrow(new IOException("connection refused"))
+                .thenThrow(new IOException("connection refused"))
+                .thenReturn(BulkResponse.of(b -> b.errors(false).took(1).items(List.of())));
+
+        sync.onDocumentChanged(DocumentChangedEvent.of(UUID.randomUUID()));
+        // more failed flushes than max-attempts (3)
+        for (int i = 0; i < 5; i++) {
+            sync.flush();
+            clock.advance(Duration.ofMinutes(2));
+        }
+
+        verify(client, times(5)).bulk(any(BulkRequest.class));
+        verify(events).publishEvent(any(SearchIndexChangedEvent.class));
+        assertEquals(Duration.ZERO, sync.lag());
+    }
+
+    @Test
+    void keepsChangesAndBacksOffWhenTheDatabaseFails() throws Exception {
+        UUID id = UUID.randomUUID();
+        doThrow(new CannotGetJdbcConnectionException("connection refused"))
+                .doNothing()
+                .when(jdbc).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+        when(client.bulk(any(BulkRequest.class))).thenReturn(BulkResponse.of(b -> b
+                .errors(false).took(1).items(List.of())));
+
+        sync.onDocumentChanged(DocumentChangedEvent.of(id));
+        sync.flush();
+        clock.advance(Duration.ofSeconds(5));
+        sync.flush(); // still backing off
+
+        verify(client, never()).bulk(any(BulkRequest.class));
+        assertEquals(Duration.ofSeconds(5), sync.lag());
+
+        clock.advance(Duration.ofMinutes(1));
+        sync.flush();
+
+        ArgumentCaptor<BulkRequest> captor = ArgumentCaptor.forClass(BulkRequest.class);
+        verify(client).bulk(captor.capture());
+        assertEquals(id.toString(), captor.getValue().operations().getFirst().delete().id());
+        assertEquals(Duration.ZERO, sync.lag());
+    }
+}
@@ -0,0 +1,145 @@
+package at.technikum.documentmanager.search;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SuggestIndexTest {
+
+    JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    List<Runnable> updates = new ArrayList<>();
+    SuggestIndex index = new SuggestIndex(jdbc, new SimpleMeterRegistry(), updates::add);
+
+    UUID invoice = UUID.randomUUID();
+    UUID report = UUID.randomUUID();
+    UUID finance = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        index.load(List.of(
+                new Suggestion("Invoice-2024-03.pdf", Suggestion.Type.FILENAME, invoice),
+                new Suggestion("annual report 2024.pdf", Suggestion.Type.FILENAME, report),
+                new Suggestion("Finance", Suggestion.Type.TAG, finance)));
+    }
+
+    @Test
+    void matchesWordStartsCaseInsensitively() {
+        assertEquals(List.of("Invoice-2024-03.pdf"), texts("inv"));
+        assertEquals(List.of("annual report 2024.pdf"), texts("REP"));
+        assertEquals(List.of("Finance"), texts("fin"));
+        assertEquals(List.of(), texts("voice"));
+        assertEquals(List.of(), texts(" "));
+    }
+
+    @Test
+    void returnsEachNameOnceInOrderOfTheMatchingPart() {
+        // "2024-03.pdf" sorts before "2024.pdf"; the invoice also matches at "03.pdf", not at "2"
+        assertEquals(List.of("Invoice-2024-03.pdf", "annual report 2024.pdf"), texts("2"));
+        assertEquals(List.of("Invoice-2024-03.pdf"), index.suggest("2", 1).stream().map(Suggestion::text).toList());
+    }
+
+    @Test
+    void appliesRenamesRemovalsAndNewNames() {
+        UUID tax = UUID.randomUUID();
+        Map<UUID, String> filenames = new HashMap<>();
+        filenames.put(invoice, "Rechnung-2024-03.pdf");
+        filenames.put(report, null);
+        index.apply(Suggestion.Type.FILENAME, filenames);
+        index.apply(Suggestion.Type.TAG, Map.of(tax, "tax 2024"));
+
+        assertEquals(List.of(), texts("inv"));
+        assertEquals(List.of("tax 2024", "Rechnung-2024-03.pdf"), texts("2024"));
+        assertEquals(new Suggestion("tax 2024", Suggestion.Type.TAG, tax), index.suggest("ta", 10).getFirst());
+        assertEquals(List.of("Finance"), texts("f"));
+    }
+
+    @Test
+    void sameFilenameUploadedTwiceIsSuggestedOnce() {
+        index.apply(Suggestion.Type.FILENAME, Map.of(UUID.randomUUID(), "Invoice-2024-03.pdf"));
+
+        assertEquals(1, index.suggest("invoice", 10).size());
+    }
+
+    @Test
+    void reportsItsFootprint() {
+        long before = index.memoryBytes();
+        index.apply(Suggestion.Type.FILENAME, Map.of(UUID.randomUUID(), "a much longer filename than the others.pdf"));
+
+        assertTrue(before > 0);
+        assertTrue(index.memoryBytes() > before);
+    }
+
+    @Test
+    void appliesEventsOnTheUpdaterInOneBatch() throws Exception {
+        UUID contract = UUID.randomUUID();
+        Map<UUID, String> rows = Map.of(invoice, "Rechnung-2024-03.pdf", contract, "contract.pdf");
+        doAnswer(inv -> {
+            RowCallbackHandler handler = inv.getArgument(1);
+            // the bind parameters arrive expanded
+            for (Object id : Arrays.copyOfRange(inv.getArguments(), 2, inv.getArguments().length)) {
+                if (rows.containsKey(id)) {
+                    ResultSet rs = mock(ResultSet.class);
+                    when(rs.getObject("id", UUID.class)).thenReturn((UUID) id);
+                    when(rs.getString("original_filename")).thenReturn(rows.get(id));
+                    handler.processRow(rs);
+                }
+            }
+            return null;
+        }).when(jdbc).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+
+        index.onDocumentChanged(DocumentChangedEvent.of(invoice));
+        index.onDocumentChanged(new DocumentChangedEvent(Set.of(report, contract)));
+        // nothing happens on the calling thread
+        assertEquals(List.of("Invoice-2024-03.pdf"), texts("inv"));
+        assertEquals(1, updates.size());
+
+        updates.removeFirst().run();
+
+        verify(jdbc, times(1)).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+        assertEquals(List.of(), texts("inv"));
+        assertEquals(List.of(), texts("annual"));
+        assertEquals(List.of("contract.pdf"), texts("con"));
+        assertEquals(List.of("Rechnung-2024-03.pdf"), texts("rech"));
+    }
+
+    @Test
+    void compactsOnceAQuarterOfTheSlotsIsEmpty() {
+        List<UUID> ids = IntStream.range(0, 4000).mapToObj(i -> UUID.randomUUID()).toList();
+        Map<UUID, String> added = new HashMap<>();
+        ids.forEach(id -> added.put(id, "file-" + id + ".pdf"));
+        index.apply(Suggestion.Type.FILENAME, added);
+        long full = index.memoryBytes();
+
+        Map<UUID, String> removed = new HashMap<>();
+        ids.subList(0, 1200).forEach(id -> removed.put(id, null));
+        index.apply(Suggestion.Type.FILENAME, removed);
+
+        assertTrue(index.memoryBytes() < full);
+        assertEquals(1, index.suggest("file-" + ids.get(1200), 10).size());
+        assertEquals(List.of(), index.suggest("file-" + ids.get(0), 10));
+        // slots were renumbered by the rebuild, later changes still find their name
+        index.apply(Suggestion.Type.FILENAME, Map.of(ids.get(3999), "renamed.pdf"));
+        assertEquals(List.of(), index.suggest("file-" + ids.get(3999), 10));
+        assertEquals(List.of("Finance"), texts("fin"));
+    }
+
+    private List<String> texts(String prefix) {
+        return index.suggest(prefix, 10).stream().map(Suggestion::text).toList();
+    }
+}
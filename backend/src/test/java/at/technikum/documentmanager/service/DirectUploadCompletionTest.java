@@ -0,0 +1,72 @@
+package at.technikum.documentmanager.service;
+
+import at.technikum.documentmanager.entity.Document;
+import at.technikum.documentmanager.messaging.UploadEventOutbox;
+import at.technikum.documentmanager.repository.DocumentRepository;
+import at.technikum.documentmanager.storage.StorageService;
+import at.technikum.documentmanager.storage.StoredObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class DirectUploadCompletionTest {
+
+    DocumentRepository repo = mock(DocumentRepository.class);
+    StorageService storage = mock(StorageService.class);
+    UploadEventOutbox outbox = mock(UploadEventOutbox.class);
+    PlatformTransactionManager txManager = mock(PlatformTransactionManager.class);
+    DocumentServiceImpl service = new DocumentServiceImpl(repo, storage, null, null, null, outbox,
+            new TransactionTemplate(txManager), mock(ApplicationEventPublisher.class));
+
+    UUID id = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(storage.stat(id + "-a.pdf")).thenReturn(Optional.of(
+                new StoredObject(3, "etag", Instant.now(), "application/pdf")));
+    }
+
+    @Test
+    void insertsTheRowOnce() throws Exception {
+        when(repo.saveAndFlush(any(Document.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        Document doc = service.completeDirectUpload(id, "a.pdf", "alice");
+
+        assertEquals(id, doc.getId());
+        assertEquals(3, doc.getSize());
+        verify(outbox).enqueue(any());
+        verify(txManager).commit(any());
+    }
+
+    @Test
+    void aConcurrentCompletionThatLostTheInsertIsAlreadyCompleted() throws Exception {
+        // both requests passed the existence check, the other one committed its row first
+        when(repo.existsById(id)).thenReturn(false, true);
+        when(repo.saveAndFlush(any(Document.class))).thenThrow(new DataIntegrityViolationException("duplicate key"));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> service.completeDirectUpload(id, "a.pdf", "alice"));
+
+        assertTrue(e.getMessage().contains("already completed"));
+        verify(outbox, never()).enqueue(any());
+        verify(txManager).rollback(any());
+    }
+
+    @Test
+    void otherConstraintViolationsAreNotMistakenForADuplicate() {
+        when(repo.saveAndFlush(any(Document.class))).thenThrow(new DataIntegrityViolationException("value too long"));
+
+        assertThrows(DataIntegrityViolationException.class, () -> service.completeDirectUpload(id, "a.pdf", "alice"));
+    }
+}
@@ -0,0 +1,201 @@
+package at.technikum.documentmanager.service;
+
+import at.technikum.documentmanager.dto.DocumentCursor;
+import at.technikum.documentmanager.dto.DocumentResponse;
+import at.technikum.documentmanager.dto.TagResponse;
+import at.technikum.documentmanager.repository.DocumentListItem;
+import at.technikum.documentmanager.repository.DocumentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.lang.reflect.Method;
+import java.sql.ResultSet;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class DocumentListingTest {
+
+    // how Spring Data builds DocumentListItem from a native query row: a map keyed by column label
+    static final SpelAwareProxyProjectionFactory PROJECTIONS = new SpelAwareProxyProjectionFactory();
+
+    DocumentRepository repo = mock(DocumentRepository.class);
+    JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    DocumentServiceImpl service = new DocumentServiceImpl(repo, null, null, jdbc, null, null, null, null);
+
+    UUID invoice = UUID.randomUUID();
+    UUID contract = UUID.randomUUID();
+    UUID letter = UUID.randomUUID();
+    TagResponse finance = new TagResponse(UUID.randomUUID(), "finance", "#00ff00");
+    TagResponse legal = new TagResponse(UUID.randomUUID(), "legal", "#0000ff");
+
+    // document_tags rows the tag query answers with, in its ORDER BY t.name
+    List<Object[]> tagRows = new ArrayList<>();
+    List<List<Object>> tagQueries = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        doAnswer(inv -> {
+            Object[] args = inv.getArguments();
+            tagQueries.add(List.of(Arrays.copyOfRange(args, 2, args.length)));
+            RowCallbackHandler handler = inv.getArgument(1);
+            for (Object[] row : tagRows) {
+                if (tagQueries.getLast().contains(row[0])) {
+                    handler.processRow(tagRow((UUID) row[0], (TagResponse) row[1]));
+                }
+            }
+            return null;
+        }).when(jdbc).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+    }
+
+    @Test
+    void mapsTheProjectionOfAPage() {
+        when(repo.findFirstPage(20, true)).thenReturn(List.of(item(invoice, "invoice.pdf", "Invoice for chairs")));
+
+        DocumentResponse doc = service.listPage(null, 20, true).getFirst();
+
+        assertEquals(invoice, doc.id());
+        assertEquals("invoice.pdf", doc.originalFilename());
+        assertEquals("application/pdf", doc.contentType());
+        assertEquals(1234, doc.size());
+        assertEquals(Instant.parse("2025-01-01T10:00:00Z"), doc.uploadedAt());
+        assertEquals("Invoice for chairs", doc.summary());
+        assertEquals(2L, doc.version());
+        assertNull(doc.downloadUrl());
+        assertEquals(List.of(), doc.tags());
+    }
+
+    @Test
+    void lowerCasedColumnLabelsLoseTheCamelCaseProperties() {
+        // what Postgres returns for an unquoted alias such as AS originalFilename
+        Map<String, Object> row = new HashMap<>(columns(invoice, "invoice.pdf", null));
+        row.put("originalfilename", row.remove("originalFilename"));
+        row.put("contenttype", row.remove("contentType"));
+
+        DocumentListItem item = PROJECTIONS.createProjection(DocumentListItem.class, row);
+
+        assertNull(item.getOriginalFilename());
+        assertNull(item.getContentType());
+        assertEquals(invoice, item.getId());
+    }
+
+    @Test
+    void everyCamelCasePropertyHasAQuotedAliasInTheListingQueries() {
+        List<String> camelCase = Arrays.stream(DocumentListItem.class.getMethods())
+                .map(m -> Character.toLowerCase(m.getName().charAt(3)) + m.getName().substring(4))
+                .filter(property -> !property.equals(property.toLowerCase()))
+                .toList();
+        assertFalse(camelCase.isEmpty());
+
+        int checked = 0;
+        for (Method method : DocumentRepository.class.getMethods()) {
+            Query query = method.getAnnotation(Query.class);
+            if (query == null || !query.nativeQuery() || !method.getGenericReturnType().getTypeName().contains("DocumentListItem")) {
+                continue;
+            }
+            for (String property : camelCase) {
+                assertTrue(query.value().contains("AS \"" + property + "\""), method.getName() + " lacks " + property);
+            }
+            checked++;
+        }
+        // first page, page after, by id, by ids
+        assertEquals(4, checked);
+    }
+
+    @Test
+    void loadsTheTagsOfAWholePageWithOneQuery() {
+        when(repo.findFirstPage(20, false)).thenReturn(List.of(
+                item(invoice, "invoice.pdf", null), item(contract, "contract.pdf", null), item(letter, "letter.png", null)));
+        tagRows.add(new Object[]{contract, finance});
+        tagRows.add(new Object[]{invoice, finance});
+        tagRows.add(new Object[]{contract, legal});
+
+        List<DocumentResponse> page = service.listPage(null, 20, false);
+
+        assertEquals(List.of(invoice, contract, letter), page.stream().map(DocumentResponse::id).toList());
+        assertEquals(List.of(finance), page.get(0).tags());
+        assertEquals(List.of(finance, legal), page.get(1).tags());
+        assertEquals(List.of(), page.get(2).tags());
+        assertEquals(List.of(List.of(invoice, contract, letter)), tagQueries);
+    }
+
+    @Test
+    void continuesAfterTheCursor() {
+        Instant uploadedAt = Instant.parse("2025-01-01T10:00:00Z");
+        when(repo.findPageAfter(uploadedAt, invoice, 2, false)).thenReturn(List.of(item(letter, "letter.png", null)));
+
+        List<DocumentResponse> page = service.listPage(new DocumentCursor(uploadedAt, invoice), 2, false);
+
+        assertEquals(List.of(letter), page.stream().map(DocumentResponse::id).toList());
+        verify(repo, never()).findFirstPage(anyInt(), anyBoolean());
+    }
+
+    @Test
+    void anEmptyPageSkipsTheTagQuery() {
+        when(repo.findFirstPage(20, false)).thenReturn(List.of());
+
+        assertEquals(List.of(), service.listPage(null, 20, false));
+        assertTrue(tagQueries.isEmpty());
+    }
+
+    @Test
+    void detailCarriesItsTags() {
+        when(repo.findItemById(contract)).thenReturn(Optional.of(item(contract, "contract.pdf", "Rental contract")));
+        tagRows.add(new Object[]{contract, legal});
+
+        DocumentResponse doc = service.getDetail(contract);
+
+        assertEquals("contract.pdf", doc.originalFilename());
+        assertEquals("Rental contract", doc.summary());
+        assertEquals(List.of(legal), doc.tags());
+        assertEquals(List.of(List.of(contract)), tagQueries);
+    }
+
+    @Test
+    void detailOfAnUnknownDocumentIsNotFound() {
+        when(repo.findItemById(letter)).thenReturn(Optional.empty());
+
+        assertThrows(NoSuchElementException.class, () -> service.getDetail(letter));
+        assertTrue(tagQueries.isEmpty());
+    }
+
+    private static DocumentListItem item(UUID id, String filename, String summary) {
+        return PROJECTIONS.createProjection(DocumentListItem.class, columns(id, filename, summary));
+    }
+
+    // labels as the listing queries alias them
+    private static Map<String, Object> columns(UUID id, String filename, String summary) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", id);
+        row.put("originalFilename", filename);
+        row.put("contentType", filename.endsWith(".png") ? "image/png" : "application/pdf");
+        row.put("size", 1234L);
+        row.put("uploadedAt", Instant.parse("2025-01-01T10:00:00Z"));
+        row.put("summary", summary);
+        row.put("version", 2L);
+        return row;
+    }
+
+    private static ResultSet tagRow(UUID documentId, TagResponse tag) throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getObject("document_id", UUID.class)).thenReturn(documentId);
+        when(rs.getObject("id", UUID.class)).thenReturn(tag.id());
+        when(rs.getString("name")).thenReturn(tag.name());
+        when(rs.getString("color")).thenReturn(tag.color());
+        return rs;
+    }
+}
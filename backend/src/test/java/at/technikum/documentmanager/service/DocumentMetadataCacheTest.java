@@ -0,0 +1,75 @@
+package at.technikum.documentmanager.service;
+
+import at.technikum.documentmanager.config.CacheConfig;
+import at.technikum.documentmanager.dto.DocumentMetadata;
+import at.technikum.documentmanager.entity.Document;
+import at.technikum.documentmanager.entity.Tag;
+import at.technikum.documentmanager.repository.DocumentRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.cache.CacheProperties;
+import org.springframework.cache.Cache;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DocumentMetadataCacheTest {
+
+    UUID id = UUID.randomUUID();
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void evictionInsideATransactionWaitsForTheCommit() {
+        CacheProperties properties = new CacheProperties();
+        properties.setCacheNames(List.of("documents"));
+        Cache cache = new CacheConfig().cacheManager(properties).getCache("documents");
+        cache.put(id, "before");
+
+        TransactionSynchronizationManager.initSynchronization();
+        cache.evict(id);
+        // a concurrent reader still sees the committed state, not a gap it could refill with it
+        assertEquals("before", cache.get(id, String.class));
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertNull(cache.get(id));
+    }
+
+    @Test
+    void cachesADetachedSnapshotOfTheEntity() {
+        Document entity = Document.builder()
+                .id(id)
+                .originalFilename("a.pdf")
+                .contentType("application/pdf")
+                .size(3)
+                .storageFilename("blobs/abc")
+                .version(4L)
+                .tags(new HashSet<>(Set.of(Tag.builder().id(UUID.randomUUID()).name("finance").build())))
+                .build();
+        DocumentRepository repo = mock(DocumentRepository.class);
+        when(repo.findById(id)).thenReturn(Optional.of(entity));
+        DocumentServiceImpl service = new DocumentServiceImpl(repo, null, null, null, null, null, null, null);
+
+        DocumentMetadata metadata = service.getMetadata(id);
+        entity.setOriginalFilename("renamed.pdf");
+        entity.getTags().clear();
+
+        assertEquals("a.pdf", metadata.originalFilename());
+        assertEquals(List.of("finance"), metadata.tags().stream().map(t -> t.name()).toList());
+        assertThrows(UnsupportedOperationException.class, () -> metadata.tags().clear());
+    }
+}
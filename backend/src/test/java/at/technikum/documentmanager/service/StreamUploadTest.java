@@ -0,0 +1,112 @@
+package at.technikum.documentmanager.service;
+
+import at.technikum.documentmanager.entity.Document;
+import at.technikum.documentmanager.messaging.UploadEventOutbox;
+import at.technikum.documentmanager.messaging.dto.UploadEvent;
+import at.technikum.documentmanager.repository.DocumentRepository;
+import at.technikum.documentmanager.storage.BlobStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class StreamUploadTest {
+
+    static final String SHA256 = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
+    DocumentRepository repo = mock(DocumentRepository.class);
+    BlobStore blobStore = mock(BlobStore.class);
+    UploadEventOutbox outbox = mock(UploadEventOutbox.class);
+    PlatformTransactionManager txManager = mock(PlatformTransactionManager.class);
+    DocumentServiceImpl service = new DocumentServiceImpl(repo, null, blobStore, null, null, outbox,
+            new TransactionTemplate(txManager), mock(ApplicationEventPublisher.class));
+
+    InputStream body = new ByteArrayInputStream("hello".getBytes());
+    BlobStore.StagedBlob staged = new BlobStore.StagedBlob("staging/x", SHA256, 5);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(blobStore.stage(body, "text/plain")).thenReturn(staged);
+        when(blobStore.promote(staged)).thenReturn(new BlobStore.StoredBlob(SHA256, BlobStore.objectName(SHA256), 5));
+        when(repo.saveAndFlush(any(Document.class))).thenAnswer(inv -> inv.getArgument(0));
+    }
+
+    @Test
+    void stagesOutsideTheTransactionAndPromotesInside() throws Exception {
+        Document doc = service.saveStream(body, "a.txt", "text/plain", "alice");
+
+        assertEquals("a.txt", doc.getOriginalFilename());
+        assertEquals(5, doc.getSize());
+        assertEquals("blobs/" + SHA256, doc.getStorageFilename());
+        assertEquals(SHA256, doc.getContentSha256());
+
+        InOrder order = inOrder(blobStore, txManager, repo);
+        order.verify(blobStore).stage(body, "text/plain");
+        order.verify(txManager).getTransaction(any());
+        order.verify(blobStore).promote(staged);
+        order.verify(repo).saveAndFlush(any(Document.class));
+        // persistUploaded joins it; the mocked manager sees the nested template as well
+        order.verify(txManager, atLeastOnce()).commit(any());
+        order.verify(blobStore).discard(staged);
+
+        ArgumentCaptor<UploadEvent> event = ArgumentCaptor.forClass(UploadEvent.class);
+        verify(outbox).enqueue(event.capture());
+        assertEquals(5, event.getValue().size());
+    }
+
+    @Test
+    void defaultsAMissingContentType() throws Exception {
+        when(blobStore.stage(body, "application/octet-stream")).thenReturn(staged);
+
+        Document doc = service.saveStream(body, "a.bin", null, null);
+
+        assertEquals("application/octet-stream", doc.getContentType());
+    }
+
+    @Test
+    void failedStagingNeverOpensATransaction() throws Exception {
+        when(blobStore.stage(body, "text/plain")).thenThrow(new IOException("client went away"));
+
+        IOException e = assertThrows(IOException.class, () -> service.saveStream(body, "a.txt", "text/plain", "alice"));
+
+        assertTrue(e.getMessage().contains("client went away"));
+        verifyNoInteractions(txManager, repo, outbox);
+        verify(blobStore, never()).discard(any());
+    }
+
+    @Test
+    void failedPromotionRollsBackAndDiscardsTheStagingObject() throws Exception {
+        when(blobStore.promote(staged)).thenThrow(new IOException("copy failed"));
+
+        IOException e = assertThrows(IOException.class, () -> service.saveStream(body, "a.txt", "text/plain", "alice"));
+
+        assertTrue(e.getMessage().contains("copy failed"));
+        verify(txManager).rollback(any());
+        verify(repo, never()).saveAndFlush(any());
+        verify(blobStore).discard(staged);
+    }
+
+    @Test
+    void failedInsertRollsBackAndDiscardsTheStagingObject() throws Exception {
+        when(repo.saveAndFlush(any(Document.class))).thenThrow(new DataIntegrityViolationException("value too long"));
+
+        assertThrows(DataIntegrityViolationException.class,
+                () -> service.saveStream(body, "a.txt", "text/plain", "alice"));
+
+        verify(txManager, atLeastOnce()).rollback(any());
+        verify(outbox, never()).enqueue(any());
+        verify(blobStore).discard(staged);
+    }
+}
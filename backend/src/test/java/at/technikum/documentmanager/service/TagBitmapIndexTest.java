@@ -0,0 +1,104 @@
+package at.technikum.documentmanager.service;
+
+import at.technikum.documentmanager.search.DocumentChangedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TagBitmapIndexTest {
+
+    JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    TagBitmapIndex index = new TagBitmapIndex(jdbc, new SimpleMeterRegistry());
+
+    UUID finance = UUID.randomUUID();
+    UUID legal = UUID.randomUUID();
+    UUID archive = UUID.randomUUID();
+
+    // uploaded in this order
+    UUID invoice = UUID.randomUUID();
+    UUID contract = UUID.randomUUID();
+    UUID payslip = UUID.randomUUID();
+    UUID letter = UUID.randomUUID();
+
+    List<UUID> rows = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        when(jdbc.queryForList(anyString(), eq(UUID.class), any(Object[].class)))
+                .thenAnswer(inv -> rows.stream().filter(id -> List.of(inv.getArguments()).contains(id)).toList());
+
+        upload(invoice);
+        upload(contract);
+        upload(payslip);
+        upload(letter);
+        tag(invoice, finance);
+        tag(contract, finance);
+        tag(contract, legal);
+        tag(payslip, finance);
+        tag(payslip, archive);
+    }
+
+    @Test
+    void evaluatesTagExpressionsNewestFirst() {
+        assertEquals(List.of(payslip, contract, invoice), find(Set.of(finance), Set.of(), Set.of()));
+        assertEquals(List.of(contract), find(Set.of(finance, legal), Set.of(), Set.of()));
+        assertEquals(List.of(contract, invoice), find(Set.of(finance), Set.of(), Set.of(archive)));
+        assertEquals(List.of(payslip, contract), find(Set.of(), Set.of(legal, archive), Set.of()));
+        // untagged documents are part of "everything but"
+        assertEquals(List.of(letter, invoice), find(Set.of(), Set.of(), Set.of(legal, archive)));
+        // a tag nobody uses
+        assertEquals(List.of(), find(Set.of(finance, UUID.randomUUID()), Set.of(), Set.of()));
+    }
+
+    @Test
+    void pagesThroughTheMatches() {
+        TagBitmapIndex.Page first = index.find(Set.of(finance), Set.of(), Set.of(), null, 2);
+        assertEquals(List.of(payslip, contract), first.ids());
+        assertEquals(3, first.total());
+        assertNotNull(first.nextCursor());
+
+        TagBitmapIndex.Page second = index.find(Set.of(finance), Set.of(), Set.of(), first.nextCursor(), 2);
+        assertEquals(List.of(invoice), second.ids());
+        assertNull(second.nextCursor());
+
+        assertThrows(IllegalArgumentException.class, () -> index.find(Set.of(finance), Set.of(), Set.of(), "garbage", 2));
+    }
+
+    @Test
+    void followsTagRemovalAndDeletes() {
+        index.onUsageChanged(TagUsageChangedEvent.removed(contract, Set.of(finance)));
+        rows.remove(payslip);
+        index.onDocumentChanged(DocumentChangedEvent.of(payslip));
+        index.onUsageChanged(TagUsageChangedEvent.removed(payslip, Set.of(finance, archive)));
+
+        assertEquals(List.of(invoice), find(Set.of(finance), Set.of(), Set.of()));
+        assertEquals(List.of(letter, contract, invoice), find(Set.of(), Set.of(), Set.of(archive)));
+        assertEquals(3, index.documentCount());
+    }
+
+    private List<UUID> find(Set<UUID> all, Set<UUID> any, Set<UUID> none) {
+        return index.find(all, any, none, null, 10).ids();
+    }
+
+    private void upload(UUID id) {
+        rows.add(id);
+        index.onDocumentChanged(DocumentChangedEvent.of(id));
+    }
+
+    private void tag(UUID documentId, UUID tagId) {
+        index.onUsageChanged(TagUsageChangedEvent.added(documentId, tagId));
+    }
+}
@@ -0,0 +1,57 @@
+package at.technikum.documentmanager.service;
+
+import at.technikum.documentmanager.dto.TagCloudEntry;
+import at.technikum.documentmanager.entity.Tag;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TagCatalogTest {
+
+    TagCatalog catalog = new TagCatalog(null);
+
+    Tag finance = Tag.builder().id(UUID.randomUUID()).name("Finance").color("#00ff00").build();
+    Tag legal = Tag.builder().id(UUID.randomUUID()).name("legal").build();
+
+    @BeforeEach
+    void setUp() {
+        catalog.add(finance);
+        catalog.add(legal);
+    }
+
+    @Test
+    void findsTagsByNameIgnoringCase() {
+        assertEquals(finance, catalog.findByName(" FINANCE").orElseThrow());
+        assertEquals(legal, catalog.get(legal.getId()).orElseThrow());
+        assertTrue(catalog.findByName("tax").isEmpty());
+        assertEquals(List.of(finance, legal), catalog.all());
+    }
+
+    @Test
+    void countsDocumentsPerTag() {
+        catalog.onUsageChanged(TagUsageChangedEvent.added(UUID.randomUUID(), legal.getId()));
+        catalog.onUsageChanged(TagUsageChangedEvent.added(UUID.randomUUID(), legal.getId()));
+        catalog.onUsageChanged(TagUsageChangedEvent.added(UUID.randomUUID(), finance.getId()));
+        // a deleted document with both tags
+        catalog.onUsageChanged(TagUsageChangedEvent.removed(UUID.randomUUID(), Set.of(legal.getId(), finance.getId())));
+
+        assertEquals(1, catalog.documentCount(legal.getId()));
+        assertEquals(0, catalog.documentCount(finance.getId()));
+    }
+
+    @Test
+    void cloudListsMostUsedTagsFirst() {
+        Tag tax = Tag.builder().id(UUID.randomUUID()).name("tax").build();
+        catalog.add(tax);
+        catalog.onUsageChanged(TagUsageChangedEvent.added(UUID.randomUUID(), tax.getId()));
+
+        assertEquals(List.of(
+                new TagCloudEntry(tax.getId(), "tax", null, 1),
+                new TagCloudEntry(finance.getId(), "Finance", "#00ff00", 0)), catalog.cloud(2));
+    }
+}
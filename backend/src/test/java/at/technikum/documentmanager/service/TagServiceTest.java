@@ -10,12 +10,15 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.util.Optional;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -27,17 +30,32 @@ class TagServiceTest {
     @Mock
     DocumentRepository documentRepository;
 
+    @Mock
+    ApplicationEventPublisher events;
+
+    @Mock
+    TagCatalog catalog;
+
     @InjectMocks
     TagService tagService;
 
     @Test
     void createsNewTag() {
-        when(tagRepository.findByNameIgnoreCase("Urgent")).thenReturn(Optional.empty());
+        when(catalog.findByName("Urgent")).thenReturn(Optional.empty());
         when(tagRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
 
         var tag = tagService.create(new TagRequest("Urgent", "#ff0000"));
         assertNotNull(tag.getId());
         assertEquals("Urgent", tag.getName());
+        verify(catalog).add(tag);
+    }
+
+    @Test
+    void rejectsNameTakenInAnyCase() {
+        when(catalog.findByName("urgent ")).thenReturn(Optional.of(Tag.builder().id(UUID.randomUUID()).name("Urgent").build()));
+
+        assertThrows(IllegalArgumentException.class, () -> tagService.create(new TagRequest("urgent ", null)));
+        verify(tagRepository, never()).save(any());
     }
 
     @Test
@@ -61,5 +79,6 @@ class TagServiceTest {
 
         var updated = tagService.addTagToDocument(docId, tagId);
         assertTrue(updated.getTags().contains(tag));
+        verify(events).publishEvent(TagUsageChangedEvent.added(docId, tagId));
     }
 }
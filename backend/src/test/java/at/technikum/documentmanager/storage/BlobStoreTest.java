@@ -0,0 +1,192 @@
+package at.technikum.documentmanager.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BlobStoreTest {
+
+    // sha256("hello")
+    static final String HELLO_SHA256 = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
+    @Mock
+    StorageService storageService;
+
+    @Mock
+    JdbcTemplate jdbc;
+
+    @Mock
+    PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    BlobStore blobStore;
+
+    // stands in for the document transaction the blob store joins
+    @BeforeEach
+    void beginTransaction() {
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void endTransaction() {
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    void uploadsNewContentUnderItsDigest() throws Exception {
+        var file = new MockMultipartFile("file", "a.txt", "text/plain", "hello".getBytes());
+        when(jdbc.queryForObject(anyString(), eq(Integer.class), eq(HELLO_SHA256), eq(5L))).thenReturn(1);
+
+        var blob = blobStore.store(file, file.getSize(), file.getContentType());
+
+        assertEquals(HELLO_SHA256, blob.sha256());
+        assertEquals("blobs/" + HELLO_SHA256, blob.objectName());
+        verify(storageService).store(any(InputStream.class), eq(5L), eq("text/plain"), eq("blobs/" + HELLO_SHA256));
+    }
+
+    @Test
+    void skipsUploadForKnownContent() throws Exception {
+        var file = new MockMultipartFile("file", "b.txt", "text/plain", "hello".getBytes());
+        when(jdbc.queryForObject(anyString(), eq(Integer.class), eq(HELLO_SHA256), eq(5L))).thenReturn(2);
+        when(storageService.exists("blobs/" + HELLO_SHA256)).thenReturn(true);
+
+        blobStore.store(file, file.getSize(), file.getContentType());
+
+        verify(storageService, never()).store(any(), anyLong(), any(), any());
+    }
+
+    @Test
+    void keepsObjectWhileStillReferenced() throws Exception {
+        when(jdbc.queryForList(anyString(), eq(Integer.class), eq(HELLO_SHA256))).thenReturn(List.of(1));
+
+        blobStore.release(HELLO_SHA256);
+        completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+
+        verify(storageService, never()).delete(any());
+    }
+
+    @Test
+    void deletesObjectWithLastReferenceAfterCommit() throws Exception {
+        when(jdbc.queryForList(anyString(), eq(Integer.class), eq(HELLO_SHA256))).thenReturn(List.of(0));
+        when(jdbc.queryForList("DELETE FROM blobs WHERE sha256 = ? AND ref_count = 0 RETURNING sha256", String.class, HELLO_SHA256))
+                .thenReturn(List.of(HELLO_SHA256));
+
+        blobStore.release(HELLO_SHA256);
+        verify(storageService, never()).delete(any());
+
+        completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+        verify(storageService).delete("blobs/" + HELLO_SHA256);
+        verify(storageService).delete("blobs/" + HELLO_SHA256 + ".preview.png");
+    }
+
+    @Test
+    void keepsObjectOfARolledBackDelete() throws Exception {
+        when(jdbc.queryForList(anyString(), eq(Integer.class), eq(HELLO_SHA256))).thenReturn(List.of(0));
+
+        blobStore.release(HELLO_SHA256);
+        completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        verify(storageService, never()).delete(any());
+    }
+
+    @Test
+    void keepsContentUploadedAgainBeforeThePurge() throws Exception {
+        when(jdbc.queryForList(anyString(), eq(Integer.class), eq(HELLO_SHA256))).thenReturn(List.of(0));
+        // the purge re-checks the count: another upload took a reference meanwhile
+        when(jdbc.queryForList("DELETE FROM blobs WHERE sha256 = ? AND ref_count = 0 RETURNING sha256", String.class, HELLO_SHA256))
+                .thenReturn(List.of());
+
+        blobStore.release(HELLO_SHA256);
+        completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+
+        verify(storageService, never()).delete(any());
+    }
+
+    @Test
+    void removesNewContentOfARolledBackUpload() throws Exception {
+        var file = new MockMultipartFile("file", "a.txt", "text/plain", "hello".getBytes());
+        when(jdbc.queryForObject(anyString(), eq(Integer.class), eq(HELLO_SHA256), eq(5L))).thenReturn(1);
+        when(jdbc.queryForList("DELETE FROM blobs WHERE sha256 = ? AND ref_count = 0 RETURNING sha256", String.class, HELLO_SHA256))
+                .thenReturn(List.of(HELLO_SHA256));
+
+        blobStore.store(file, file.getSize(), file.getContentType());
+        // e.g. the document insert failed
+        completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        verify(jdbc).update(startsWith("INSERT INTO blobs"), eq(HELLO_SHA256), eq(5L));
+        verify(storageService).delete("blobs/" + HELLO_SHA256);
+    }
+
+    @Test
+    void stagesContentOfUnknownLengthWithItsDigestAndSize() throws Exception {
+        doAnswer(inv -> inv.<InputStream>getArgument(0).readAllBytes())
+                .when(storageService).store(any(), anyLong(), any(), any());
+
+        var staged = blobStore.stage(new ByteArrayInputStream("hello".getBytes()), "text/plain");
+
+        assertEquals(HELLO_SHA256, staged.sha256());
+        assertEquals(5, staged.size());
+        assertTrue(staged.stagingObjectName().startsWith("staging/"));
+        verify(storageService).store(any(InputStream.class), eq(-1L), eq("text/plain"), eq(staged.stagingObjectName()));
+    }
+
+    @Test
+    void removesAPartiallyStagedObject() throws Exception {
+        doThrow(new IOException("connection reset")).when(storageService).store(any(), anyLong(), any(), any());
+
+        assertThrows(IOException.class, () -> blobStore.stage(new ByteArrayInputStream("hello".getBytes()), "text/plain"));
+
+        verify(storageService).delete(startsWith("staging/"));
+    }
+
+    @Test
+    void promotesNewStagedContentByACopy() throws Exception {
+        var staged = new BlobStore.StagedBlob("staging/x", HELLO_SHA256, 5);
+        when(jdbc.queryForObject(anyString(), eq(Integer.class), eq(HELLO_SHA256), eq(5L))).thenReturn(1);
+
+        var blob = blobStore.promote(staged);
+
+        assertEquals("blobs/" + HELLO_SHA256, blob.objectName());
+        verify(storageService).copy("staging/x", "blobs/" + HELLO_SHA256);
+    }
+
+    @Test
+    void promotesKnownStagedContentWithoutACopy() throws Exception {
+        var staged = new BlobStore.StagedBlob("staging/x", HELLO_SHA256, 5);
+        when(jdbc.queryForObject(anyString(), eq(Integer.class), eq(HELLO_SHA256), eq(5L))).thenReturn(2);
+        when(storageService.exists("blobs/" + HELLO_SHA256)).thenReturn(true);
+
+        blobStore.promote(staged);
+        blobStore.discard(staged);
+
+        verify(storageService, never()).copy(any(), any());
+        verify(storageService).delete("staging/x");
+    }
+
+    private static void completeTransaction(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        if (status == TransactionSynchronization.STATUS_COMMITTED) {
+            synchronizations.forEach(TransactionSynchronization::afterCommit);
+        }
+        synchronizations.forEach(s -> s.afterCompletion(status));
+    }
+}
@@ -0,0 +1,96 @@
+package at.technikum.documentmanager.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CachingStorageServiceTest {
+
+    @Mock
+    MinioStorageService minio;
+
+    @TempDir
+    Path dir;
+
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    CachingStorageService cache;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        cache = new CachingStorageService(minio, dir, 10, 10, registry);
+    }
+
+    @Test
+    void servesSecondReadFromDisk() throws Exception {
+        when(minio.load("a")).thenReturn(Optional.of(stream("hello")));
+
+        assertEquals("hello", read(cache, "a"));
+        assertEquals("hello", read(cache, "a"));
+
+        verify(minio, times(1)).load("a");
+        assertEquals(1.0, registry.get("storage.cache.requests").tag("result", "hit").counter().count());
+        assertEquals(5L, cache.cachedBytes());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedWhenOverBudget() throws Exception {
+        when(minio.load("a")).thenReturn(Optional.of(stream("aaaaa")));
+        when(minio.load("b")).thenReturn(Optional.of(stream("bbbbb")));
+        when(minio.load("c")).thenReturn(Optional.of(stream("ccccc")));
+
+        read(cache, "a");
+        read(cache, "b");
+        read(cache, "c"); // 15 bytes > 10, "a" goes
+
+        assertEquals(2, cache.cachedEntries());
+        assertEquals(1.0, registry.get("storage.cache.evictions").counter().count());
+    }
+
+    @Test
+    void deleteInvalidatesEntry() throws Exception {
+        when(minio.load("a"))
+                .thenReturn(Optional.of(stream("hello")))
+                .thenReturn(Optional.of(stream("world")));
+
+        read(cache, "a");
+        cache.delete("a");
+
+        assertEquals("world", read(cache, "a"));
+        verify(minio).delete("a");
+    }
+
+    @Test
+    void transfersRangeOfCachedFile() throws Exception {
+        when(minio.load("a")).thenReturn(Optional.of(stream("0123456789")));
+        read(cache, "a");
+
+        var out = new ByteArrayOutputStream();
+        cache.transferTo("a", 2, 3, out);
+
+        assertEquals("234", out.toString());
+    }
+
+    private static InputStream stream(String s) {
+        return new ByteArrayInputStream(s.getBytes());
+    }
+
+    private static String read(StorageService storage, String name) throws Exception {
+        try (InputStream in = storage.load(name).orElseThrow()) {
+            return new String(in.readAllBytes());
+        }
+    }
+}
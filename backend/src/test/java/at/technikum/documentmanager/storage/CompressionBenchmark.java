@@ -0,0 +1,84 @@
+package at.technikum.documentmanager.storage;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the zstd levels on OCR-like text against storing the bytes as they are.
+ * Not part of the test run; start it with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=at.technikum.documentmanager.storage.CompressionBenchmark}.
+ * The compression ratio per level is printed during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionBenchmark {
+
+    private static final List<String> WORDS = List.of(
+            "invoice", "total", "amount", "date", "customer", "number", "tax", "payment", "due", "order",
+            "the", "and", "of", "to", "for", "with", "EUR", "Vienna", "account", "reference");
+
+    @Param({"1", "3", "9"})
+    private int level;
+
+    @Param({"65536", "1048576"})
+    private int size;
+
+    private byte[] text;
+    private byte[] compressed;
+    private ObjectCompression compression;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder(size);
+        while (sb.length() < size) {
+            sb.append(WORDS.get(random.nextInt(WORDS.size())))
+                    .append(random.nextInt(20) == 0 ? "\n" : " ")
+                    .append(random.nextInt(10) == 0 ? random.nextInt(100_000) + " " : "");
+        }
+        text = sb.substring(0, size).getBytes(StandardCharsets.UTF_8);
+        compression = new ObjectCompression(true, level, List.of("text/*"));
+        compressed = compress();
+        System.out.printf("%nlevel %d, %d bytes: ratio %.2f%n", level, size, (double) text.length / compressed.length);
+    }
+
+    @Benchmark
+    public byte[] raw() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(text.length);
+        new ByteArrayInputStream(text).transferTo(out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] compress() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(text.length / 2);
+        try (OutputStream zstd = compression.compress(out)) {
+            new ByteArrayInputStream(text).transferTo(zstd);
+        }
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] decompress() throws IOException {
+        return ObjectCompression.decompress(new ByteArrayInputStream(compressed)).readAllBytes();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CompressionBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,51 @@
+package at.technikum.documentmanager.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CountingInputStreamTest {
+
+    @Test
+    void countsSingleBytesArraysAndSkips() throws Exception {
+        CountingInputStream in = new CountingInputStream(new ByteArrayInputStream(new byte[100]));
+
+        in.read();
+        in.read(new byte[10], 0, 10);
+        in.skip(20);
+        assertEquals(31, in.getCount());
+
+        in.transferTo(OutputStream.nullOutputStream());
+        assertEquals(100, in.getCount());
+        // end of stream adds nothing
+        assertEquals(-1, in.read());
+        assertEquals(-1, in.read(new byte[10], 0, 10));
+        assertEquals(100, in.getCount());
+    }
+
+    @Test
+    void countsShortReads() throws Exception {
+        // hands out at most 3 bytes per call, like a socket
+        InputStream trickle = new ByteArrayInputStream(new byte[10]) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 3));
+            }
+        };
+        CountingInputStream in = new CountingInputStream(trickle);
+
+        assertEquals(3, in.read(new byte[8], 0, 8));
+        assertEquals(3, in.getCount());
+        assertEquals(10, in.readAllBytes().length + 3);
+        assertEquals(10, in.getCount());
+    }
+
+    @Test
+    void doesNotSupportMarkSoRereadBytesAreNeverCountedTwice() {
+        assertFalse(new CountingInputStream(new ByteArrayInputStream(new byte[1])).markSupported());
+    }
+}
@@ -0,0 +1,174 @@
+package at.technikum.documentmanager.storage;
+
+import io.minio.CopyObjectArgs;
+import io.minio.GetObjectArgs;
+import io.minio.GetObjectResponse;
+import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
+import io.minio.StatObjectResponse;
+import okhttp3.Headers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+class MinioStorageServiceTest {
+
+    static final long PART_SIZE = 5 * 1024 * 1024;
+
+    MinioClient minio = mock(MinioClient.class);
+    MinioStorageService storage = new MinioStorageService(minio, minio, "documents", PART_SIZE, true, 3,
+            List.of("text/*"));
+
+    // what putObject read from its stream, like the client would upload it
+    ByteArrayOutputStream uploaded = new ByteArrayOutputStream();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(minio.putObject(any())).thenAnswer(inv -> {
+            inv.<PutObjectArgs>getArgument(0).stream().transferTo(uploaded);
+            return null;
+        });
+    }
+
+    @Test
+    void uploadsContentOfUnknownLengthAsMultipart() throws Exception {
+        storage.store(new ByteArrayInputStream(new byte[1000]), -1, "application/pdf", "staging/a");
+
+        PutObjectArgs args = putArgs();
+        assertEquals(-1, args.objectSize());
+        assertEquals(PART_SIZE, args.partSize());
+        assertEquals(1000, uploaded.size());
+        verify(minio, never()).copyObject(any());
+    }
+
+    @Test
+    void uploadsContentOfKnownLengthInOnePiece() throws Exception {
+        storage.store(new ByteArrayInputStream(new byte[1000]), 1000, "application/pdf", "blobs/a");
+
+        PutObjectArgs args = putArgs();
+        assertEquals(1000, args.objectSize());
+        assertEquals(1, args.partCount());
+    }
+
+    @Test
+    void recordsTheCountedLengthOfCompressedContentOfUnknownLength() throws Exception {
+        byte[] text = "hello world, hello world, hello world".repeat(100).getBytes(StandardCharsets.UTF_8);
+
+        storage.store(new ByteArrayInputStream(text), -1, "text/plain", "staging/b");
+
+        // the compressed stream is always of unknown length
+        assertEquals(-1, putArgs().objectSize());
+        assertTrue(uploaded.size() < text.length);
+        ArgumentCaptor<CopyObjectArgs> copy = ArgumentCaptor.forClass(CopyObjectArgs.class);
+        verify(minio).copyObject(copy.capture());
+        assertEquals("staging/b", copy.getValue().source().object());
+        assertEquals(List.of(Integer.toString(text.length)),
+                List.copyOf(copy.getValue().userMetadata().get("x-amz-meta-" + ObjectCompression.ORIGINAL_SIZE)));
+    }
+
+    @Test
+    void storesTheKnownLengthOfCompressedContentRightAway() throws Exception {
+        byte[] text = "hello".getBytes(StandardCharsets.UTF_8);
+
+        storage.store(new ByteArrayInputStream(text), text.length, "text/plain", "blobs/b");
+
+        assertEquals(List.of("5"), List.copyOf(putArgs().userMetadata().get("x-amz-meta-" + ObjectCompression.ORIGINAL_SIZE)));
+        verify(minio, never()).copyObject(any());
+    }
+
+    @Test
+    void abortsAndRemovesACompressedUploadWhoseSourceFailsMidRead() throws Exception {
+        // a few parts' worth of data, then a bug in the source
+        InputStream failing = new InputStream() {
+            long remaining = 1024 * 1024;
+
+            @Override
+            public int read() {
+                if (remaining-- == 0) {
+                    throw new IllegalStateException("decoder bug");
+                }
+                return 'a';
+            }
+        };
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> storage.store(failing, -1, "text/plain", "staging/c"));
+
+        assertEquals("decoder bug", e.getMessage());
+        verify(minio).removeObject(argThat(args -> args.object().equals("staging/c")));
+        verify(minio, never()).copyObject(any());
+    }
+
+    @Test
+    void reportsTheUploadFailureWhenTheStorageGoesAway() throws Exception {
+        doThrow(new IOException("connection reset")).when(minio).putObject(any());
+
+        assertThrows(IOException.class,
+                () -> storage.store(new ByteArrayInputStream(new byte[1000]), -1, "text/plain", "staging/d"));
+
+        verify(minio, never()).removeObject(any());
+    }
+
+    @Test
+    void readsARangeOfAPlainObjectWithOneRangedRequest() throws Exception {
+        StatObjectResponse head = new StatObjectResponse(headers(), "documents", null, "blobs/a");
+        when(minio.statObject(any())).thenReturn(head);
+        when(minio.getObject(any())).thenAnswer(inv -> new GetObjectResponse(headers(), "documents", null, "blobs/a",
+                new ByteArrayInputStream("234".getBytes(StandardCharsets.UTF_8))));
+
+        try (InputStream in = storage.load("blobs/a", 2, 3).orElseThrow()) {
+            assertEquals("234", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        ArgumentCaptor<GetObjectArgs> get = ArgumentCaptor.forClass(GetObjectArgs.class);
+        verify(minio).getObject(get.capture());
+        assertEquals(2L, get.getValue().offset());
+        assertEquals(3L, get.getValue().length());
+    }
+
+    @Test
+    void readsARangeOfACompressedObjectByDecodingItOnce() throws Exception {
+        ByteArrayOutputStream zstd = new ByteArrayOutputStream();
+        try (var out = new ObjectCompression(true, 3, List.of("text/*")).compress(zstd)) {
+            out.write("0123456789".getBytes(StandardCharsets.UTF_8));
+        }
+        Headers headers = headers("x-amz-meta-" + ObjectCompression.CODEC, ObjectCompression.ZSTD);
+        StatObjectResponse head = new StatObjectResponse(headers, "documents", null, "blobs/t");
+        when(minio.statObject(any())).thenReturn(head);
+        when(minio.getObject(any())).thenAnswer(inv -> new GetObjectResponse(headers, "documents", null, "blobs/t",
+                new ByteArrayInputStream(zstd.toByteArray())));
+
+        try (InputStream in = storage.load("blobs/t", 2, 3).orElseThrow()) {
+            assertEquals("234", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        // the whole object, not a range of the compressed bytes
+        ArgumentCaptor<GetObjectArgs> get = ArgumentCaptor.forClass(GetObjectArgs.class);
+        verify(minio).getObject(get.capture());
+        assertNull(get.getValue().offset());
+    }
+
+    private static Headers headers(String... namesAndValues) {
+        return Headers.of(namesAndValues).newBuilder()
+                .add("Last-Modified", "Wed, 01 Jan 2025 00:00:00 GMT")
+                .build();
+    }
+
+    private PutObjectArgs putArgs() throws Exception {
+        ArgumentCaptor<PutObjectArgs> put = ArgumentCaptor.forClass(PutObjectArgs.class);
+        verify(minio).putObject(put.capture());
+        return put.getValue();
+    }
+}
@@ -0,0 +1,48 @@
+package at.technikum.documentmanager.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ObjectCompressionTest {
+
+    ObjectCompression compression = new ObjectCompression(true, 3,
+            List.of("text/*", "application/json", "application/*+xml"));
+
+    @Test
+    void compressesOnlyConfiguredTypes() {
+        assertTrue(compression.shouldCompress("text/plain"));
+        assertTrue(compression.shouldCompress("text/csv; charset=utf-8"));
+        assertTrue(compression.shouldCompress("application/json"));
+        assertTrue(compression.shouldCompress("application/atom+xml"));
+        assertFalse(compression.shouldCompress("application/pdf"));
+        assertFalse(compression.shouldCompress("image/png"));
+        assertFalse(compression.shouldCompress("not a type"));
+        assertFalse(compression.shouldCompress(null));
+    }
+
+    @Test
+    void disabledCompressesNothing() {
+        ObjectCompression disabled = new ObjectCompression(false, 3, List.of("text/*"));
+        assertFalse(disabled.shouldCompress("text/plain"));
+    }
+
+    @Test
+    void roundTrip() throws Exception {
+        byte[] text = "invoice total amount due ".repeat(1000).getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream zstd = compression.compress(out)) {
+            zstd.write(text);
+        }
+
+        assertTrue(out.size() < text.length / 10);
+        assertArrayEquals(text, ObjectCompression.decompress(new ByteArrayInputStream(out.toByteArray())).readAllBytes());
+    }
+}
@@ -16,6 +16,7 @@ type Document = {
     uploadedAt: string;
     summary?: string;
     tags: Tag[];
+    version: number;
 };
 
 type SearchResult = {
@@ -35,6 +36,7 @@ export default function App() {
     const [selectedDoc, setSelectedDoc] = useState<Document | null>(null);
     const [searchTerm, setSearchTerm] = useState("");
     const [searchResults, setSearchResults] = useState<SearchResult[]>([]);
+    const [suggestions, setSuggestions] = useState<string[]>([]);
     const [newTag, setNewTag] = useState({ name: "", color: "#6b7280" });
     const [attachTagId, setAttachTagId] = useState("");
 
@@ -43,6 +45,33 @@ export default function App() {
         loadTags();
     }, []);
 
+    // Typeahead from the in-memory suggest index, the full search only runs on submit
+    useEffect(() => {
+        const prefix = searchTerm.trim();
+        if (!prefix) {
+            setSuggestions([]);
+            return;
+        }
+        const controller = new AbortController();
+        fetch(`/api/search/suggest?q=${encodeURIComponent(prefix)}`, { signal: controller.signal })
+            .then((res) => (res.ok ? res.json() : []))
+            .then((items: { text: string }[]) => setSuggestions(items.map((s) => s.text)))
+            .catch(() => undefined);
+        return () => controller.abort();
+    }, [searchTerm]);
+
+    // The list comes without summaries, fetch the one of the selected document on demand
+    useEffect(() => {
+        if (!selectedDoc || selectedDoc.summary != null) return;
+        const id = selectedDoc.id;
+        fetch(`/api/documents/${id}/summary`)
+            .then((res) => (res.ok ? res.text() : ""))
+            .then((summary) =>
+                setSelectedDoc((current) => (current && current.id === id ? { ...current, summary } : current))
+            )
+            .catch(() => undefined);
+    }, [selectedDoc]);
+
     const loadDocs = async () => {
         try {
             const res = await fetch("/api/documents");
@@ -94,11 +123,16 @@ export default function App() {
         const formData = new FormData();
         formData.append("file", file);
 
+        const current = docs.find((d) => d.id === id);
+
         try {
             const res = await fetch(`/api/documents/${id}/replace`, {
                 method: "PUT",
+                // the backend rejects the write if the document changed since it was loaded
+                headers: { "If-Match": `"${current?.version ?? 0}"` },
                 body: formData,
             });
+            if (res.status === 412) throw new Error("Document was changed meanwhile, reload and retry");
             if (!res.ok) throw new Error("Replace failed");
             const doc: Document = await res.json();
             setDocs((prev) => prev.map((d) => (d.id === doc.id ? doc : d)));
@@ -288,9 +322,16 @@ export default function App() {
                             <input
                                 value={searchTerm}
                                 onChange={(e) => setSearchTerm(e.target.value)}
+                                onKeyDown={(e) => e.key === "Enter" && handleSearch()}
+                                list="search-suggestions"
                                 placeholder="Search in OCR text, summaries, filenames..."
                                 className="w-80 rounded-md border border-neutral-700 bg-neutral-800 px-3 py-2 text-sm text-white focus:border-indigo-400 focus:outline-none"
                             />
+                            <datalist id="search-suggestions">
+                                {suggestions.map((text) => (
+                                    <option key={text} value={text} />
+                                ))}
+                            </datalist>
                             <button
                                 onClick={handleSearch}
                                 className="rounded-md bg-indigo-500 px-3 py-2 text-sm font-semibold text-white hover:bg-indigo-400"
@@ -42,7 +42,9 @@ def ensure_index(es_client, index_name):
                 "uploadedAt": {"type": "date"},
                 "size": {"type": "long"},
                 "text": {"type": "text"},
-                "summary": {"type": "text"}
+                "summary": {"type": "text"},
+                "tagIds": {"type": "keyword"},
+                "tagNames": {"type": "keyword"}
             }
         }
     )
@@ -51,6 +53,7 @@ def ensure_index(es_client, index_name):
 def index_document(es_client, index_name, payload):
     """
     Index a single OCR text payload.
+    Written as a partial upsert so fields maintained by the backend (tags) are kept.
     """
     document_body = {
         "documentId": payload["documentId"],
@@ -61,7 +64,8 @@ def index_document(es_client, index_name, payload):
         "text": payload.get("text"),
         "summary": payload.get("summary")
     }
-    es_client.index(index=index_name, id=payload["documentId"], document=document_body)
+    document_body = {k: v for k, v in document_body.items() if v is not None}
+    es_client.update(index=index_name, id=payload["documentId"], doc=document_body, doc_as_upsert=True)
     return document_body
 
 
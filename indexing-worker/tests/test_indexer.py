@@ -17,14 +17,26 @@ def test_index_document_builds_payload_and_calls_es():
 
     stored_doc = index_document(es, "documents", payload)
 
-    es.index.assert_called_once()
-    call_kwargs = es.index.call_args.kwargs
+    es.update.assert_called_once()
+    call_kwargs = es.update.call_args.kwargs
     assert call_kwargs["index"] == "documents"
     assert call_kwargs["id"] == "123"
-    assert call_kwargs["document"]["text"] == "hello world"
+    assert call_kwargs["doc"]["text"] == "hello world"
+    assert call_kwargs["doc_as_upsert"] is True
     assert stored_doc["filename"] == "report.pdf"
 
 
+def test_index_document_does_not_overwrite_missing_fields():
+    es = MagicMock()
+    payload = {"documentId": "123", "filename": "report.pdf", "text": "hello world"}
+
+    index_document(es, "documents", payload)
+
+    doc = es.update.call_args.kwargs["doc"]
+    assert "summary" not in doc
+    assert "tagNames" not in doc
+
+
 def test_ensure_index_creates_when_missing():
     es = MagicMock()
     es.indices.exists.return_value = False
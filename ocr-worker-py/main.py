@@ -32,6 +32,8 @@ channel.queue_declare(
 channel.queue_declare(queue="genai-tasks", durable=True)
 # Declare Indexer queue (for sending OCR text to Elasticsearch indexer)
 channel.queue_declare(queue=INDEX_QUEUE, durable=True)
+# Declare OCR result queue (backend stores the text for its Postgres full-text search)
+channel.queue_declare(queue="ocr-results", durable=True)
 
 
 print(f"Connected - waiting for messages in '{QUEUE_NAME}'")
@@ -44,13 +46,14 @@ def callback(ch, method, properties, body):
     content_type = event.get("contentType")
     uploaded_at = event.get("uploadedAt")
     size = event.get("size")
+    storage_key = event.get("storageKey")
 
     print(f"Received: {filename} ({doc_id})")
 
 
     try:
         # Download file from MinIO
-        path = download_file(doc_id, filename)
+        path = download_file(doc_id, filename, storage_key)
 
         # Perform OCR
         text = perform_ocr(path)
@@ -85,6 +88,16 @@ def callback(ch, method, properties, body):
             })
         )
         print(f"Sent OCR text to indexing worker for {filename}")
+
+        # Send OCR text to the backend (Postgres full-text search)
+        channel.basic_publish(
+            exchange="",
+            routing_key="ocr-results",
+            body=json.dumps({
+                "documentId": doc_id,
+                "text": text
+            })
+        )
     except Exception as e:
         print(f"Error processing {filename}: {e}")
 
@@ -1,8 +1,12 @@
 from minio import Minio
+import io
 import os
 import re
+import shutil
+import zstandard
 
 # --- Configuration ---
+COMPRESSION_LEVEL = int(os.getenv("MINIO_COMPRESSION_LEVEL", "3"))
 MINIO_URL = os.getenv("MINIO_ENDPOINT", "http://minio:9000").replace("localhost", "minio")
 ACCESS_KEY = os.getenv("MINIO_ACCESS_KEY", "paperless")
 SECRET_KEY = os.getenv("MINIO_SECRET_KEY", "paperless")
@@ -26,26 +30,45 @@ def sanitize_filename(filename: str) -> str:
 
 
 # --- File download ---
-def download_file(doc_id: str, original_filename: str):
+def download_file(doc_id: str, original_filename: str, storage_key: str = None):
     """
-    Downloads a file from MinIO using the backend naming scheme:
-    <uuid>-<cleanedOriginalFilename>.<ext>
+    Downloads a file from MinIO. Uses the storage key from the upload event
+    (content-addressed 'blobs/<sha256>') and falls back to the legacy naming
+    scheme <uuid>-<cleanedOriginalFilename>.<ext> for older events.
     """
     cleaned = sanitize_filename(original_filename)
-    object_name = f"{doc_id}-{cleaned}"
-    local_path = f"/tmp/{object_name}"
+    object_name = storage_key or f"{doc_id}-{cleaned}"
+    local_path = f"/tmp/{doc_id}-{cleaned}"
 
     print(f"Downloading '{object_name}' from bucket '{BUCKET}'", flush=True)
-    client.fget_object(BUCKET, object_name, local_path)
+    response = client.get_object(BUCKET, object_name)
+    try:
+        # the backend stores compressible content types zstd-encoded (x-amz-meta-codec)
+        compressed = response.headers.get("x-amz-meta-codec") == "zstd"
+        with open(local_path, "wb") as f:
+            if compressed:
+                zstandard.ZstdDecompressor().copy_stream(response, f)
+            else:
+                shutil.copyfileobj(response, f)
+    finally:
+        response.close()
+        response.release_conn()
     return local_path
 
 
 # --- Upload OCR text result ---
 def upload_text(doc_id: str, text: str):
     """
-    Upload OCR text result to 'ocr/<uuid>.txt'
+    Upload OCR text result to 'ocr/<uuid>.txt', zstd-compressed with the same
+    metadata the backend writes, so StorageService.load() decodes it transparently.
     """
-    txt_path = f"/tmp/{doc_id}.txt"
-    with open(txt_path, "w", encoding="utf-8") as f:
-        f.write(text)
-    client.fput_object(BUCKET, f"ocr/{doc_id}.txt", txt_path)
+    raw = text.encode("utf-8")
+    data = zstandard.ZstdCompressor(level=COMPRESSION_LEVEL).compress(raw)
+    client.put_object(
+        BUCKET,
+        f"ocr/{doc_id}.txt",
+        io.BytesIO(data),
+        length=len(data),
+        content_type="text/plain; charset=utf-8",
+        metadata={"codec": "zstd", "original-size": str(len(raw))},
+    )